@@ -20,10 +20,18 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.cloudfoundry.client.lib.domain.ApplicationStats;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
+import org.eclipse.cft.server.core.internal.log.CFStreamingLogToken;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -40,12 +48,34 @@ import org.eclipse.wst.server.core.IServer;
  * tracker is to resolve up-to-date running state of the application in Cloud
  * Foundry by direct tracking of the application, but not perform any updates on
  * the {@link IServer}
+ * <p/>
+ * The state is checked by the {@link ApplicationStateWatcher} of the server,
+ * which is shared by all trackers of the server. If the server has no cached
+ * data, for example because it was removed, the application is polled
+ * directly instead.
  *
  */
 public class ApplicationInstanceRunningTracker {
 	public static final long TIMEOUT = 1000 * 60 * 5;
 
-	public static final long WAIT_TIME = 1000;
+	/**
+	 * Interval in ms in which the tracker checks if tracking was canceled. The
+	 * tracker returns as soon as the state is known.
+	 */
+	public static final long WAIT_TIME = 100;
+
+	/**
+	 * Interval in ms in which the state is checked when start is detected
+	 * from the application logs. The check confirms the state, or detects it
+	 * if log messages were missed.
+	 */
+	public static final long LOG_DETECTION_CHECK_INTERVAL = 1000 * 10;
+
+	/**
+	 * Interval in ms in which the state is checked when the application is
+	 * polled directly, without a watcher.
+	 */
+	public static final long POLL_INTERVAL = 1000;
 
 	private final CloudFoundryServer cloudServer;
 
@@ -70,26 +100,99 @@ public class ApplicationInstanceRunningTracker {
 	 */
 	public int track(IProgressMonitor monitor) throws CoreException, OperationCanceledException {
 
-		long currentTime = System.currentTimeMillis();
-
-		long totalTime = currentTime + timeout;
-
-		CloudFoundryServerBehaviour behaviour = cloudServer.getBehaviour();
 		String appName = appModule.getDeployedApplicationName();
 
 		printlnToConsole(NLS.bind(Messages.ApplicationInstanceStartingTracker_STARTING_TRACKING, appName), appModule);
 
+		ApplicationStateWatcher watcher = getWatcher();
+		int state = watcher != null ? watchState(appName, watcher, monitor) : pollState(appName, monitor);
+
+		String runningStateMessage = state == IServer.STATE_STARTED
+				? NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_IS_RUNNING, appName)
+				: NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_IS_NOT_RUNNING, appName);
+		printlnToConsole(runningStateMessage, appModule);
+
+		return state;
+	}
+
+	/**
+	 * Waits for the watcher of the server to resolve the state of the
+	 * application, streaming its logs to detect start sooner if enabled.
+	 */
+	protected int watchState(String appName, ApplicationStateWatcher watcher, IProgressMonitor monitor)
+			throws CoreException, OperationCanceledException {
+		CompletableFuture<Integer> result;
+		CFStreamingLogToken logToken = null;
+		if (CloudFoundryPlugin.getDefault().getLogStartDetection()) {
+			result = watcher.watch(appName, timeout, LOG_DETECTION_CHECK_INTERVAL);
+			logToken = startLogDetection(appName, watcher, result, monitor);
+			if (logToken == null) {
+				// No log stream. Check as often as without log detection
+				result.cancel(false);
+				result = watcher.watch(appName, timeout);
+			}
+		}
+		else {
+			result = watcher.watch(appName, timeout);
+		}
 		int state = IServer.STATE_UNKNOWN;
 
-		while (state != IServer.STATE_STARTED && state != IServer.STATE_STOPPED && currentTime < totalTime) {
+		try {
+			while (true) {
+				if (monitor != null && monitor.isCanceled()) {
+					result.cancel(false);
+					String error = NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_CHECK_CANCELED,
+							appName);
+					printlnToConsole(error, appModule);
+
+					throw new OperationCanceledException(error);
+				}
+				try {
+					state = result.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+					break;
+				}
+				catch (TimeoutException e) {
+					// Check the monitor again
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			result.cancel(false);
+			throw new OperationCanceledException();
+		}
+		catch (CancellationException e) {
+			// The watcher was disposed, for example as the server was deleted
+			throw new OperationCanceledException(
+					NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_CHECK_CANCELED, appName));
+		}
+		catch (ExecutionException e) {
+			// app may no longer exist
+			CoreException error = e.getCause() instanceof CoreException ? (CoreException) e.getCause()
+					: CloudErrorUtil.toCoreException(e.getCause());
+			printlnToConsole(error.getMessage(), appModule);
+			throw error;
+		}
+		finally {
+			if (logToken != null) {
+				logToken.cancel();
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Polls the state of the application until it is started or stopped, or
+	 * tracking times out. Used when the server has no watcher.
+	 */
+	protected int pollState(String appName, IProgressMonitor monitor)
+			throws CoreException, OperationCanceledException {
+		long currentTime = System.currentTimeMillis();
+		long totalTime = currentTime + timeout;
 
-			// NOTE: app state is NOT the same as the INSTANCE state. Instance
-			// state indicates if app is actually running or not.
-			// App state indicates the desired state of the app. So an app in
-			// STOPPED state will not have instances running. If
-			// app is STARTED, instances may still not be running if the app
-			// instances are still starting, are flapping, or have crashed.
+		CloudFoundryServerBehaviour behaviour = cloudServer.getBehaviour();
+		int state = IServer.STATE_UNKNOWN;
 
+		while (state != IServer.STATE_STARTED && state != IServer.STATE_STOPPED && currentTime < totalTime) {
 			if (monitor != null && monitor.isCanceled()) {
 				String error = NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_CHECK_CANCELED,
 						appName);
@@ -99,33 +202,50 @@ public class ApplicationInstanceRunningTracker {
 			}
 
 			CloudApplication cloudApp = behaviour.getCloudApplication(appName, monitor);
-			ApplicationStats applicationStats = behaviour.getApplicationStats(appName, monitor);
-
 			if (cloudApp == null) {
 				// app may no longer exist
 				String error = NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_NOT_EXISTS, appName);
 				printlnToConsole(error, appModule);
 				throw CloudErrorUtil.toCoreException(error);
 			}
-			else {
-				state = CloudFoundryApplicationModule.getCloudState(cloudApp, applicationStats);
+			ApplicationStats applicationStats = behaviour.getApplicationStats(appName, monitor);
+			state = CloudFoundryApplicationModule.getCloudState(cloudApp, applicationStats);
+			if (state != IServer.STATE_STARTED && state != IServer.STATE_STOPPED) {
 				try {
-					Thread.sleep(WAIT_TIME);
+					Thread.sleep(POLL_INTERVAL);
 				}
 				catch (InterruptedException e) {
-
+					throw new OperationCanceledException();
 				}
-
-				currentTime = System.currentTimeMillis();
 			}
+			currentTime = System.currentTimeMillis();
 		}
+		return state;
+	}
 
-		String runningStateMessage = state == IServer.STATE_STARTED
-				? NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_IS_RUNNING, appName)
-				: NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_IS_NOT_RUNNING, appName);
-		printlnToConsole(runningStateMessage, appModule);
+	/**
+	 * Streams the logs of the application to detect when it starts.
+	 * @return token to stop streaming, or null if logs cannot be streamed
+	 */
+	protected CFStreamingLogToken startLogDetection(String appName, ApplicationStateWatcher watcher,
+			CompletableFuture<Integer> result, IProgressMonitor monitor) {
+		try {
+			return cloudServer.getBehaviour().startAppLogStreaming(appName,
+					new ApplicationStartLogDetector(watcher, result), monitor);
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.logWarning(e.getMessage());
+			return null;
+		}
+	}
 
-		return state;
+	/**
+	 * 
+	 * @return watcher of the server, or null if the server has no cached data
+	 */
+	protected ApplicationStateWatcher getWatcher() {
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(cloudServer.getServerOriginal());
+		return data != null ? data.getApplicationStateWatcher(cloudServer) : null;
 	}
 
 	protected void printlnToConsole(String message, CloudFoundryApplicationModule appModule) throws CoreException {
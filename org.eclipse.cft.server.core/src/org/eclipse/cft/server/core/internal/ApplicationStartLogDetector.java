@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.cft.server.core.internal.log.CFApplicationLogListener;
+import org.eclipse.cft.server.core.internal.log.CloudLog;
+
+/**
+ * Detects from the log stream of a starting application when it may have
+ * finished staging or started running, and asks the
+ * {@link ApplicationStateWatcher} to confirm the state right away, instead of
+ * waiting for its next check.
+ * <p/>
+ * Log messages are only hints: the state is always confirmed by the watcher,
+ * and if messages are missed or their text differs between Cloud Foundry
+ * versions, the application is still detected by the regular checks of the
+ * watcher.
+ *
+ */
+public class ApplicationStartLogDetector implements CFApplicationLogListener {
+
+	/**
+	 * Messages logged by the platform once the droplet is staged
+	 */
+	private static final String[] STAGING_COMPLETE_MESSAGES = { "staging complete", //$NON-NLS-1$
+			"uploading complete" //$NON-NLS-1$
+	};
+
+	/**
+	 * Messages logged by the cell once an instance is running
+	 */
+	private static final String[] INSTANCE_RUNNING_MESSAGES = { "container became healthy", //$NON-NLS-1$
+			"instance is running" //$NON-NLS-1$
+	};
+
+	private static final String SOURCE_CELL = "CELL"; //$NON-NLS-1$
+
+	private static final String SOURCE_STAGING = "STG"; //$NON-NLS-1$
+
+	private static final String SOURCE_APP = "APP"; //$NON-NLS-1$
+
+	private final ApplicationStateWatcher watcher;
+
+	private final CompletableFuture<Integer> watch;
+
+	private volatile boolean appOutputSeen;
+
+	private final AtomicInteger detectedCount = new AtomicInteger();
+
+	/**
+	 *
+	 * @param watcher watcher of the application's server
+	 * @param watch future returned by the watcher for the application
+	 */
+	public ApplicationStartLogDetector(ApplicationStateWatcher watcher, CompletableFuture<Integer> watch) {
+		this.watcher = watcher;
+		this.watch = watch;
+	}
+
+	@Override
+	public void onMessage(CloudLog log) {
+		if (log == null || log.getMessage() == null || watch.isDone()) {
+			return;
+		}
+		if (isStartEvent(log.getSourceName(), log.getMessage())) {
+			detectedCount.incrementAndGet();
+			watcher.checkNow(watch);
+		}
+	}
+
+	/**
+	 *
+	 * @param sourceName source of the log message, for example "CELL" or
+	 * "APP/PROC/WEB". May be null
+	 * @param message
+	 * @return true if the message indicates that the application finished
+	 * staging or that an instance started running
+	 */
+	protected boolean isStartEvent(String sourceName, String message) {
+		if (sourceName == null) {
+			return false;
+		}
+		String source = sourceName.toUpperCase();
+		if (source.startsWith(SOURCE_APP)) {
+			// The first output of the application means its process is up.
+			// Further output is not checked
+			if (!appOutputSeen) {
+				appOutputSeen = true;
+				return true;
+			}
+			return false;
+		}
+		if (source.startsWith(SOURCE_CELL) || source.startsWith(SOURCE_STAGING)) {
+			String text = message.toLowerCase();
+			return contains(text, INSTANCE_RUNNING_MESSAGES) || contains(text, STAGING_COMPLETE_MESSAGES);
+		}
+		return false;
+	}
+
+	private static boolean contains(String text, String[] messages) {
+		for (String message : messages) {
+			if (text.contains(message)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return number of log messages that triggered a state check
+	 */
+	public int getDetectedCount() {
+		return detectedCount.get();
+	}
+
+	@Override
+	public void onComplete() {
+		// Nothing to do. The watcher keeps checking the application
+	}
+
+	@Override
+	public void onError(Throwable exception) {
+		// Nothing to do. The watcher keeps checking the application
+	}
+}
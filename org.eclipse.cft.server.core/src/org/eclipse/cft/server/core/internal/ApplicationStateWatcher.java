@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.wst.server.core.IServer;
+
+/**
+ * Watches the running state of applications of a server until they are
+ * started or stopped. One watcher is shared by all callers tracking
+ * applications of the same server (see
+ * {@link ModuleCache.ServerData#getApplicationStateWatcher(CloudFoundryServer)}
+ * ), so that tracking several applications at the same time does not multiply
+ * the requests sent to the Cloud Controller:
+ * <ul>
+ * <li>On each check, the state of all the applications being watched is read
+ * from a single listing of the applications in the space. Instance stats,
+ * which tell whether a started application is actually running, are only
+ * fetched for applications that are started.</li>
+ * <li>Each application is checked every {@link #INITIAL_INTERVAL} ms for the
+ * first {@link #FAST_PERIOD} ms, which is when most applications finish
+ * starting, and then less and less often, up to every {@link #MAX_INTERVAL}
+ * ms.</li>
+ * </ul>
+ * Callers get a future that completes once the application is started or
+ * stopped, and can register callbacks on it.
+ *
+ */
+public class ApplicationStateWatcher {
+
+	public static final long INITIAL_INTERVAL = 1000;
+
+	public static final long FAST_PERIOD = 1000 * 10;
+
+	public static final long MAX_INTERVAL = 1000 * 10;
+
+	private final CloudFoundryServer cloudServer;
+
+	private final List<Watch> watches = new ArrayList<Watch>();
+
+	private final Job job;
+
+	private volatile boolean disposed;
+
+	public ApplicationStateWatcher(CloudFoundryServer cloudServer) {
+		this(cloudServer, NLS.bind(Messages.ApplicationStateWatcher_WATCH_JOB, cloudServer.getServer().getId()));
+	}
+
+	protected ApplicationStateWatcher(CloudFoundryServer cloudServer, String jobName) {
+		this.cloudServer = cloudServer;
+		this.job = new Job(jobName) {
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				checkDueWatches(monitor);
+				scheduleNextCheck();
+				return Status.OK_STATUS;
+			}
+		};
+		this.job.setSystem(true);
+	}
+
+	/**
+	 * Starts watching the given application.
+	 * @param appName deployed name of the application
+	 * @param timeout time in ms after which the watch completes with
+	 * {@link IServer#STATE_UNKNOWN} if the application is neither started nor
+	 * stopped
+	 * @return future that completes with {@link IServer#STATE_STARTED},
+	 * {@link IServer#STATE_STOPPED} or {@link IServer#STATE_UNKNOWN}, or
+	 * completes exceptionally with a {@link CoreException} if the application
+	 * does not exist or its state could still not be checked when the timeout
+	 * expires. Canceling the future stops watching the application.
+	 */
+	public CompletableFuture<Integer> watch(String appName, long timeout) {
+		return watch(appName, timeout, INITIAL_INTERVAL);
+	}
+
+	/**
+	 * Starts watching the given application, checking it at the given
+	 * interval. Used by callers that learn about state changes by other means,
+	 * and only need the watcher to confirm them (see
+	 * {@link #checkNow(CompletableFuture)}) or as a fallback.
+	 * @param appName deployed name of the application
+	 * @param timeout
+	 * @param interval time in ms between checks of the application
+	 * @return future as returned by {@link #watch(String, long)}
+	 */
+	public CompletableFuture<Integer> watch(String appName, long timeout, long interval) {
+		Watch watch = new Watch(appName, System.currentTimeMillis(), timeout, interval);
+		if (disposed) {
+			watch.future.cancel(false);
+			return watch.future;
+		}
+		synchronized (watches) {
+			watches.add(watch);
+		}
+		// Check the application right away. Other watched applications are
+		// checked as well if they are due.
+		checkSoon();
+		return watch.future;
+	}
+
+	/**
+	 * Checks the application of the given watch as soon as possible, for
+	 * example because its state is expected to have changed.
+	 * @param future returned when starting to watch the application
+	 */
+	public void checkNow(CompletableFuture<Integer> future) {
+		boolean found = false;
+		synchronized (watches) {
+			for (Watch watch : watches) {
+				if (watch.future == future) {
+					watch.checkRequested = true;
+					watch.nextCheck = System.currentTimeMillis();
+					found = true;
+				}
+			}
+		}
+		if (found && !disposed) {
+			checkSoon();
+		}
+	}
+
+	/**
+	 * Runs the check job as soon as possible. The job sleeps between checks,
+	 * and scheduling a sleeping job has no effect, so it is woken up instead.
+	 */
+	protected void checkSoon() {
+		if (job.getState() == Job.SLEEPING) {
+			job.wakeUp();
+		}
+		else {
+			job.schedule();
+		}
+	}
+
+	/**
+	 * Stops watching all applications. Pending futures are canceled.
+	 */
+	public void dispose() {
+		disposed = true;
+		job.cancel();
+		List<Watch> toCancel;
+		synchronized (watches) {
+			toCancel = new ArrayList<Watch>(watches);
+			watches.clear();
+		}
+		for (Watch watch : toCancel) {
+			watch.future.cancel(false);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of applications being watched
+	 */
+	public int getWatchCount() {
+		synchronized (watches) {
+			return watches.size();
+		}
+	}
+
+	protected void checkDueWatches(IProgressMonitor monitor) {
+		long now = System.currentTimeMillis();
+		List<Watch> due = new ArrayList<Watch>();
+		synchronized (watches) {
+			for (Watch watch : watches) {
+				if (watch.nextCheck <= now) {
+					watch.checkRequested = false;
+					due.add(watch);
+				}
+			}
+		}
+		if (due.isEmpty()) {
+			return;
+		}
+
+		Map<String, CloudApplication> appsByName = new HashMap<String, CloudApplication>();
+		try {
+			for (CloudApplication app : getApplications(monitor)) {
+				appsByName.put(app.getName(), app);
+			}
+		}
+		catch (CoreException e) {
+			// May be transient. Check again later, unless watches time out
+			CloudFoundryPlugin.logError(e);
+			for (Watch watch : due) {
+				retryOrFail(watch, e);
+			}
+			return;
+		}
+
+		for (Watch watch : due) {
+			if (watch.future.isDone()) {
+				remove(watch);
+				continue;
+			}
+			CloudApplication app = appsByName.get(watch.appName);
+			if (app == null) {
+				complete(watch, CloudErrorUtil.toCoreException(
+						NLS.bind(Messages.ApplicationInstanceStartingTracker_APPLICATION_NOT_EXISTS, watch.appName)));
+				continue;
+			}
+
+			// NOTE: app state is NOT the same as the INSTANCE state. App state
+			// indicates the desired state of the app, and instances of a
+			// STARTED app may still be starting, flapping or crashed, so the
+			// instance state is only needed for started apps.
+			ApplicationStats stats = null;
+			if (app.getState() == AppState.STARTED) {
+				try {
+					stats = getApplicationStats(watch.appName, monitor);
+				}
+				catch (CoreException e) {
+					CloudFoundryPlugin.logError(e);
+					retryOrFail(watch, e);
+					continue;
+				}
+			}
+
+			int state = CloudFoundryApplicationModule.getCloudState(app, stats);
+			now = System.currentTimeMillis();
+			if (state == IServer.STATE_STARTED || state == IServer.STATE_STOPPED) {
+				complete(watch, state);
+			}
+			else if (now >= watch.deadline) {
+				complete(watch, IServer.STATE_UNKNOWN);
+			}
+			else {
+				watch.scheduleNext(now);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return basic information of all the applications of the server
+	 */
+	protected List<CloudApplication> getApplications(IProgressMonitor monitor) throws CoreException {
+		return cloudServer.getBehaviour().getBasicApplications(monitor);
+	}
+
+	protected ApplicationStats getApplicationStats(String appName, IProgressMonitor monitor) throws CoreException {
+		return cloudServer.getBehaviour().getApplicationStats(appName, monitor);
+	}
+
+	protected void scheduleNextCheck() {
+		if (disposed) {
+			return;
+		}
+		long nextCheck = Long.MAX_VALUE;
+		synchronized (watches) {
+			for (Watch watch : watches) {
+				nextCheck = Math.min(nextCheck, watch.nextCheck);
+			}
+		}
+		if (nextCheck != Long.MAX_VALUE) {
+			job.schedule(Math.max(0, nextCheck - System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Checks the application of the watch again later after its state could
+	 * not be checked, or fails the watch if it timed out.
+	 */
+	private void retryOrFail(Watch watch, CoreException error) {
+		long now = System.currentTimeMillis();
+		if (watch.future.isDone()) {
+			remove(watch);
+		}
+		else if (now >= watch.deadline) {
+			complete(watch, error);
+		}
+		else {
+			watch.scheduleNext(now);
+		}
+	}
+
+	private void complete(Watch watch, int state) {
+		remove(watch);
+		watch.future.complete(state);
+	}
+
+	private void complete(Watch watch, CoreException error) {
+		remove(watch);
+		watch.future.completeExceptionally(error);
+	}
+
+	private void remove(Watch watch) {
+		synchronized (watches) {
+			watches.remove(watch);
+		}
+	}
+
+	private static class Watch {
+
+		final String appName;
+
+		final long startTime;
+
+		final long deadline;
+
+		final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
+		final long maxInterval;
+
+		long interval;
+
+		volatile long nextCheck;
+
+		/**
+		 * Set if a check is requested while the application is being
+		 * checked, so that the request is not overridden by the next regular
+		 * check
+		 */
+		volatile boolean checkRequested;
+
+		Watch(String appName, long startTime, long timeout, long interval) {
+			this.appName = appName;
+			this.startTime = startTime;
+			this.deadline = startTime + timeout;
+			this.interval = interval;
+			this.maxInterval = Math.max(interval, MAX_INTERVAL);
+			this.nextCheck = startTime;
+		}
+
+		void scheduleNext(long now) {
+			if (now - startTime >= FAST_PERIOD) {
+				interval = Math.min(interval * 3 / 2, maxInterval);
+			}
+			nextCheck = checkRequested ? now : Math.min(now + interval, deadline);
+		}
+	}
+}
@@ -21,13 +21,17 @@
 package org.eclipse.cft.server.core.internal;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.cloudfoundry.client.lib.domain.CloudDomain;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -39,15 +43,27 @@ import org.eclipse.osgi.util.NLS;
  * IMPORTANT NOTE: This class can be referred by the branding extension from
  * adopter so this class should not be moved or renamed to avoid breakage to
  * adopters.
+ * <p/>
+ * Domains are cached for {@link #DOMAINS_TTL} ms. Once they expire, the cached
+ * domains are still returned while they are fetched again in the background,
+ * so that URL validation in the UI does not wait for the server. Only the
+ * first lookup waits for the domains to be fetched.
  */
 public class ApplicationUrlLookupService {
 
-	/** Synchronize on this object when accessing domainsPerActiveSpace */
+	/**
+	 * Time in milliseconds after which cached domains are fetched again
+	 */
+	public static final long DOMAINS_TTL = 1000 * 60 * 5;
+
+	/** Synchronize on this object when fetching domains */
 	private final Object domainsPerActiveSpaceLock = new Object();
 	
 	private final CloudFoundryServer cloudServer;
 
-	private List<CloudDomain> domainsPerActiveSpace;
+	private volatile CachedDomains domainsPerActiveSpace;
+
+	private final AtomicBoolean backgroundRefreshScheduled = new AtomicBoolean();
 
 	private ApplicationUrlValidator validator;
 
@@ -56,32 +72,88 @@ public class ApplicationUrlLookupService {
 		validator = new ApplicationUrlValidator();
 	}
 
+	/**
+	 * Fetches the domains if they were not fetched yet or have expired.
+	 * @param monitor
+	 * @throws CoreException if the domains could not be fetched
+	 */
 	public void refreshDomains(IProgressMonitor monitor) throws CoreException {
 		synchronized(domainsPerActiveSpaceLock) {
-			if(domainsPerActiveSpace == null) {
-				domainsPerActiveSpace = cloudServer.getBehaviour().getDomainsForSpace(monitor);
+			// Another thread may have fetched the domains while waiting for
+			// the lock
+			CachedDomains cached = domainsPerActiveSpace;
+			if (cached == null || cached.isExpired()) {
+				fetchDomains(monitor);
 			}
 		}
 	}
 
+	/**
+	 * Discards the cached domains, so that they are fetched again on next
+	 * access, for example after a domain was added to the space.
+	 */
+	public void invalidateDomains() {
+		domainsPerActiveSpace = null;
+	}
+
+	private void fetchDomains(IProgressMonitor monitor) throws CoreException {
+		domainsPerActiveSpace = new CachedDomains(cloudServer.getBehaviour().getDomainsForSpace(monitor));
+	}
+
 	/**
 	 * Returns cached list of domains. If null or empty, refresh the list of
-	 * domains separately.
+	 * domains separately. Only waits for the server if domains were never
+	 * fetched. Expired domains are returned while they are fetched again in
+	 * the background.
 	 * @return
 	 */
 	public List<CloudDomain> getDomains() {
-		synchronized(domainsPerActiveSpaceLock) {
-			if(domainsPerActiveSpace == null) {
+		CachedDomains cached = getCachedDomains();
+		return cached != null ? cached.domains : null;
+	}
+
+	private CachedDomains getCachedDomains() {
+		CachedDomains cached = domainsPerActiveSpace;
+		if (cached == null) {
+			try {
+				refreshDomains(new NullProgressMonitor());
+			}
+			catch (CoreException e) {
+				// Convert to unchecked exception. 
+				throw new RuntimeException(e);
+			}
+			cached = domainsPerActiveSpace;
+		}
+		else if (cached.isExpired()) {
+			scheduleBackgroundRefresh();
+		}
+		return cached;
+	}
+
+	private void scheduleBackgroundRefresh() {
+		if (!backgroundRefreshScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		Job job = new Job(NLS.bind(Messages.ApplicationUrlLookupService_REFRESH_DOMAINS_JOB, cloudServer.getServerId())) {
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
 				try {
-					refreshDomains(new NullProgressMonitor());
+					refreshDomains(monitor);
 				}
 				catch (CoreException e) {
-					// Convert to unchecked exception. 
-					throw new RuntimeException(e);
+					// Keep the expired domains. Fetching is attempted again on
+					// the next lookup
+					CloudFoundryPlugin.logWarning(e.getMessage());
 				}
+				finally {
+					backgroundRefreshScheduled.set(false);
+				}
+				return Status.OK_STATUS;
 			}
-		}
-		return domainsPerActiveSpace;
+		};
+		job.setSystem(true);
+		job.schedule();
 	}
 
 	/**
@@ -142,7 +214,8 @@ public class ApplicationUrlLookupService {
 			throw new CoreException(isValidStatus);
 		}
 		
-		List<CloudDomain> domains = getDomains();
+		CachedDomains cached = getCachedDomains();
+		List<CloudDomain> domains = cached != null ? cached.domains : null;
 
 		if (domains == null || domains.isEmpty()) {
 			throw new CoreException(
@@ -164,35 +237,18 @@ public class ApplicationUrlLookupService {
 		String parsedDomainName = null;
 		String parsedSubdomainName = null;
 		if (authority != null) {
-			for (CloudDomain domain : domains) {
-				// Be sure to check for last segment rather than last String
-				// value
-				// otherwise: Example: "validdomain" is a valid domain:
-				// sub.domainvaliddomain will be parsed
-				// successfully as a valid application URL, even though
-				// "domainvaliddomain" is not a valid domain. Instead, this
-				// should be the correct
-				// URL: sub.domain.validdomain. A URL with just "validdomain"
-				// should also
-				// parse the domain part correctly (but no subdomain)
-				String domainName = domain.getName();
-				String domainSegment = '.' + domainName;
-				if (authority.equals(domainName)) {
-					parsedDomainName = domainName;
-					break;
-				}
-				else if (authority.endsWith(domainSegment)) {
-					parsedDomainName = domainName;
-					// Any portion of the authority before the separating '.' is
-					// the
-					// subdomain. To avoid including the separating '.' between
-					// subdomain and domain itself as being part of the
-					// subdomain, only parse the subdomain if there
-					// is an actual '.' before the domain value in the authority
-					if (domainSegment.length() < authority.length()) {
-						parsedSubdomainName = authority.substring(0, authority.lastIndexOf(domainSegment));
-					}
-					break;
+			// The index matches whole segments only. Example: "validdomain" is
+			// a valid domain: sub.domainvaliddomain must not be parsed as a
+			// valid application URL, as "domainvaliddomain" is not a valid
+			// domain. A URL with just "validdomain" parses the domain part
+			// correctly (but no subdomain)
+			String domainName = cached.index.getDomain(authority);
+			if (domainName != null) {
+				parsedDomainName = domainName;
+				// Any portion of the authority before the separating '.' is
+				// the subdomain
+				if (domainName.length() < authority.length()) {
+					parsedSubdomainName = authority.substring(0, authority.length() - domainName.length() - 1);
 				}
 			}
 		}
@@ -216,6 +272,34 @@ public class ApplicationUrlLookupService {
 		return getCloudApplicationURL(url.getUrl());
 	}
 
+	/**
+	 * Domains of the active space, as fetched at a given time
+	 */
+	private static class CachedDomains {
+
+		final List<CloudDomain> domains;
+
+		final DomainIndex index;
+
+		final long fetchTime;
+
+		CachedDomains(List<CloudDomain> domains) {
+			this.domains = domains;
+			List<String> names = new ArrayList<String>();
+			if (domains != null) {
+				for (CloudDomain domain : domains) {
+					names.add(domain.getName());
+				}
+			}
+			this.index = new DomainIndex(names);
+			this.fetchTime = System.currentTimeMillis();
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() - fetchTime >= DOMAINS_TTL;
+		}
+	}
+
 	/**
 	 * 
 	 * @param cloudServer
@@ -207,6 +207,16 @@ public class CloudErrorUtil {
 		return false;
 	}
 
+	/**
+	 * 
+	 * @param t
+	 * @return true if the error is a server error (5xx) returned by the
+	 * server. False otherwise
+	 */
+	public static boolean isServerError(Throwable t) {
+		return getHttpServerError(t) != null;
+	}
+
 	public static String getHostTakenError(Exception e) {
 		HttpClientErrorException badRequestException = getBadRequestException(e);
 		if (badRequestException != null) {
@@ -278,6 +278,48 @@ public class CloudFoundryPlugin extends Plugin {
 
 	public static final boolean DEFAULT_INCREMENTAL_PUBLISH_PREFERENCE_VAL = true;
 
+	/**
+	 * If enabled, resources flagged as changed during incremental publish are
+	 * always hashed again, even if their last modified time and size have not
+	 * changed.
+	 */
+	public static final String STRICT_INCREMENTAL_PUBLISH_PREFERENCE = PLUGIN_ID + ".publish.incremental.strict"; //$NON-NLS-1$
+
+	public static final boolean DEFAULT_STRICT_INCREMENTAL_PUBLISH_PREFERENCE_VAL = false;
+
+	/**
+	 * Maximum estimated memory in bytes used to cache sha1 entries of
+	 * deployed resources.
+	 */
+	public static final String DEPLOYED_RESOURCES_CACHE_MAX_MEMORY_PREFERENCE = PLUGIN_ID
+			+ ".publish.cache.maxMemory"; //$NON-NLS-1$
+
+	/**
+	 * If enabled, refreshing all applications only fetches complete
+	 * information for applications that changed since the last refresh, or
+	 * that are starting or stopping.
+	 */
+	public static final String INCREMENTAL_REFRESH_PREFERENCE = PLUGIN_ID + ".refresh.incremental"; //$NON-NLS-1$
+
+	public static final boolean DEFAULT_INCREMENTAL_REFRESH_PREFERENCE_VAL = true;
+
+	/**
+	 * Maximum number of applications of a server that are refreshed at the
+	 * same time. Read when the refresh executor of a server is created.
+	 */
+	public static final String REFRESH_PARALLELISM_PREFERENCE = PLUGIN_ID + ".refresh.parallelism"; //$NON-NLS-1$
+
+	public static final int DEFAULT_REFRESH_PARALLELISM = 4;
+
+	/**
+	 * If enabled, the state of a starting application is checked as soon as
+	 * its log stream indicates that it finished staging or started running,
+	 * and otherwise only at a low frequency.
+	 */
+	public static final String LOG_START_DETECTION_PREFERENCE = PLUGIN_ID + ".start.detection.logs"; //$NON-NLS-1$
+
+	public static final boolean DEFAULT_LOG_START_DETECTION_PREFERENCE_VAL = false;
+
 	private static CloudFoundryCallback callback;
 
 	private static CloudFoundryTargetManager targetManager;
@@ -291,7 +333,13 @@ public class CloudFoundryPlugin extends Plugin {
 
 	private static IProxyService proxyService;
 
-	private DeployedResourceCache sha1Cache = new DeployedResourceCache();
+	private static final String DEPLOYED_RESOURCES_INDEX_FOLDER = "deployedResources"; //$NON-NLS-1$
+
+	private DeployedResourceCache sha1Cache;
+
+	private static final String MODULE_JAR_CACHE_FOLDER = "moduleJars"; //$NON-NLS-1$
+
+	private ModuleJarCache moduleJarCache;
 
 	private InstanceScope INSTANCE_SCOPE = new InstanceScope();
 
@@ -368,11 +416,92 @@ public class CloudFoundryPlugin extends Plugin {
 				DEFAULT_INCREMENTAL_PUBLISH_PREFERENCE_VAL);
 	}
 
+	public synchronized void setStrictIncrementalPublish(boolean strict) {
+		IEclipsePreferences prefs = getPreferences();
+		prefs.putBoolean(STRICT_INCREMENTAL_PUBLISH_PREFERENCE, strict);
+		try {
+			prefs.flush();
+		}
+		catch (BackingStoreException e) {
+			logError(e);
+		}
+	}
+
+	public synchronized boolean getStrictIncrementalPublish() {
+		return getPreferences().getBoolean(STRICT_INCREMENTAL_PUBLISH_PREFERENCE,
+				DEFAULT_STRICT_INCREMENTAL_PUBLISH_PREFERENCE_VAL);
+	}
+
+	public synchronized void setIncrementalRefresh(boolean incrementalRefresh) {
+		IEclipsePreferences prefs = getPreferences();
+		prefs.putBoolean(INCREMENTAL_REFRESH_PREFERENCE, incrementalRefresh);
+		try {
+			prefs.flush();
+		}
+		catch (BackingStoreException e) {
+			logError(e);
+		}
+	}
+
+	public synchronized boolean getIncrementalRefresh() {
+		return getPreferences().getBoolean(INCREMENTAL_REFRESH_PREFERENCE, DEFAULT_INCREMENTAL_REFRESH_PREFERENCE_VAL);
+	}
+
+	public synchronized int getRefreshParallelism() {
+		return Math.max(1, getPreferences().getInt(REFRESH_PARALLELISM_PREFERENCE, DEFAULT_REFRESH_PARALLELISM));
+	}
+
+	public synchronized void setLogStartDetection(boolean logStartDetection) {
+		IEclipsePreferences prefs = getPreferences();
+		prefs.putBoolean(LOG_START_DETECTION_PREFERENCE, logStartDetection);
+		try {
+			prefs.flush();
+		}
+		catch (BackingStoreException e) {
+			logError(e);
+		}
+	}
+
+	public synchronized boolean getLogStartDetection() {
+		return getPreferences().getBoolean(LOG_START_DETECTION_PREFERENCE, DEFAULT_LOG_START_DETECTION_PREFERENCE_VAL);
+	}
+
 	public IEclipsePreferences getPreferences() {
 		return INSTANCE_SCOPE.getNode(PLUGIN_ID);
 	}
 
+	/**
+	 * 
+	 * @return cache of jars assembled from child modules, or null if the
+	 * plugin state location is not available
+	 */
+	public synchronized ModuleJarCache getModuleJarCache() {
+		if (moduleJarCache == null) {
+			try {
+				moduleJarCache = new ModuleJarCache(getStateLocation().append(MODULE_JAR_CACHE_FOLDER).toFile(),
+						ModuleJarCache.DEFAULT_MAX_SIZE, ModuleJarCache.DEFAULT_MAX_AGE);
+			}
+			catch (IllegalStateException e) {
+				logError(e);
+			}
+		}
+		return moduleJarCache;
+	}
+
 	public synchronized DeployedResourceCache getDeployedResourcesCache() {
+		if (sha1Cache == null) {
+			DeployedResourceIndex index = null;
+			try {
+				index = new DeployedResourceIndex(getStateLocation().append(DEPLOYED_RESOURCES_INDEX_FOLDER).toFile());
+			}
+			catch (IllegalStateException e) {
+				// State location not available. Only cache entries in memory
+				logError(e);
+			}
+			long maxMemory = getPreferences().getLong(DEPLOYED_RESOURCES_CACHE_MAX_MEMORY_PREFERENCE,
+					DeployedResourceCache.DEFAULT_MAX_MEMORY);
+			sha1Cache = new DeployedResourceCache(index, maxMemory);
+		}
 		return sha1Cache;
 	}
 
@@ -456,6 +585,13 @@ public class CloudFoundryPlugin extends Plugin {
 			moduleCache = null;
 		}
 
+		synchronized (this) {
+			if (sha1Cache != null) {
+				sha1Cache.dispose();
+				sha1Cache = null;
+			}
+		}
+
 		plugin = null;
 		super.stop(context);
 	}
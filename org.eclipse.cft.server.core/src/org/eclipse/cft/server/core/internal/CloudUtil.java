@@ -20,29 +20,20 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.cloudfoundry.client.lib.CloudCredentials;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.ApplicationDeploymentInfo;
 import org.eclipse.cft.server.core.CFServiceInstance;
 import org.eclipse.cft.server.core.EnvironmentVariable;
-import org.eclipse.core.resources.IContainer;
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -58,7 +49,6 @@ import org.eclipse.wst.server.core.IModuleType;
 import org.eclipse.wst.server.core.internal.ProgressUtil;
 import org.eclipse.wst.server.core.internal.Server;
 import org.eclipse.wst.server.core.internal.ServerPlugin;
-import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
 import org.eclipse.wst.server.core.model.IModuleResource;
 import org.eclipse.wst.server.core.util.ModuleFile;
@@ -194,8 +184,18 @@ public class CloudUtil {
 							jarPath = jarPath.removeLastSegments(1);
 
 							IModuleResource[] mr = server.getResources(new IModule[] { child });
-							IStatus[] status = helper.publishZip(mr, new Path(jarFile.getAbsolutePath()), monitor);
-							merge(result, status);
+
+							// Reuse the jar assembled in a previous publish if
+							// the child module has not changed since
+							ModuleJarCache jarCache = CloudFoundryPlugin.getDefault().getModuleJarCache();
+							String digest = jarCache != null ? jarCache.getDigest(mr) : null;
+							if (digest == null || !jarCache.restore(digest, jarFile)) {
+								IStatus[] status = helper.publishZip(mr, new Path(jarFile.getAbsolutePath()), monitor);
+								merge(result, status);
+								if (digest != null && !hasError(status) && jarFile.isFile()) {
+									jarCache.store(digest, jarFile);
+								}
+							}
 							resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
 						}
 					}
@@ -246,6 +246,17 @@ public class CloudUtil {
 		return tempFile;
 	}
 
+	private static boolean hasError(IStatus[] status) {
+		if (status != null) {
+			for (IStatus st : status) {
+				if (st != null && st.getSeverity() == IStatus.ERROR) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	protected static void throwException(List<IStatus> status, String message) throws CoreException {
 		if (status == null || status.size() == 0) {
 			return;
@@ -254,17 +265,19 @@ public class CloudUtil {
 				new MultiStatus(CloudFoundryPlugin.PLUGIN_ID, 0, status.toArray(new IStatus[0]), message, null));
 	}
 
+	/**
+	 * Writes a zip file containing all folders in the given resources, and the
+	 * files in the given filter. Safe to call concurrently from separate
+	 * publish operations.
+	 * @see ZipAssembler
+	 */
 	public static IStatus[] publishZip(List<IModuleResource> allResources, File tempFile,
 			Set<IModuleResource> filterInFiles, IProgressMonitor monitor) {
 
 		monitor = ProgressUtil.getMonitorFor(monitor);
 
 		try {
-			BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(tempFile));
-			ZipOutputStream zout = new ZipOutputStream(bout);
-			addZipEntries(zout, allResources, filterInFiles);
-			zout.close();
-
+			new ZipAssembler().assemble(allResources, filterInFiles, tempFile);
 		}
 		catch (CoreException e) {
 			return new IStatus[] { e.getStatus() };
@@ -281,10 +294,6 @@ public class CloudUtil {
 		return EMPTY_STATUS;
 	}
 
-	private static final int BUFFER = 65536;
-
-	private static byte[] buf = new byte[BUFFER];
-
 	public static String getZipRelativeName(IModuleResource resource) {
 		IPath path = resource.getModuleRelativePath().append(resource.getName());
 		String entryPath = path.toPortableString();
@@ -296,83 +305,6 @@ public class CloudUtil {
 
 	}
 
-	private static void addZipEntries(ZipOutputStream out, List<IModuleResource> allResources,
-			Set<IModuleResource> filterInFiles) throws Exception {
-		if (allResources == null)
-			return;
-
-		for (IModuleResource resource : allResources) {
-			if (resource instanceof IModuleFolder) {
-
-				IModuleResource[] folderResources = ((IModuleFolder) resource).members();
-
-				String entryPath = getZipRelativeName(resource);
-
-				ZipEntry zipEntry = new ZipEntry(entryPath);
-
-				long timeStamp = 0;
-				IContainer folder = (IContainer) resource.getAdapter(IContainer.class);
-				if (folder != null) {
-					timeStamp = folder.getLocalTimeStamp();
-				}
-
-				if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-					zipEntry.setTime(timeStamp);
-				}
-
-				out.putNextEntry(zipEntry);
-				out.closeEntry();
-
-				addZipEntries(out, Arrays.asList(folderResources), filterInFiles);
-				continue;
-			}
-
-			IModuleFile moduleFile = (IModuleFile) resource;
-			// Only add files that are in the filterInList
-			if (!filterInFiles.contains(moduleFile)) {
-				continue;
-			}
-
-			String entryPath = getZipRelativeName(resource);
-
-			ZipEntry zipEntry = new ZipEntry(entryPath);
-
-			InputStream input = null;
-			long timeStamp = 0;
-			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
-			if (iFile != null) {
-				timeStamp = iFile.getLocalTimeStamp();
-				input = iFile.getContents();
-			}
-			else {
-				File file = (File) moduleFile.getAdapter(File.class);
-				timeStamp = file.lastModified();
-				input = new FileInputStream(file);
-			}
-
-			if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-				zipEntry.setTime(timeStamp);
-			}
-
-			out.putNextEntry(zipEntry);
-
-			try {
-				int n = 0;
-				while (n > -1) {
-					n = input.read(buf);
-					if (n > 0) {
-						out.write(buf, 0, n);
-					}
-				}
-			}
-			finally {
-				input.close();
-			}
-
-			out.closeEntry();
-		}
-	}
-
 	/**
 	 * Creates a temporary folder and file with the given names. It is the
 	 * responsibility of the caller to properly dispose the folder and file
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Pivotal Software, Inc. 
+ * Copyright (c) 2012, 2016 Pivotal Software, Inc. 
  * 
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -20,59 +20,418 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
-import java.util.HashMap;
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cache for sha1 hash entries and file sizes for incremental publishing of
  * deployed resources. This avoid recalculating hash entries for resources that
  * have not changed in the server. A server poll may still required to obtain a
  * list of unchanged resources.
+ * <p/>
+ * Entries are kept in a separate concurrent map per application, so that
+ * publish operations for different applications, or different servers, do not
+ * contend with each other. The memory used by the cache is bounded: when the
+ * estimated size of all entries exceeds the configured maximum, the entries of
+ * the least recently used applications are evicted.
+ * <p/>
+ * If a {@link DeployedResourceIndex} is set, entries are also persisted, and
+ * the entries of an application that is not in memory (for example, after a
+ * restart, or after it was evicted) are loaded from the persisted index, so
+ * that sha1 codes survive restarts.
  * 
  */
 public class DeployedResourceCache {
-	private final Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> cacheMap = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>();
 
-	public synchronized void add(CachedDeployedApplication applicationID, DeployedResourceEntry entry) {
-		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
+	/**
+	 * Default maximum estimated memory, in bytes, used by cached entries.
+	 */
+	public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+
+	/**
+	 * Approximate memory used by an entry, excluding its name: the entry
+	 * object, its map node and the name string header.
+	 */
+	private static final int ENTRY_OVERHEAD = 112;
+
+	private final ConcurrentMap<CachedDeployedApplication, AppEntries> cacheMap = new ConcurrentHashMap<CachedDeployedApplication, AppEntries>();
+
+	private final DeployedResourceIndex index;
+
+	private final long maxMemory;
+
+	private final AtomicLong memory = new AtomicLong();
+
+	/**
+	 * Logical clock used to order application access for LRU eviction.
+	 */
+	private final AtomicLong accessClock = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final Object evictionLock = new Object();
+
+	public DeployedResourceCache() {
+		this(null);
+	}
+
+	/**
+	 * 
+	 * @param index persisted index of entries. May be null if entries should
+	 * only be kept in memory.
+	 */
+	public DeployedResourceCache(DeployedResourceIndex index) {
+		this(index, DEFAULT_MAX_MEMORY);
+	}
+
+	/**
+	 * 
+	 * @param index persisted index of entries. May be null if entries should
+	 * only be kept in memory.
+	 * @param maxMemory maximum estimated memory in bytes used by cached
+	 * entries, before applications are evicted from the cache.
+	 */
+	public DeployedResourceCache(DeployedResourceIndex index, long maxMemory) {
+		this.index = index;
+		this.maxMemory = maxMemory;
+	}
+
+	public void add(CachedDeployedApplication applicationID, DeployedResourceEntry entry) {
+		AppEntries appEntries = getAppEntries(applicationID);
+		DeployedResourceEntry old = appEntries.entries.put(entry.getZipRelativeFileName(), entry);
+		account(appEntries, estimateSize(entry) - (old != null ? estimateSize(old) : 0));
+
+		if (index != null) {
+			index.changed(applicationID, appEntries.entries);
+		}
+		evictIfNeeded(applicationID);
+	}
+
+	public DeployedResourceEntry getEntry(CachedDeployedApplication applicationID, String zipRelativeFileName) {
+		DeployedResourceEntry entry = getAppEntries(applicationID).entries.get(zipRelativeFileName);
+		if (entry != null) {
+			hitCount.incrementAndGet();
+		}
+		else {
+			missCount.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * 
+	 * @return number of lookups that returned a cached entry
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of lookups that did not find a cached entry
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of applications evicted from memory
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * 
+	 * @return estimated memory in bytes currently used by cached entries
+	 */
+	public long getEstimatedMemory() {
+		return memory.get();
+	}
+
+	/**
+	 * Discards the entries of the given application, for example because it
+	 * was deleted, including its persisted index.
+	 * @param applicationID
+	 */
+	public void remove(CachedDeployedApplication applicationID) {
+		discard(cacheMap.remove(applicationID));
+		if (index != null) {
+			index.delete(applicationID);
+		}
+	}
+
+	/**
+	 * Discards the entries of all applications of the given server, for
+	 * example because the server was deleted, including their persisted
+	 * indexes.
+	 * @param serverId
+	 */
+	public void removeServer(String serverId) {
+		for (CachedDeployedApplication applicationID : cacheMap.keySet()) {
+			if (serverId != null ? serverId.equals(applicationID.getServerId())
+					: applicationID.getServerId() == null) {
+				discard(cacheMap.remove(applicationID));
+			}
+		}
+		if (index != null) {
+			index.deleteServer(serverId);
+		}
+	}
+
+	/**
+	 * Writes any pending changes to the persisted index, if one is set.
+	 */
+	public void dispose() {
+		if (index != null) {
+			index.dispose();
+		}
+	}
+
+	/**
+	 * 
+	 * @return non-null entries for the given application. Entries are loaded
+	 * from the persisted index if the application is not yet in memory.
+	 */
+	protected AppEntries getAppEntries(CachedDeployedApplication applicationID) {
+		AppEntries appEntries = cacheMap.get(applicationID);
 		if (appEntries == null) {
-			appEntries = new HashMap<String, DeployedResourceCache.DeployedResourceEntry>();
-			cacheMap.put(applicationID, appEntries);
+			// Load outside of the map so that disk access does not block
+			// access to other applications. Concurrent loads of the same
+			// application are harmless, as only one is kept.
+			AppEntries loaded = new AppEntries();
+			long loadedMemory = 0;
+			if (index != null) {
+				for (DeployedResourceEntry entry : index.read(applicationID).values()) {
+					loaded.entries.put(entry.getZipRelativeFileName(), entry);
+					loadedMemory += estimateSize(entry);
+				}
+			}
+			appEntries = cacheMap.putIfAbsent(applicationID, loaded);
+			if (appEntries == null) {
+				appEntries = loaded;
+				account(loaded, loadedMemory);
+				evictIfNeeded(applicationID);
+			}
 		}
-		appEntries.put(entry.getZipRelativeFileName(), entry);
+		appEntries.lastAccess = accessClock.incrementAndGet();
+		return appEntries;
 	}
 
-	public synchronized DeployedResourceEntry getEntry(CachedDeployedApplication applicationID,
-			String zipRelativeFileName) {
-		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
+	/**
+	 * Adds the given change in size of the entries of an application to the
+	 * estimated memory, unless the application was evicted, in which case
+	 * its entries are no longer counted.
+	 */
+	private void account(AppEntries appEntries, long delta) {
+		synchronized (appEntries) {
+			if (!appEntries.evicted) {
+				appEntries.memory += delta;
+				memory.addAndGet(delta);
+			}
+		}
+	}
+
+	/**
+	 * Evicts least recently used applications, other than the given
+	 * application, until the estimated memory is within the maximum.
+	 */
+	protected void evictIfNeeded(CachedDeployedApplication current) {
+		if (memory.get() <= maxMemory) {
+			return;
+		}
+		synchronized (evictionLock) {
+			while (memory.get() > maxMemory) {
+				CachedDeployedApplication lru = null;
+				long lruAccess = Long.MAX_VALUE;
+				for (Map.Entry<CachedDeployedApplication, AppEntries> entry : cacheMap.entrySet()) {
+					if (!entry.getKey().equals(current) && entry.getValue().lastAccess < lruAccess) {
+						lru = entry.getKey();
+						lruAccess = entry.getValue().lastAccess;
+					}
+				}
+				if (lru == null) {
+					// Only the current app is left. Keep it even if it is
+					// larger than the maximum, as it is being published.
+					return;
+				}
+				if (discard(cacheMap.remove(lru))) {
+					evictionCount.incrementAndGet();
+					CloudFoundryPlugin.trace("Evicted deployed resource cache entries for - " + lru); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops counting the entries of an application removed from the cache.
+	 * @return true if entries were given, false if null
+	 */
+	private boolean discard(AppEntries appEntries) {
+		if (appEntries == null) {
+			return false;
+		}
+		// Entries added concurrently to the removed application are not
+		// counted once it is marked as evicted
+		synchronized (appEntries) {
+			appEntries.evicted = true;
+			memory.addAndGet(-appEntries.memory);
+			appEntries.memory = 0;
+		}
+		return true;
+	}
+
+	protected static long estimateSize(DeployedResourceEntry entry) {
+		String name = entry.getZipRelativeFileName();
+		return ENTRY_OVERHEAD + (name != null ? 2 * name.length() : 0);
+	}
+
+	/**
+	 * Cached entries of one application.
+	 */
+	protected static class AppEntries {
+
+		final ConcurrentMap<String, DeployedResourceEntry> entries = new ConcurrentHashMap<String, DeployedResourceEntry>();
+
+		/**
+		 * Estimated size of the entries counted in the memory of the cache.
+		 * Guarded by this object.
+		 */
+		long memory;
+
+		/**
+		 * True once removed from the cache. Guarded by this object.
+		 */
+		boolean evicted;
+
+		volatile long lastAccess;
 
-		return appEntries != null ? appEntries.get(zipRelativeFileName) : null;
 	}
 
 	public static class DeployedResourceEntry {
-		private final byte[] sha1;
+
+		public static final long UNDEFINED_LAST_MODIFIED = -1;
+
+		private static final int SHA1_LENGTH = 20;
+
+		/*
+		 * SHA-1 digests are stored in primitive fields rather than in a byte
+		 * array to avoid the array object overhead per entry. Digests that are
+		 * not SHA-1 length are kept as-is in otherDigest.
+		 */
+		private final long sha1Bits0;
+
+		private final long sha1Bits1;
+
+		private final int sha1Bits2;
+
+		private final boolean hasSha1;
+
+		private final byte[] otherDigest;
 
 		private final long fileSize;
 
 		private final String zipRelativeFileName;
 
+		private final long lastModified;
+
 		public DeployedResourceEntry(byte[] sha1, long fileSize, String zipRelativeFileName) {
-			this.sha1 = sha1;
+			this(sha1, fileSize, zipRelativeFileName, UNDEFINED_LAST_MODIFIED);
+		}
+
+		/**
+		 * 
+		 * @param sha1
+		 * @param fileSize
+		 * @param zipRelativeFileName
+		 * @param lastModified last modified time of the local file when the
+		 * sha1 was computed, or {@link #UNDEFINED_LAST_MODIFIED} if not known
+		 */
+		public DeployedResourceEntry(byte[] sha1, long fileSize, String zipRelativeFileName, long lastModified) {
+			this.hasSha1 = sha1 != null && sha1.length == SHA1_LENGTH;
+			if (hasSha1) {
+				this.sha1Bits0 = readLong(sha1, 0);
+				this.sha1Bits1 = readLong(sha1, 8);
+				this.sha1Bits2 = (int) readBits(sha1, 16, 4);
+				this.otherDigest = null;
+			}
+			else {
+				this.sha1Bits0 = 0;
+				this.sha1Bits1 = 0;
+				this.sha1Bits2 = 0;
+				this.otherDigest = sha1;
+			}
 			this.fileSize = fileSize;
 			this.zipRelativeFileName = zipRelativeFileName;
+			this.lastModified = lastModified;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * 
+		 * @param file local file for this entry
+		 * @return true if the entry was computed for the current content of
+		 * the file, based on the file's last modified time and length. False
+		 * if the file has changed, or the last modified time was not recorded
+		 * for this entry.
+		 */
+		public boolean isUpToDate(File file) {
+			return file != null && lastModified != UNDEFINED_LAST_MODIFIED && file.lastModified() == lastModified
+					&& file.length() == fileSize;
 		}
 
 		public String getZipRelativeFileName() {
 			return zipRelativeFileName;
 		}
 
+		/**
+		 * 
+		 * @return copy of the sha1 digest, or null if not set
+		 */
 		public byte[] getSha1() {
+			if (!hasSha1) {
+				return otherDigest;
+			}
+			byte[] sha1 = new byte[SHA1_LENGTH];
+			writeBits(sha1, 0, 8, sha1Bits0);
+			writeBits(sha1, 8, 8, sha1Bits1);
+			writeBits(sha1, 16, 4, sha1Bits2);
 			return sha1;
 		}
 
 		public long getFileSize() {
 			return fileSize;
 		}
+
+		private static long readLong(byte[] bytes, int offset) {
+			return readBits(bytes, offset, 8);
+		}
+
+		private static long readBits(byte[] bytes, int offset, int length) {
+			long value = 0;
+			for (int i = offset; i < offset + length; i++) {
+				value = (value << 8) | (bytes[i] & 0xFF);
+			}
+			return value;
+		}
+
+		private static void writeBits(byte[] bytes, int offset, int length, long value) {
+			for (int i = offset + length - 1; i >= offset; i--) {
+				bytes[i] = (byte) value;
+				value >>>= 8;
+			}
+		}
 	}
 
 	/**
@@ -82,12 +441,29 @@ public class DeployedResourceCache {
 	 */
 	public static class CachedDeployedApplication {
 
+		private final String serverId;
+
 		private final String appName;
 
 		public CachedDeployedApplication(String appName) {
+			this(null, appName);
+		}
+
+		/**
+		 * 
+		 * @param serverId ID of the server where the app is deployed. May be
+		 * null if not known.
+		 * @param appName
+		 */
+		public CachedDeployedApplication(String serverId, String appName) {
+			this.serverId = serverId;
 			this.appName = appName;
 		}
 
+		public String getServerId() {
+			return serverId;
+		}
+
 		public String getAppName() {
 			return appName;
 		}
@@ -95,6 +471,7 @@ public class DeployedResourceCache {
 		public int hashCode() {
 			final int prime = 31;
 			int result = 1;
+			result = prime * result + ((serverId == null) ? 0 : serverId.hashCode());
 			result = prime * result + ((appName == null) ? 0 : appName.hashCode());
 			return result;
 		}
@@ -111,6 +488,14 @@ public class DeployedResourceCache {
 				return false;
 			}
 			CachedDeployedApplication other = (CachedDeployedApplication) obj;
+			if (serverId == null) {
+				if (other.serverId != null) {
+					return false;
+				}
+			}
+			else if (!serverId.equals(other.serverId)) {
+				return false;
+			}
 			if (appName == null) {
 				if (other.appName != null) {
 					return false;
@@ -123,7 +508,7 @@ public class DeployedResourceCache {
 		}
 
 		public String toString() {
-			return appName.toString();
+			return serverId != null ? serverId + " - " + appName : String.valueOf(appName); //$NON-NLS-1$
 		}
 
 	}
@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.DeployedResourceEntry;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Persistent, on-disk index of {@link DeployedResourceEntry} for deployed
+ * applications. Each application of each server is stored in its own index
+ * file under the plugin state location, so that sha1 codes computed in one
+ * session can be reused in the next one without re-hashing every file of the
+ * application.
+ * <p/>
+ * Index files are read lazily the first time an application is accessed by
+ * the {@link DeployedResourceCache}, which owns the entries in memory. Changed
+ * applications are written back to disk by a background job, and any remaining
+ * changes are written when the index is disposed. Index files of deleted
+ * applications and servers are deleted (see
+ * {@link #delete(CachedDeployedApplication)} and {@link #deleteServer(String)}
+ * ). The index only references
+ * the entries of an application until they are written, and reads return
+ * these entries rather than the file until then. Entries are keyed by
+ * zip relative name, and callers are expected to validate an entry against the
+ * local file's last modified time and length before using it (see
+ * {@link DeployedResourceEntry#isUpToDate(File)}).
+ *
+ */
+public class DeployedResourceIndex {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String INDEX_FILE_EXTENSION = ".idx"; //$NON-NLS-1$
+
+	/**
+	 * Delay in milliseconds between a change in the index and the background
+	 * write of that change to disk. Changes made during this time are
+	 * coalesced in one write.
+	 */
+	private static final long FLUSH_DELAY = 5000;
+
+	private final File indexFolder;
+
+	/**
+	 * Live entries of applications that changed since the last write. The
+	 * maps must support concurrent iteration, as they may be modified while
+	 * being written.
+	 */
+	private final Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> dirtyApps = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>();
+
+	/**
+	 * Entries of applications that are being written.
+	 */
+	private final Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> writingApps = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>();
+
+	private final Job flushJob;
+
+	private final Object writeLock = new Object();
+
+	/**
+	 *
+	 * @param indexFolder folder where index files are stored. It is created
+	 * when the index is first written.
+	 */
+	public DeployedResourceIndex(File indexFolder) {
+		this.indexFolder = indexFolder;
+		this.flushJob = new Job(Messages.DeployedResourceIndex_FLUSH_JOB) {
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				flush();
+				return Status.OK_STATUS;
+			}
+		};
+		this.flushJob.setSystem(true);
+	}
+
+	/**
+	 * Notifies the index that the entries of the given app have changed, and
+	 * schedules a write of the app index.
+	 * @param app
+	 * @param entries all current entries of the app. The map must support
+	 * concurrent iteration.
+	 */
+	public synchronized void changed(CachedDeployedApplication app, Map<String, DeployedResourceEntry> entries) {
+		dirtyApps.put(app, entries);
+		flushJob.schedule(FLUSH_DELAY);
+	}
+
+	/**
+	 * Writes all modified application indexes to disk.
+	 */
+	public void flush() {
+		Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> toWrite;
+		synchronized (this) {
+			toWrite = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>(dirtyApps);
+			writingApps.putAll(dirtyApps);
+			dirtyApps.clear();
+		}
+
+		// Serialise writes, as the background job and dispose may flush at
+		// the same time
+		synchronized (writeLock) {
+			for (Map.Entry<CachedDeployedApplication, Map<String, DeployedResourceEntry>> entry : toWrite
+					.entrySet()) {
+				synchronized (this) {
+					if (writingApps.get(entry.getKey()) != entry.getValue()) {
+						// Deleted, or written by a later flush
+						continue;
+					}
+				}
+				try {
+					write(entry.getKey(), new ArrayList<DeployedResourceEntry>(entry.getValue().values()));
+				}
+				catch (IOException e) {
+					CloudFoundryPlugin.logError("Failed to write deployed resource index for application - " //$NON-NLS-1$
+							+ entry.getKey(), e);
+				}
+				finally {
+					synchronized (this) {
+						if (writingApps.get(entry.getKey()) == entry.getValue()) {
+							writingApps.remove(entry.getKey());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards pending changes of the given app, and deletes its index file.
+	 * @param app
+	 */
+	public void delete(CachedDeployedApplication app) {
+		synchronized (this) {
+			dirtyApps.remove(app);
+			writingApps.remove(app);
+		}
+		// Wait for a write in progress, so that it does not recreate the file
+		synchronized (writeLock) {
+			File indexFile = getIndexFile(app);
+			if (indexFile != null) {
+				indexFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Discards pending changes of all apps of the given server, and deletes
+	 * their index files.
+	 * @param serverId
+	 */
+	public void deleteServer(String serverId) {
+		synchronized (this) {
+			removeServer(dirtyApps, serverId);
+			removeServer(writingApps, serverId);
+		}
+		synchronized (writeLock) {
+			File[] indexFiles = indexFolder != null ? indexFolder.listFiles() : null;
+			if (indexFiles == null) {
+				return;
+			}
+			for (File indexFile : indexFiles) {
+				// File names are digests, so the server is read from the
+				// index itself
+				if (indexFile.getName().endsWith(INDEX_FILE_EXTENSION)
+						&& safeString(serverId).equals(readServerId(indexFile))) {
+					indexFile.delete();
+				}
+			}
+		}
+	}
+
+	private static void removeServer(Map<CachedDeployedApplication, ?> apps, String serverId) {
+		for (Iterator<CachedDeployedApplication> it = apps.keySet().iterator(); it.hasNext();) {
+			if (safeString(serverId).equals(safeString(it.next().getServerId()))) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return ID of the server of the given index file, or null if it cannot
+	 * be read
+	 */
+	protected String readServerId(File indexFile) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			return in.readInt() == FORMAT_VERSION ? in.readUTF() : null;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		finally {
+			if (in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return copy of the entries of the given app that are not written yet,
+	 * or null if all changes of the app are written
+	 */
+	private synchronized Map<String, DeployedResourceEntry> getPending(CachedDeployedApplication app) {
+		Map<String, DeployedResourceEntry> pending = dirtyApps.get(app);
+		if (pending == null) {
+			pending = writingApps.get(app);
+		}
+		return pending != null ? new HashMap<String, DeployedResourceEntry>(pending) : null;
+	}
+
+	/**
+	 * Cancels any pending background write and writes all pending changes to
+	 * disk.
+	 */
+	public void dispose() {
+		flushJob.cancel();
+		flush();
+	}
+
+	/**
+	 *
+	 * @param app
+	 * @return non-null persisted entries for the given app, keyed by zip
+	 * relative name, including changes that are not written yet. Empty if the
+	 * app has no index or the index cannot be read. Entries may be stale, and
+	 * should be validated against the local file before they are used.
+	 */
+	public Map<String, DeployedResourceEntry> read(CachedDeployedApplication app) {
+		Map<String, DeployedResourceEntry> pending = getPending(app);
+		if (pending != null) {
+			return pending;
+		}
+		Map<String, DeployedResourceEntry> entries = new HashMap<String, DeployedResourceEntry>();
+		File indexFile = getIndexFile(app);
+		if (indexFile == null || !indexFile.isFile()) {
+			return entries;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != FORMAT_VERSION || !safeString(app.getServerId()).equals(in.readUTF())
+					|| !safeString(app.getAppName()).equals(in.readUTF())) {
+				// Old format or hash collision. Ignore the index and let it be
+				// overwritten on next flush
+				return entries;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				long lastModified = in.readLong();
+				long fileSize = in.readLong();
+				byte[] sha1 = new byte[in.readUnsignedShort()];
+				in.readFully(sha1);
+				entries.put(name, new DeployedResourceEntry(sha1, fileSize, name, lastModified));
+			}
+		}
+		catch (IOException e) {
+			// Corrupt index. Discard what was read as it may be incomplete
+			entries.clear();
+			CloudFoundryPlugin.logWarning("Unable to read deployed resource index for application - " + app //$NON-NLS-1$
+					+ ". Resources will be recalculated. Error: " + e.getMessage()); //$NON-NLS-1$
+		}
+		finally {
+			if (in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return entries;
+	}
+
+	protected void write(CachedDeployedApplication app, List<DeployedResourceEntry> entries) throws IOException {
+		File indexFile = getIndexFile(app);
+		if (indexFile == null) {
+			return;
+		}
+		if (!indexFolder.exists() && !indexFolder.mkdirs()) {
+			throw new IOException("Unable to create folder " + indexFolder); //$NON-NLS-1$
+		}
+
+		// Write to a temporary file first so that a partially written index
+		// never replaces a valid one
+		File tempFile = new File(indexFolder, indexFile.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(safeString(app.getServerId()));
+			out.writeUTF(safeString(app.getAppName()));
+			out.writeInt(entries.size());
+			for (DeployedResourceEntry entry : entries) {
+				byte[] sha1 = entry.getSha1() != null ? entry.getSha1() : new byte[0];
+				out.writeUTF(entry.getZipRelativeFileName());
+				out.writeLong(entry.getLastModified());
+				out.writeLong(entry.getFileSize());
+				out.writeShort(sha1.length);
+				out.write(sha1);
+			}
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 *
+	 * @return index file for the given application, or null if the index
+	 * location is not available.
+	 */
+	protected File getIndexFile(CachedDeployedApplication app) {
+		if (indexFolder == null) {
+			return null;
+		}
+		// Server IDs and app names may contain characters that are not valid
+		// in file names, so use a digest of both as the file name. The actual
+		// values are stored in the index and verified when read.
+		String key = safeString(app.getServerId()) + '\n' + safeString(app.getAppName());
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+			StringBuilder fileName = new StringBuilder();
+			for (byte b : digest) {
+				fileName.append(String.format("%02x", b)); //$NON-NLS-1$
+			}
+			fileName.append(INDEX_FILE_EXTENSION);
+			return new File(indexFolder, fileName.toString());
+		}
+		catch (NoSuchAlgorithmException e) {
+			CloudFoundryPlugin.logError(e);
+			return null;
+		}
+	}
+
+	private static String safeString(String value) {
+		return value != null ? value : ""; //$NON-NLS-1$
+	}
+}
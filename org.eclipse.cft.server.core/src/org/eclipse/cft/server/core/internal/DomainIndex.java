@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the domain of an application URL authority (e.g. "cfapps.io" in
+ * "myapp.cfapps.io") among a fixed set of domains, in time proportional to the
+ * length of the authority rather than to the number of domains.
+ * <p/>
+ * Domains are stored in a trie of their segments, from the last segment to the
+ * first, so that the domains matching an authority are found by walking its
+ * segments from the end. Only whole segments match: "domainvaliddomain" does
+ * not match the domain "validdomain".
+ * <p/>
+ * Immutable once built, and therefore thread safe.
+ *
+ */
+public class DomainIndex {
+
+	private final Node root = new Node();
+
+	/**
+	 *
+	 * @param domainNames names of the domains to index. Null and empty names
+	 * are ignored.
+	 */
+	public DomainIndex(Iterable<String> domainNames) {
+		for (String domainName : domainNames) {
+			if (domainName != null && domainName.length() > 0) {
+				add(domainName);
+			}
+		}
+	}
+
+	private void add(String domainName) {
+		Node node = root;
+		int end = domainName.length();
+		while (end > 0) {
+			int start = domainName.lastIndexOf('.', end - 1) + 1;
+			String segment = domainName.substring(start, end);
+			Node child = node.children.get(segment);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segment, child);
+			}
+			node = child;
+			end = start - 1;
+		}
+		node.domainName = domainName;
+	}
+
+	/**
+	 *
+	 * @param authority host part of a URL, e.g. "myapp.cfapps.io"
+	 * @return longest domain that the authority ends with, preceded by a
+	 * subdomain. If no domain is preceded by a subdomain, the domain equal to
+	 * the authority, if any. Null if no domain matches.
+	 */
+	public String getDomain(String authority) {
+		if (authority == null) {
+			return null;
+		}
+		Node node = root;
+		String longest = null;
+		int end = authority.length();
+		while (end > 0) {
+			int start = authority.lastIndexOf('.', end - 1) + 1;
+			node = node.children.get(authority.substring(start, end));
+			if (node == null) {
+				break;
+			}
+			if (node.domainName != null && (start > 0 || longest == null)) {
+				// Prefer domains that leave a subdomain, as the authority is
+				// otherwise not a valid application URL
+				longest = node.domainName;
+			}
+			end = start - 1;
+		}
+		return longest;
+	}
+
+	private static class Node {
+
+		final Map<String, Node> children = new HashMap<String, Node>(4);
+
+		/**
+		 * Name of the domain ending at this node, or null
+		 */
+		String domainName;
+	}
+}
@@ -386,6 +386,22 @@ public class Messages extends NLS {
 	
 	public static String SshFileSessionPool_UNABLE_TO_ESTABLISH_CONNECTION;
 
+	public static String DeployedResourceIndex_FLUSH_JOB;
+
+	public static String CachingApplicationArchive_STALE_CACHED_ENTRY;
+
+	public static String ModuleCache_SAVE_MODULE_MAPPING_JOB;
+
+	public static String AccessTokenCache_REFRESH_JOB;
+
+	public static String RetryPolicy_SERVER_UNAVAILABLE;
+
+	public static String ApplicationStateWatcher_WATCH_JOB;
+
+	public static String ApplicationUrlLookupService_REFRESH_DOMAINS_JOB;
+
+	public static String FileSshSessionConnPool_EVICTION_JOB;
+
 
 	private static final String BUNDLE_NAME = CloudFoundryPlugin.PLUGIN_ID + ".internal.Messages"; //$NON-NLS-1$
 
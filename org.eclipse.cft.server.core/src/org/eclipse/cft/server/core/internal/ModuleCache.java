@@ -30,8 +30,13 @@ import java.util.Set;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
+import org.eclipse.cft.server.core.internal.client.RequestExecutor;
+import org.eclipse.cft.server.core.internal.client.RetryPolicy;
+import org.eclipse.cft.server.core.internal.ssh.SshConnectionCache;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.wst.server.core.IModule;
@@ -69,14 +74,78 @@ public class ModuleCache {
 
 		private final Map<String, CloudFoundryApplicationModule> mapProject = new HashMap<String, CloudFoundryApplicationModule>();
 
+		/**
+		 * Index of cloud modules by local module name. If more than one module
+		 * has the same name, the first one added is indexed, as a lookup in
+		 * the list of modules would find that one first.
+		 */
+		private final Map<String, CloudFoundryApplicationModule> modulesByLocalName = new HashMap<String, CloudFoundryApplicationModule>();
+
+		/**
+		 * Index of cloud modules by deployed application name. Updated when
+		 * the deployed name of a module changes (see
+		 * {@link #updateCloudApplicationModule(CloudFoundryApplicationModule)}
+		 * ).
+		 */
+		private final Map<String, CloudFoundryApplicationModule> modulesByDeployedName = new HashMap<String, CloudFoundryApplicationModule>();
+
+		/**
+		 * In-memory copy of the persisted local module ID -> deployed
+		 * application name mapping. Read from the preferences once, on first
+		 * access.
+		 */
+		private Map<String, String> moduleMapping;
+
+		/**
+		 * Whether the module mapping changed since it was last written to the
+		 * preferences.
+		 */
+		private boolean mappingDirty;
+
+		private volatile boolean mappingDiscarded;
+
+		private final Job mappingSaveJob;
+
+		private final Object mappingSaveLock = new Object();
+
 		private int[] applicationMemoryChoices;
 
+		/**
+		 * Fingerprints of deployed applications, keyed by application name, as
+		 * of the last complete update of each application.
+		 */
+		private final Map<String, String> applicationFingerprints = new HashMap<String, String>();
+
+		private int refreshCount;
+
+		private volatile RequestExecutor requestExecutor;
+
+		private volatile RequestExecutor refreshExecutor;
+
+		private RetryPolicy retryPolicy;
+
+		private volatile ApplicationStateWatcher stateWatcher;
+
+		private volatile SshConnectionCache sshConnectionCache;
+
 		ServerData(IServer server) {
 			this.server = server;
+			this.mappingSaveJob = new Job(Messages.ModuleCache_SAVE_MODULE_MAPPING_JOB) {
+
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					saveModuleMapping();
+					return Status.OK_STATUS;
+				}
+			};
+			this.mappingSaveJob.setSystem(true);
 		}
 
 		public synchronized void clear() {
 			cloudModules.clear();
+			modulesByLocalName.clear();
+			modulesByDeployedName.clear();
+			applicationFingerprints.clear();
 		}
 
 		/**
@@ -102,10 +171,15 @@ public class ModuleCache {
 		 */
 		public synchronized void updateCloudApplicationModule(CloudFoundryApplicationModule module) {
 			// Update the map of module ID -> Deployed Application name
+			if (cloudModules.contains(module)) {
+				rebuildIndexes();
+			}
 			if (module.getLocalModule() != null) {
 				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
-				mapping.put(module.getLocalModule().getId(), module.getDeployedApplicationName());
-				setLocalModuleToCloudModuleMapping(mapping);
+				String oldName = mapping.put(module.getLocalModule().getId(), module.getDeployedApplicationName());
+				if (!module.getDeployedApplicationName().equals(oldName)) {
+					saveLocalModuleToCloudModuleMapping();
+				}
 			}
 		}
 
@@ -133,11 +207,13 @@ public class ModuleCache {
 			if (module == null) {
 				return;
 			}
-			cloudModules.remove(module);
+			if (cloudModules.remove(module)) {
+				rebuildIndexes();
+			}
 			if (module.getLocalModule() != null) {
-				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
-				mapping.remove(module.getLocalModule().getId());
-				setLocalModuleToCloudModuleMapping(mapping);
+				if (getLocalModuleToCloudModuleMapping().remove(module.getLocalModule().getId()) != null) {
+					saveLocalModuleToCloudModuleMapping();
+				}
 			}
 		}
 
@@ -153,8 +229,9 @@ public class ModuleCache {
 						mappingModified |= mapping.remove(deletedModule.getLocalModule().getId()) != null;
 					}
 				}
+				// Write all removals at once
 				if (mappingModified) {
-					setLocalModuleToCloudModuleMapping(mapping);
+					saveLocalModuleToCloudModuleMapping();
 				}
 			}
 		}
@@ -201,22 +278,93 @@ public class ModuleCache {
 
 		private void add(CloudFoundryApplicationModule module) {
 			cloudModules.add(module);
+			index(module);
 		}
 
+		private void index(CloudFoundryApplicationModule module) {
+			if (!modulesByLocalName.containsKey(module.getName())) {
+				modulesByLocalName.put(module.getName(), module);
+			}
+			if (!modulesByDeployedName.containsKey(module.getDeployedApplicationName())) {
+				modulesByDeployedName.put(module.getDeployedApplicationName(), module);
+			}
+		}
+
+		/**
+		 * Rebuilds the module indexes from the list of modules. Only needed
+		 * when a module is removed or renamed, which is rare compared to
+		 * lookups.
+		 */
+		private void rebuildIndexes() {
+			modulesByLocalName.clear();
+			modulesByDeployedName.clear();
+			for (CloudFoundryApplicationModule module : cloudModules) {
+				index(module);
+			}
+		}
+
+		/**
+		 * Converts the map to a list of key, value pairs separated by commas,
+		 * where commas and backslashes in keys and values are escaped with a
+		 * backslash.
+		 */
 		private String convertMapToString(Map<String, String> map) {
 			if (map == null) {
 				return ""; //$NON-NLS-1$
 			}
 			StringBuilder result = new StringBuilder();
 			for (Map.Entry<String, String> entry : map.entrySet()) {
-				result.append(entry.getKey());
+				appendEscaped(result, entry.getKey());
 				result.append(","); //$NON-NLS-1$
-				result.append(entry.getValue());
+				appendEscaped(result, entry.getValue());
 				result.append(","); //$NON-NLS-1$
 			}
 			return result.toString();
 		}
 
+		private void appendEscaped(StringBuilder result, String value) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == ',' || c == '\\') {
+					result.append('\\');
+				}
+				result.append(c);
+			}
+		}
+
+		/**
+		 * Reverse of {@link #convertMapToString(Map)}
+		 */
+		private Map<String, String> convertEscapedStringToMap(String str) {
+			Map<String, String> result = new HashMap<String, String>();
+			if (str == null) {
+				return result;
+			}
+			List<String> tokens = new ArrayList<String>();
+			StringBuilder token = new StringBuilder();
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(i);
+				if (c == '\\' && i + 1 < str.length()) {
+					token.append(str.charAt(++i));
+				}
+				else if (c == ',') {
+					tokens.add(token.toString());
+					token.setLength(0);
+				}
+				else {
+					token.append(c);
+				}
+			}
+			for (int i = 0; i < tokens.size() - 1; i += 2) {
+				result.put(tokens.get(i), tokens.get(i + 1));
+			}
+			return result;
+		}
+
+		/**
+		 * Parses the mapping format used before names were escaped. Only used
+		 * to read mappings saved by older versions.
+		 */
 		private Map<String, String> convertStringToMap(String str) {
 			if (str == null) {
 				return new HashMap<String, String>();
@@ -233,22 +381,35 @@ public class ModuleCache {
 		 * Local modules are mapped to deployed applications, represented by
 		 * cloud modules, by mapping the local module ID (typically, the module
 		 * type + local module name) to the deployed application name.
-		 * @return map containing local module ID (key) to deployed cloud
-		 * application name (value)
+		 * @return live map containing local module ID (key) to deployed cloud
+		 * application name (value). Changes must be written back with
+		 * {@link #saveLocalModuleToCloudModuleMapping()}
 		 */
 		private Map<String, String> getLocalModuleToCloudModuleMapping() {
-			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
-			String string = node.get(KEY_MODULE_MAPPING_LIST + ":" + getServerId(), ""); //$NON-NLS-1$ //$NON-NLS-2$
-			return convertStringToMap(string);
+			if (moduleMapping == null) {
+				IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
+				String string = node.get(KEY_MODULE_MAPPINGS + ":" + getServerId(), null); //$NON-NLS-1$
+				if (string != null) {
+					moduleMapping = convertEscapedStringToMap(string);
+				}
+				else {
+					// Mapping saved by an older version, if any. It is
+					// converted to the new format on next save.
+					string = node.get(KEY_MODULE_MAPPING_LIST + ":" + getServerId(), ""); //$NON-NLS-1$ //$NON-NLS-2$
+					moduleMapping = convertStringToMap(string);
+				}
+			}
+			return moduleMapping;
 		}
 
 		private CloudFoundryApplicationModule getCloudModuleByDeployedAppName(String deployedApplicationName) {
-			for (CloudFoundryApplicationModule module : cloudModules) {
-				if (deployedApplicationName.equals(module.getDeployedApplicationName())) {
-					return module;
-				}
+			CloudFoundryApplicationModule module = modulesByDeployedName.get(deployedApplicationName);
+			if (module != null && !deployedApplicationName.equals(module.getDeployedApplicationName())) {
+				// Renamed without the index being updated
+				rebuildIndexes();
+				module = modulesByDeployedName.get(deployedApplicationName);
 			}
-			return null;
+			return module;
 		}
 
 		/**
@@ -265,12 +426,7 @@ public class ModuleCache {
 		 * @return
 		 */
 		private CloudFoundryApplicationModule getCloudModuleToLocalModuleName(String localName) {
-			for (CloudFoundryApplicationModule module : cloudModules) {
-				if (localName.equals(module.getName())) {
-					return module;
-				}
-			}
-			return null;
+			return modulesByLocalName.get(localName);
 		}
 
 		private String getServerId() {
@@ -278,23 +434,60 @@ public class ModuleCache {
 			return cfs.getServerId();
 		}
 
-		private void setLocalModuleToCloudModuleMapping(Map<String, String> list) {
-			String string = convertMapToString(list);
-			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
-			CloudFoundryPlugin.trace("Updated mapping: " + string); //$NON-NLS-1$
-			node.put(KEY_MODULE_MAPPING_LIST + ":" + getServerId(), string); //$NON-NLS-1$
-			try {
-				node.flush();
-			}
-			catch (BackingStoreException e) {
-				CloudFoundryPlugin
-						.getDefault()
-						.getLog()
-						.log(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
-								"Failed to update application mappings", e)); //$NON-NLS-1$
+		/**
+		 * Schedules a write of the module mapping to the preferences. The
+		 * write is delayed so that changes made in the meantime, for example
+		 * while refreshing all modules, are written and flushed to disk once.
+		 */
+		private void saveLocalModuleToCloudModuleMapping() {
+			mappingDirty = true;
+			mappingSaveJob.schedule(MAPPING_SAVE_DELAY);
+		}
+
+		/**
+		 * Writes the module mapping to the preferences now if it changed since
+		 * it was last written.
+		 */
+		void saveModuleMapping() {
+			// Serialise writes so that an older copy of the mapping never
+			// overwrites a newer one
+			synchronized (mappingSaveLock) {
+				String string;
+				String serverId;
+				synchronized (this) {
+					if (!mappingDirty || mappingDiscarded) {
+						return;
+					}
+					mappingDirty = false;
+					string = convertMapToString(getLocalModuleToCloudModuleMapping());
+					serverId = getServerId();
+				}
+				IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
+				CloudFoundryPlugin.trace("Updated mapping: " + string); //$NON-NLS-1$
+				node.put(KEY_MODULE_MAPPINGS + ":" + serverId, string); //$NON-NLS-1$
+				node.remove(KEY_MODULE_MAPPING_LIST + ":" + serverId); //$NON-NLS-1$
+				try {
+					node.flush();
+				}
+				catch (BackingStoreException e) {
+					CloudFoundryPlugin
+							.getDefault()
+							.getLog()
+							.log(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
+									"Failed to update application mappings", e)); //$NON-NLS-1$
+				}
 			}
 		}
 
+		/**
+		 * Discards any change to the module mapping that was not written yet.
+		 * Used when the server is deleted.
+		 */
+		void discardModuleMapping() {
+			mappingDiscarded = true;
+			mappingSaveJob.cancel();
+		}
+
 		synchronized CloudFoundryApplicationModule getExistingCloudModule(IModule module) {
 			if (module == null) {
 				return null;
@@ -349,9 +542,13 @@ public class ModuleCache {
 
 		void updateServerId(String oldServerId, String newServerId) {
 			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
-			String string = node.get(KEY_MODULE_MAPPING_LIST + ":" + oldServerId, ""); //$NON-NLS-1$ //$NON-NLS-2$
-			node.remove(KEY_MODULE_MAPPING_LIST + ":" + oldServerId); //$NON-NLS-1$
-			node.put(KEY_MODULE_MAPPING_LIST + ":" + newServerId, string); //$NON-NLS-1$
+			for (String key : new String[] { KEY_MODULE_MAPPING_LIST, KEY_MODULE_MAPPINGS }) {
+				String string = node.get(key + ":" + oldServerId, null); //$NON-NLS-1$
+				if (string != null) {
+					node.remove(key + ":" + oldServerId); //$NON-NLS-1$
+					node.put(key + ":" + newServerId, string); //$NON-NLS-1$
+				}
+			}
 		}
 
 		public synchronized void setApplicationMemoryChoices(int[] applicationMemoryChoices) {
@@ -361,13 +558,156 @@ public class ModuleCache {
 		public synchronized int[] getApplicationMemoryChoices() {
 			return applicationMemoryChoices;
 		}
+
+		/**
+		 * 
+		 * @param appName deployed application name
+		 * @return fingerprint of the application when it was last completely
+		 * updated, or null if it was never completely updated
+		 */
+		public synchronized String getApplicationFingerprint(String appName) {
+			return applicationFingerprints.get(appName);
+		}
+
+		/**
+		 * @param appName deployed application name
+		 * @param fingerprint of the application. If null, the application will
+		 * be considered changed in the next refresh.
+		 */
+		public synchronized void setApplicationFingerprint(String appName, String fingerprint) {
+			if (fingerprint == null) {
+				applicationFingerprints.remove(appName);
+			}
+			else {
+				applicationFingerprints.put(appName, fingerprint);
+			}
+		}
+
+		/**
+		 * Removes the fingerprints of all applications other than the given
+		 * ones (e.g. applications that were deleted)
+		 * @param appNames deployed application names
+		 */
+		public synchronized void retainApplicationFingerprints(Collection<String> appNames) {
+			applicationFingerprints.keySet().retainAll(appNames);
+		}
+
+		/**
+		 * 
+		 * @return executor for client requests of the server. Created on first
+		 * access.
+		 */
+		public synchronized RequestExecutor getRequestExecutor() {
+			if (requestExecutor == null) {
+				requestExecutor = new RequestExecutor(server.getId(), RequestExecutor.DEFAULT_MAX_THREADS);
+			}
+			return requestExecutor;
+		}
+
+		/**
+		 * 
+		 * @return executor for refreshing the applications of the server, with
+		 * the parallelism configured in the plugin preferences. Created on
+		 * first access.
+		 */
+		public synchronized RequestExecutor getRefreshExecutor() {
+			if (refreshExecutor == null) {
+				refreshExecutor = new RequestExecutor(server.getId() + " - refresh", //$NON-NLS-1$
+						CloudFoundryPlugin.getDefault().getRefreshParallelism());
+			}
+			return refreshExecutor;
+		}
+
+		/**
+		 * 
+		 * @return retry policy shared by all requests to the server
+		 */
+		public synchronized RetryPolicy getRetryPolicy() {
+			if (retryPolicy == null) {
+				retryPolicy = new RetryPolicy();
+			}
+			return retryPolicy;
+		}
+
+		/**
+		 * 
+		 * @param cloudServer server of this data
+		 * @return watcher shared by all callers tracking the state of
+		 * applications of the server. Created on first access.
+		 */
+		public synchronized ApplicationStateWatcher getApplicationStateWatcher(CloudFoundryServer cloudServer) {
+			if (stateWatcher == null) {
+				stateWatcher = new ApplicationStateWatcher(cloudServer);
+			}
+			return stateWatcher;
+		}
+
+		/**
+		 * 
+		 * @param cloudServer server of this data
+		 * @return cache of application GUIDs and SSH codes shared by all SSH
+		 * sessions to the server. Created on first access.
+		 */
+		public synchronized SshConnectionCache getSshConnectionCache(CloudFoundryServer cloudServer) {
+			if (sshConnectionCache == null) {
+				sshConnectionCache = new SshConnectionCache(cloudServer);
+			}
+			return sshConnectionCache;
+		}
+
+		/**
+		 * Releases resources of the server that are not needed once the server
+		 * is deleted or the plugin stops.
+		 */
+		void dispose() {
+			// Not synchronized, as it is called with the module cache locked
+			for (RequestExecutor executor : new RequestExecutor[] { requestExecutor, refreshExecutor }) {
+				if (executor != null) {
+					executor.dispose();
+				}
+			}
+			requestExecutor = null;
+			refreshExecutor = null;
+			ApplicationStateWatcher watcher = stateWatcher;
+			stateWatcher = null;
+			if (watcher != null) {
+				watcher.dispose();
+			}
+			SshConnectionCache sshCache = sshConnectionCache;
+			sshConnectionCache = null;
+			if (sshCache != null) {
+				sshCache.dispose();
+			}
+		}
+
+		/**
+		 * 
+		 * @return number of times all applications were refreshed, including
+		 * this one
+		 */
+		public synchronized int incrementRefreshCount() {
+			return ++refreshCount;
+		}
 	}
 
 	/**
-	 * List of appName, module id pairs.
+	 * List of appName, module id pairs. Replaced by
+	 * {@link #KEY_MODULE_MAPPINGS}, and only read if there is no value for the
+	 * latter.
 	 */
 	static final String KEY_MODULE_MAPPING_LIST = "org.eclipse.cft.moduleMapping"; //$NON-NLS-1$
 
+	/**
+	 * List of module id, appName pairs, with commas in ids and names escaped.
+	 */
+	static final String KEY_MODULE_MAPPINGS = "org.eclipse.cft.moduleMapping.v2"; //$NON-NLS-1$
+
+	/**
+	 * Delay in milliseconds between a change in the module mapping of a server
+	 * and the write of the mapping to the preferences.
+	 */
+	private static final long MAPPING_SAVE_DELAY = 2000;
+
 	private Map<IServer, ServerData> dataByServer;
 
 	private IServerLifecycleListener listener = new IServerLifecycleListener() {
@@ -393,6 +733,14 @@ public class ModuleCache {
 
 	public void dispose() {
 		ServerCore.removeServerLifecycleListener(listener);
+		List<ServerData> allData;
+		synchronized (this) {
+			allData = new ArrayList<ServerData>(dataByServer.values());
+		}
+		for (ServerData data : allData) {
+			data.saveModuleMapping();
+			data.dispose();
+		}
 	}
 
 	public synchronized ServerData getData(IServer server) {
@@ -405,15 +753,22 @@ public class ModuleCache {
 	}
 
 	protected synchronized void remove(IServer server) {
-		dataByServer.remove(server);
+		ServerData data = dataByServer.remove(server);
+		if (data != null) {
+			data.discardModuleMapping();
+			data.dispose();
+		}
 
 		CloudFoundryServer cfs =  (CloudFoundryServer)server.loadAdapter(CloudFoundryServer.class, null);
 		
 		String serverId =  cfs.getServerId(); 
 		
 		if (serverId != null) {
+			CloudFoundryPlugin.getDefault().getDeployedResourcesCache().removeServer(serverId);
+
 			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
 			node.remove(KEY_MODULE_MAPPING_LIST + ":" + serverId); //$NON-NLS-1$
+			node.remove(KEY_MODULE_MAPPINGS + ":" + serverId); //$NON-NLS-1$
 			try {
 				node.flush();
 			}
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Content-addressed store of jars assembled from child modules when creating
+ * war files. Jars are keyed by a digest of the child module's resource tree
+ * (resource paths, and file sizes and last modified times), so that a child
+ * module that has not changed since it was last assembled is copied from the
+ * store instead of being zipped again.
+ * <p/>
+ * Jars that have not been used for a while are deleted, as are the least
+ * recently used jars when the total size of the store exceeds its maximum.
+ * When a jar was last used is recorded in the last modified time of a marker
+ * file stored next to it. Restored jars are copies, so that writing to them
+ * does not change the stored jar or its marker.
+ *
+ */
+public class ModuleJarCache {
+
+	public static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
+
+	/**
+	 * Jars not used for this long (in ms) are deleted.
+	 */
+	public static final long DEFAULT_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
+
+	private static final String USED_EXTENSION = ".used"; //$NON-NLS-1$
+
+	private final File folder;
+
+	private final long maxSize;
+
+	private final long maxAge;
+
+	/**
+	 *
+	 * @param folder where jars are stored. Created when the first jar is
+	 * stored.
+	 * @param maxSize maximum total size in bytes of stored jars
+	 * @param maxAge time in ms after which unused jars are deleted
+	 */
+	public ModuleJarCache(File folder, long maxSize, long maxAge) {
+		this.folder = folder;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 *
+	 * @param resources resources of the child module
+	 * @return digest of the resource tree, or null if the jar for the given
+	 * resources cannot be cached, for example if a resource is not a local
+	 * file
+	 */
+	public String getDigest(IModuleResource[] resources) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			if (!update(digest, resources)) {
+				return null;
+			}
+			StringBuilder value = new StringBuilder();
+			for (byte b : digest.digest()) {
+				value.append(String.format("%02x", b)); //$NON-NLS-1$
+			}
+			return value.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			CloudFoundryPlugin.logError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the stored jar for the given digest to the target file.
+	 * @param digest
+	 * @param target
+	 * @return true if a jar was stored for the digest and copied, false
+	 * otherwise
+	 */
+	public boolean restore(String digest, File target) {
+		File jar = getJarFile(digest);
+		if (!jar.isFile()) {
+			return false;
+		}
+		try {
+			Files.copy(jar.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			markUsed(digest);
+			return true;
+		}
+		catch (IOException e) {
+			// Possibly deleted concurrently. The jar will be assembled again
+			return false;
+		}
+	}
+
+	/**
+	 * Stores a copy of the given jar for the given digest, and deletes old
+	 * jars if needed.
+	 * @param digest
+	 * @param jar
+	 */
+	public void store(String digest, File jar) {
+		try {
+			if (!folder.exists() && !folder.mkdirs()) {
+				throw new IOException("Unable to create folder " + folder); //$NON-NLS-1$
+			}
+			// Copy to a temporary file first so that readers never see a
+			// partially copied jar
+			File tempFile = File.createTempFile(digest, ".tmp", folder); //$NON-NLS-1$
+			try {
+				Files.copy(jar.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tempFile.toPath(), getJarFile(digest).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				tempFile.delete();
+			}
+			markUsed(digest);
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to cache module jar " + jar.getName(), e); //$NON-NLS-1$
+			return;
+		}
+		collectGarbage();
+	}
+
+	/**
+	 * Deletes jars that have not been used for longer than the maximum age,
+	 * then the least recently used jars until the total size is within the
+	 * maximum size.
+	 */
+	public synchronized void collectGarbage() {
+		File[] jars = folder.listFiles(new FileFilter() {
+
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(JAR_EXTENSION);
+			}
+		});
+		if (jars == null) {
+			return;
+		}
+
+		// Most recently used first. Read the times once, as they may change
+		// while sorting
+		final Map<File, Long> lastUsed = new HashMap<File, Long>();
+		for (File jar : jars) {
+			lastUsed.put(jar, getLastUsed(jar));
+		}
+		Arrays.sort(jars, new Comparator<File>() {
+
+			public int compare(File file1, File file2) {
+				return Long.compare(lastUsed.get(file2), lastUsed.get(file1));
+			}
+		});
+
+		long oldest = System.currentTimeMillis() - maxAge;
+		long totalSize = 0;
+		for (File jar : jars) {
+			totalSize += jar.length();
+			if (lastUsed.get(jar) < oldest || totalSize > maxSize) {
+				jar.delete();
+				getUsedFile(jar).delete();
+			}
+		}
+	}
+
+	protected File getJarFile(String digest) {
+		return new File(folder, digest + JAR_EXTENSION);
+	}
+
+	protected File getUsedFile(File jar) {
+		String name = jar.getName();
+		return new File(folder, name.substring(0, name.length() - JAR_EXTENSION.length()) + USED_EXTENSION);
+	}
+
+	/**
+	 * Records that the jar for the given digest was just used.
+	 */
+	protected void markUsed(String digest) throws IOException {
+		File used = getUsedFile(getJarFile(digest));
+		if (!used.createNewFile()) {
+			used.setLastModified(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 *
+	 * @return time the jar was last used, or when it was stored if that is
+	 * not known
+	 */
+	protected long getLastUsed(File jar) {
+		File used = getUsedFile(jar);
+		return used.isFile() ? used.lastModified() : jar.lastModified();
+	}
+
+	/**
+	 *
+	 * @return true if all resources were added to the digest, false if a
+	 * resource cannot be resolved to a local file
+	 */
+	protected boolean update(MessageDigest digest, IModuleResource[] resources) {
+		if (resources == null) {
+			return true;
+		}
+		// Sort so that the digest does not depend on member order
+		IModuleResource[] sorted = resources.clone();
+		Arrays.sort(sorted, new Comparator<IModuleResource>() {
+
+			public int compare(IModuleResource resource1, IModuleResource resource2) {
+				return CloudUtil.getZipRelativeName(resource1).compareTo(CloudUtil.getZipRelativeName(resource2));
+			}
+		});
+
+		for (IModuleResource resource : sorted) {
+			digest.update(CloudUtil.getZipRelativeName(resource).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			if (resource instanceof IModuleFolder) {
+				if (!update(digest, ((IModuleFolder) resource).members())) {
+					return false;
+				}
+			}
+			else if (resource instanceof IModuleFile) {
+				File file = getLocalFile((IModuleFile) resource);
+				if (file == null || !file.isFile()) {
+					return false;
+				}
+				digest.update(toBytes(file.length()));
+				digest.update(toBytes(file.lastModified()));
+			}
+		}
+		return true;
+	}
+
+	protected File getLocalFile(IModuleFile moduleFile) {
+		File file = (File) moduleFile.getAdapter(File.class);
+		if (file == null) {
+			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+			IPath location = iFile != null ? iFile.getLocation() : null;
+			if (location != null) {
+				file = location.toFile();
+			}
+		}
+		return file;
+	}
+
+	private static byte[] toBytes(long value) {
+		byte[] bytes = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+}
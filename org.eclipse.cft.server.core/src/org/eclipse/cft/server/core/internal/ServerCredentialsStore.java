@@ -30,6 +30,8 @@ import org.eclipse.equinox.security.storage.SecurePreferencesFactory;
 import org.eclipse.equinox.security.storage.StorageException;
 
 /**
+ * Stores the credentials of a server in secure storage. Only credentials that
+ * changed since they were last written are written again.
  * @author Steffen Pingel
  */
 public class ServerCredentialsStore {
@@ -53,6 +55,14 @@ public class ServerCredentialsStore {
 	private String username;
 
 	private final String nodeId; 
+
+	private boolean usernameDirty;
+
+	private boolean passwordDirty;
+
+	private boolean tokenDirty;
+
+	private int flushCount;
 	
 	public ServerCredentialsStore(String serverId) {
 		this(serverId, CloudFoundryPlugin.PLUGIN_ID);
@@ -63,10 +73,19 @@ public class ServerCredentialsStore {
 		this.nodeId = nodeId;
 	}
 	
-	public boolean flush(String newServerId) {
+	/**
+	 * Writes changed credentials to secure storage now, under the given
+	 * server ID. If the server ID changed, credentials stored under the old ID
+	 * are removed and all credentials are written under the new one.
+	 * @param newServerId
+	 * @return true if secure storage is available and the credentials were
+	 * written or did not need to be written
+	 */
+	public synchronized boolean flush(String newServerId) {
 		String oldServerId = getServerId();
 
-		if (oldServerId != null && !oldServerId.equals(newServerId)) {
+		boolean serverIdChanged = oldServerId == null || !oldServerId.equals(newServerId);
+		if (oldServerId != null && serverIdChanged) {
 			initialize();
 			ISecurePreferences preferences = getSecurePreferences();
 			if (preferences != null) {
@@ -78,10 +97,23 @@ public class ServerCredentialsStore {
 		
 		ISecurePreferences preferences = getSecurePreferences();
 		if (preferences != null) {
+			if (!serverIdChanged && !usernameDirty && !passwordDirty && !tokenDirty) {
+				return true;
+			}
 			try {
-				preferences.put(KEY_USERNAME, username, true);
-				preferences.put(KEY_PASSWORD, password, true);
-				preferences.put(KEY_TOKEN, token, true);
+				if (serverIdChanged || usernameDirty) {
+					preferences.put(KEY_USERNAME, username, true);
+				}
+				if (serverIdChanged || passwordDirty) {
+					preferences.put(KEY_PASSWORD, password, true);
+				}
+				if (serverIdChanged || tokenDirty) {
+					preferences.put(KEY_TOKEN, token, true);
+				}
+				usernameDirty = false;
+				passwordDirty = false;
+				tokenDirty = false;
+				flushCount++;
 				return true;
 			}
 			catch (StorageException e) {
@@ -91,6 +123,15 @@ public class ServerCredentialsStore {
 		return false;
 	}
 
+	/**
+	 * 
+	 * @return number of times credentials were written to secure storage by
+	 * this store
+	 */
+	public synchronized int getFlushCount() {
+		return flushCount;
+	}
+
 	public String getPassword() {
 		initialize();
 		return password;
@@ -105,13 +146,15 @@ public class ServerCredentialsStore {
 		return username;
 	}
 
-	public void setPassword(String password) {
+	public synchronized void setPassword(String password) {
 		initialize();
+		passwordDirty |= !equals(this.password, password);
 		this.password = password;
 	}
 
-	public void setUsername(String username) {
+	public synchronized void setUsername(String username) {
 		initialize();
+		usernameDirty |= !equals(this.username, username);
 		this.username = username;
 	}
 	
@@ -120,11 +163,16 @@ public class ServerCredentialsStore {
 		return token;
 	}
 
-	public void setToken(String token) {
+	public synchronized void setToken(String token) {
 		initialize();
+		tokenDirty |= !equals(this.token, token);
 		this.token = token;
 	}
 
+	private static boolean equals(String value1, String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+
 	private void disableSecurePreferences(StorageException e) {
 		if (!securePreferencesDisabled.getAndSet(true)) {
 			CloudFoundryPlugin
@@ -20,8 +20,18 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.cft.server.core.CFServiceInstance;
 import org.eclipse.cft.server.core.internal.application.ModuleChangeEvent;
@@ -34,13 +44,39 @@ import org.eclipse.wst.server.core.IModule;
 /**
  * Fires server refresh events. Only one handler is active per workbench runtime
  * session.
+ * <p/>
+ * Events that only signal that something needs to be refreshed (
+ * {@link CloudServerEvent#EVENT_MODULE_UPDATED},
+ * {@link CloudServerEvent#EVENT_INSTANCES_UPDATED} and
+ * {@link CloudServerEvent#EVENT_SERVICES_UPDATED}) are delivered
+ * asynchronously, so that refreshing never waits for listeners. Each listener
+ * has its own queue, and receives these events in the order they were fired,
+ * one at a time. Listeners do not wait for each other. If an equivalent event
+ * is still waiting in the queue of a listener, it is replaced by the new one,
+ * at the same position in the queue.
+ * <p/>
+ * All other events, for example connection, password and application
+ * lifecycle changes, are delivered synchronously, so that listeners have
+ * handled them (e.g. invalidated cached credentials) when firing returns.
+ * They may therefore be delivered before refresh events fired earlier that
+ * are still queued.
  * 
  */
 public class ServerEventHandler {
 
+	/**
+	 * Maximum number of listeners notified at the same time
+	 */
+	public static final int MAX_DISPATCH_THREADS = 4;
+
+	/**
+	 * Idle time in seconds after which dispatch threads exit
+	 */
+	private static final long KEEP_ALIVE = 60;
+
 	private static ServerEventHandler handler;
 
-	public static ServerEventHandler getDefault() {
+	public static synchronized ServerEventHandler getDefault() {
 		if (handler == null) {
 			handler = new ServerEventHandler();
 		}
@@ -49,14 +85,50 @@ public class ServerEventHandler {
 
 	private final List<CloudServerListener> applicationListeners = new CopyOnWriteArrayList<CloudServerListener>();
 
+	private final Map<CloudServerListener, ListenerQueue> queues = new ConcurrentHashMap<CloudServerListener, ListenerQueue>();
+
+	private final ThreadPoolExecutor dispatcher;
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong totalLatency = new AtomicLong();
+
+	public ServerEventHandler() {
+		dispatcher = new ThreadPoolExecutor(MAX_DISPATCH_THREADS, MAX_DISPATCH_THREADS, KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								ServerEventHandler.class.getName() + " - " + count.incrementAndGet()); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		dispatcher.allowCoreThreadTimeOut(true);
+	}
+
 	public synchronized void addServerListener(CloudServerListener listener) {
 		if (listener != null && !applicationListeners.contains(listener)) {
+			queues.put(listener, new ListenerQueue(listener));
 			applicationListeners.add(listener);
 		}
 	}
 
+	/**
+	 * Removes the listener. Events waiting in its queue are discarded, but
+	 * the listener may still receive the event it is being notified of.
+	 * @param listener
+	 */
 	public synchronized void removeServerListener(CloudServerListener listener) {
 		applicationListeners.remove(listener);
+		ListenerQueue queue = listener != null ? queues.remove(listener) : null;
+		if (queue != null) {
+			queue.clear();
+		}
 	}
 
 	public void fireServicesUpdated(CloudFoundryServer server, List<CFServiceInstance> services) {
@@ -94,10 +166,190 @@ public class ServerEventHandler {
 				Status.OK_STATUS));
 	}
 
-	public synchronized void fireServerEvent(CloudServerEvent event) {
-		CloudServerListener[] listeners = applicationListeners.toArray(new CloudServerListener[0]);
-		for (CloudServerListener listener : listeners) {
+	/**
+	 * Notifies all registered listeners of the event. Refresh events are
+	 * queued, and this returns without waiting for listeners to be notified of
+	 * them. Other events are delivered before this returns.
+	 * @param event
+	 */
+	public void fireServerEvent(CloudServerEvent event) {
+		boolean async = isAsync(event);
+		long firedTime = System.currentTimeMillis();
+		for (CloudServerListener listener : applicationListeners) {
+			if (async) {
+				ListenerQueue queue = queues.get(listener);
+				if (queue != null) {
+					queue.add(event);
+				}
+			}
+			else {
+				deliver(listener, event, firedTime);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return number of events waiting to be delivered, over all listeners
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (ListenerQueue queue : queues.values()) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * 
+	 * @param listener
+	 * @return number of events waiting to be delivered to the listener
+	 */
+	public int getQueueDepth(CloudServerListener listener) {
+		ListenerQueue queue = listener != null ? queues.get(listener) : null;
+		return queue != null ? queue.size() : 0;
+	}
+
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of events that were replaced by a later equivalent event
+	 * before being delivered
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * 
+	 * @return average time in milliseconds from firing an event until a
+	 * listener finished handling it
+	 */
+	public long getAverageLatency() {
+		long count = deliveredCount.get();
+		return count > 0 ? totalLatency.get() / count : 0;
+	}
+
+	/**
+	 * 
+	 * @return true if the event only signals that something needs to be
+	 * refreshed, so that it can be delivered asynchronously and coalesced
+	 */
+	protected boolean isAsync(CloudServerEvent event) {
+		switch (event.getType()) {
+		case CloudServerEvent.EVENT_MODULE_UPDATED:
+		case CloudServerEvent.EVENT_INSTANCES_UPDATED:
+		case CloudServerEvent.EVENT_SERVICES_UPDATED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if the given events have the same effect on a listener, so
+	 * that only the later one needs to be delivered
+	 */
+	protected boolean isEquivalent(CloudServerEvent pending, CloudServerEvent event) {
+		if (pending.getType() != event.getType() || pending.getServer() != event.getServer()
+				|| pending.getClass() != event.getClass()) {
+			return false;
+		}
+		switch (event.getType()) {
+		case CloudServerEvent.EVENT_MODULE_UPDATED:
+		case CloudServerEvent.EVENT_INSTANCES_UPDATED:
+			return event instanceof ModuleChangeEvent
+					&& ((ModuleChangeEvent) pending).getModule() == ((ModuleChangeEvent) event).getModule();
+		case CloudServerEvent.EVENT_SERVICES_UPDATED:
+			// The later event carries the current list
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void deliver(CloudServerListener listener, CloudServerEvent event, long firedTime) {
+		try {
 			listener.serverChanged(event);
 		}
+		catch (RuntimeException e) {
+			CloudFoundryPlugin.logError(e);
+		}
+		deliveredCount.incrementAndGet();
+		totalLatency.addAndGet(System.currentTimeMillis() - firedTime);
+	}
+
+	private static class QueuedEvent {
+
+		final CloudServerEvent event;
+
+		final long firedTime;
+
+		QueuedEvent(CloudServerEvent event, long firedTime) {
+			this.event = event;
+			this.firedTime = firedTime;
+		}
+	}
+
+	/**
+	 * Events waiting to be delivered to a listener. At most one dispatch
+	 * thread delivers events of a listener at any time, which keeps them in
+	 * order.
+	 */
+	private class ListenerQueue implements Runnable {
+
+		private final CloudServerListener listener;
+
+		private final LinkedList<QueuedEvent> events = new LinkedList<QueuedEvent>();
+
+		private boolean dispatching;
+
+		ListenerQueue(CloudServerListener listener) {
+			this.listener = listener;
+		}
+
+		synchronized void add(CloudServerEvent event) {
+			for (ListIterator<QueuedEvent> it = events.listIterator(); it.hasNext();) {
+				QueuedEvent pending = it.next();
+				if (isEquivalent(pending.event, event)) {
+					// Keep the position, so that the order of events is kept
+					it.set(new QueuedEvent(event, pending.firedTime));
+					coalescedCount.incrementAndGet();
+					return;
+				}
+			}
+			events.add(new QueuedEvent(event, System.currentTimeMillis()));
+			if (!dispatching) {
+				dispatching = true;
+				dispatcher.execute(this);
+			}
+		}
+
+		synchronized int size() {
+			return events.size();
+		}
+
+		synchronized void clear() {
+			events.clear();
+		}
+
+		private synchronized QueuedEvent next() {
+			QueuedEvent next = events.poll();
+			if (next == null) {
+				dispatching = false;
+			}
+			return next;
+		}
+
+		public void run() {
+			QueuedEvent queued;
+			while ((queued = next()) != null) {
+				deliver(listener, queued.event, queued.firedTime);
+			}
+		}
 	}
 }
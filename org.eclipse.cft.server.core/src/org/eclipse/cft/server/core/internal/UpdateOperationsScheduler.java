@@ -20,7 +20,14 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
-import org.eclipse.cft.server.core.internal.client.ModulesOperation;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.cft.server.core.internal.client.CFOperation;
 import org.eclipse.cft.server.core.internal.client.CloudBehaviourOperations;
 import org.eclipse.cft.server.core.internal.client.ICloudFoundryOperation;
@@ -28,7 +35,9 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IModule;
 
@@ -37,18 +46,52 @@ import org.eclipse.wst.server.core.IModule;
  * updating a single modules, or all modules in the associated Cloud server.
  * 
  * <p/>
- * Only ONE refresh job per server instance is run.
- * 
+ * Only ONE refresh job per server instance is run. Requests are not run
+ * immediately, but kept pending per module and run together
+ * {@link #REFRESH_DELAY} ms after the first of them was made. Later requests
+ * do not extend the delay, so that a burst of requests for the same module
+ * results in a single update without postponing it indefinitely:
+ * <ul>
+ * <li>Several requests to update the same module are merged into one.</li>
+ * <li>A pending full refresh also updates the pending modules, which are then
+ * not updated separately. Only the notification that a module was published
+ * is still sent.</li>
+ * <li>Requests made while the job is running are kept pending and run once
+ * the job completes, so every requested module is updated at least once after
+ * its request was made.</li>
+ * <li>Requests whose operations were not run, because the job was canceled or
+ * an operation failed, are kept pending and the job is scheduled again to run
+ * them.</li>
+ * </ul>
  * 
  */
 public class UpdateOperationsScheduler implements OperationScheduler {
 
+	/**
+	 * Time in milliseconds between the first pending request and the run of
+	 * the refresh job.
+	 */
+	public static final long REFRESH_DELAY = 200;
+
+	/**
+	 * Kinds of module update that can be requested
+	 */
+	private enum ModuleUpdate {
+		DEPLOYED, MODULE, PUBLISH
+	}
+
 	private BehaviourRefreshJob refreshJob;
 
 	private final CloudFoundryServer cloudServer;
 
 	private CFOperation opToRun;
 
+	private boolean updateAllPending;
+
+	private final Map<IModule, EnumSet<ModuleUpdate>> pendingModules = new LinkedHashMap<IModule, EnumSet<ModuleUpdate>>();
+
+	private boolean running;
+
 	/**
 	 * 
 	 * @param cloudServer may be null if not resolved.
@@ -60,6 +103,16 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 		String refreshJobLabel = NLS.bind(Messages.RefreshModulesHandler_REFRESH_JOB, serverName);
 
 		this.refreshJob = new BehaviourRefreshJob(refreshJobLabel);
+		this.refreshJob.addJobChangeListener(new JobChangeAdapter() {
+
+			@Override
+			public void done(IJobChangeEvent event) {
+				// A job canceled before it ran leaves its requests pending
+				if (event.getResult() != null && event.getResult().getSeverity() == IStatus.CANCEL) {
+					schedulePending();
+				}
+			}
+		});
 	}
 
 	/*
@@ -77,14 +130,8 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 	 * Updates all modules in the server, as well as services
 	 */
 	public synchronized void updateAll() {
-		ICloudFoundryOperation op = cloudServer.getBehaviour().operations().updateAll();
-		if (op instanceof CFOperation) {
-			scheduleRefresh((CFOperation) op);
-		}
-		else {
-			CloudFoundryPlugin.logError("Internal Error: refresh operation is not a " //$NON-NLS-1$
-					+ CFOperation.class.getSimpleName() + ". Unable to run."); //$NON-NLS-1$
-		}
+		updateAllPending = true;
+		schedule();
 	}
 
 	/**
@@ -94,7 +141,7 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 	 * @param module to refresh
 	 */
 	public synchronized void updateDeployedModule(IModule module) {
-		scheduleRefresh(cloudServer.getBehaviour().operations().updateDeployedModule(module));
+		scheduleRefresh(module, ModuleUpdate.DEPLOYED);
 	}
 
 	/**
@@ -102,7 +149,7 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 	 * @see CloudBehaviourOperations#updateModule(IModule)
 	 */
 	public synchronized void updateModule(IModule module) {
-		scheduleRefresh(cloudServer.getBehaviour().operations().updateModule(module));
+		scheduleRefresh(module, ModuleUpdate.MODULE);
 	}
 
 	/**
@@ -112,21 +159,156 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 	 * @param module
 	 */
 	public synchronized void updateModuleAfterPublish(IModule module) {
-		scheduleRefresh(cloudServer.getBehaviour().operations().updateOnPublish(module));
+		scheduleRefresh(module, ModuleUpdate.PUBLISH);
 	}
 
-	private synchronized void scheduleRefresh(CFOperation opToRun) {
-		if (this.opToRun == null) {
-			this.opToRun = opToRun;
+	private synchronized void scheduleRefresh(IModule module, ModuleUpdate update) {
+		if (module == null) {
+			return;
+		}
+		addPending(module, update);
+		schedule();
+	}
+
+	private synchronized void addPending(IModule module, ModuleUpdate update) {
+		EnumSet<ModuleUpdate> updates = pendingModules.get(module);
+		if (updates == null) {
+			updates = EnumSet.noneOf(ModuleUpdate.class);
+			pendingModules.put(module, updates);
+		}
+		updates.add(update);
+	}
+
+	private synchronized void schedule() {
+		// A running job reschedules itself when it completes, and scheduling
+		// a waiting job has no effect, so the delay is not extended by
+		// further requests
+		if (!running) {
+			// Must be visible in progress bar as it can be long running op
+			refreshJob.setSystem(false);
+
+			refreshJob.schedule(REFRESH_DELAY);
+		}
+	}
+
+	/**
+	 * Schedules the refresh job if requests are pending.
+	 */
+	private synchronized void schedulePending() {
+		if (updateAllPending || !pendingModules.isEmpty()) {
 			schedule();
 		}
 	}
 
-	private void schedule() {
-		// Must be visible in progress bar as it can be long running op
-		refreshJob.setSystem(false);
+	/**
+	 * Takes the pending requests, and converts them into operations to run.
+	 * Requests made after this call stay pending until the next run.
+	 * @param fullRefreshModules receives the pending modules that the full
+	 * refresh must completely update, if a full refresh is pending
+	 * @return non-null list of operations to run, in order
+	 */
+	private synchronized List<PendingOperation> takePendingOperations(List<IModule> fullRefreshModules) {
+		List<PendingOperation> ops = new ArrayList<PendingOperation>();
+		if (cloudServer == null) {
+			updateAllPending = false;
+			pendingModules.clear();
+			return ops;
+		}
+		CloudBehaviourOperations operations = cloudServer.getBehaviour().operations();
+		if (updateAllPending) {
+			ICloudFoundryOperation op = operations.updateAll();
+			if (op instanceof CFOperation) {
+				ops.add(new PendingOperation((CFOperation) op, null, null));
+				fullRefreshModules.addAll(pendingModules.keySet());
+				// The full refresh updates all modules. Only the publish
+				// notification is still needed.
+				for (EnumSet<ModuleUpdate> updates : pendingModules.values()) {
+					updates.retainAll(EnumSet.of(ModuleUpdate.PUBLISH));
+				}
+			}
+			else {
+				CloudFoundryPlugin.logError("Internal Error: refresh operation is not a " //$NON-NLS-1$
+						+ CFOperation.class.getSimpleName() + ". Unable to run."); //$NON-NLS-1$
+			}
+		}
+		for (Entry<IModule, EnumSet<ModuleUpdate>> entry : pendingModules.entrySet()) {
+			IModule module = entry.getKey();
+			EnumSet<ModuleUpdate> updates = entry.getValue();
+			if (updates.contains(ModuleUpdate.MODULE)) {
+				ops.add(new PendingOperation(operations.updateModule(module), module, ModuleUpdate.MODULE));
+			}
+			if (updates.contains(ModuleUpdate.PUBLISH)) {
+				ops.add(new PendingOperation(operations.updateOnPublish(module), module, ModuleUpdate.PUBLISH));
+			}
+			else if (updates.contains(ModuleUpdate.DEPLOYED) && !updates.contains(ModuleUpdate.MODULE)) {
+				ops.add(new PendingOperation(operations.updateDeployedModule(module), module,
+						ModuleUpdate.DEPLOYED));
+			}
+		}
+		updateAllPending = false;
+		pendingModules.clear();
+		return ops;
+	}
+
+	/**
+	 * Makes the requests of the given operations, which were taken but not
+	 * run, pending again. They are merged with requests made in the meantime.
+	 */
+	private synchronized void requeue(List<PendingOperation> ops) {
+		for (PendingOperation pending : ops) {
+			if (pending.module == null) {
+				updateAllPending = true;
+			}
+			else {
+				addPending(pending.module, pending.update);
+			}
+		}
+	}
 
-		refreshJob.schedule();
+	/**
+	 * Makes the full refresh fetch complete information for the given modules
+	 * even if their application did not change since the last refresh, as an
+	 * update was requested for them.
+	 */
+	private void forceCompleteUpdate(List<IModule> modules) {
+		if (modules.isEmpty()) {
+			return;
+		}
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(cloudServer.getServerOriginal());
+		if (data == null) {
+			return;
+		}
+		for (IModule module : modules) {
+			CloudFoundryApplicationModule appModule = cloudServer.getExistingCloudModule(module);
+			if (appModule != null && appModule.getDeployedApplicationName() != null) {
+				data.setApplicationFingerprint(appModule.getDeployedApplicationName(), null);
+			}
+		}
+	}
+
+	private synchronized void setCurrentOperation(CFOperation op) {
+		this.opToRun = op;
+	}
+
+	/**
+	 * Operation to run for a pending request
+	 */
+	private static class PendingOperation {
+
+		final CFOperation op;
+
+		/**
+		 * Module of the request, or null if all modules are updated
+		 */
+		final IModule module;
+
+		final ModuleUpdate update;
+
+		PendingOperation(CFOperation op, IModule module, ModuleUpdate update) {
+			this.op = op;
+			this.module = module;
+			this.update = update;
+		}
 	}
 
 	private class BehaviourRefreshJob extends Job {
@@ -137,35 +319,37 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 
 		@Override
 		public IStatus run(IProgressMonitor monitor) {
-
-			IModule module = null;
+			synchronized (UpdateOperationsScheduler.this) {
+				running = true;
+			}
 			try {
-				CloudFoundryServer cloudServer = null;
-				module = opToRun instanceof ModulesOperation ? ((ModulesOperation) opToRun).getFirstModule() : null;
-
-				try {
-					cloudServer = opToRun.getBehaviour() != null ? opToRun.getBehaviour().getCloudFoundryServer()
-							: null;
-				}
-				catch (CoreException ce) {
-					CloudFoundryPlugin.logError(ce);
-					return ce.getStatus();
-				}
-
-				// Cloud server must not be null as it's the source of
-				// the event
-				if (cloudServer == null) {
-					IStatus error = CloudFoundryPlugin.getErrorStatus(
-							NLS.bind(Messages.RefreshModulesHandler_EVENT_CLOUD_SERVER_NULL, opToRun.getClass()));
-					CloudFoundryPlugin.log(error);
-					return error;
+				List<IModule> fullRefreshModules = new ArrayList<IModule>();
+				List<PendingOperation> ops = takePendingOperations(fullRefreshModules);
+				// Not done while holding the scheduler lock, as it locks the
+				// module cache
+				forceCompleteUpdate(fullRefreshModules);
+				for (int i = 0; i < ops.size(); i++) {
+					if (monitor.isCanceled()) {
+						requeue(ops.subList(i, ops.size()));
+						return Status.CANCEL_STATUS;
+					}
+					IStatus status = runOperation(ops.get(i).op, monitor);
+					if (!status.isOK()) {
+						// The failed operation is not attempted again, but the
+						// following ones are
+						requeue(ops.subList(i + 1, ops.size()));
+						return status;
+					}
 				}
-
-				// At this stage, cloud server is NOT null
-				runOperation(module, cloudServer, monitor);
 			}
 			finally {
-				opToRun = null;
+				synchronized (UpdateOperationsScheduler.this) {
+					opToRun = null;
+					running = false;
+					// Run requests that arrived while running, or that were
+					// not run
+					schedulePending();
+				}
 			}
 
 			return Status.OK_STATUS;
@@ -173,15 +357,34 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 
 		/**
 		 * 
+		 * @param op operation to run
 		 * @param monitor
-		 * @param module optionally null if operation is not being performed on
-		 * a single module
-		 * @param cloudServer must NOT be null
+		 * @return status of the operation
 		 */
-		protected void runOperation(IModule module, CloudFoundryServer cloudServer, IProgressMonitor monitor) {
+		protected IStatus runOperation(CFOperation op, IProgressMonitor monitor) {
+			CloudFoundryServer cloudServer = null;
+			try {
+				cloudServer = op.getBehaviour() != null ? op.getBehaviour().getCloudFoundryServer() : null;
+			}
+			catch (CoreException ce) {
+				CloudFoundryPlugin.logError(ce);
+				return ce.getStatus();
+			}
+
+			// Cloud server must not be null as it's the source of
+			// the event
+			if (cloudServer == null) {
+				IStatus error = CloudFoundryPlugin.getErrorStatus(
+						NLS.bind(Messages.RefreshModulesHandler_EVENT_CLOUD_SERVER_NULL, op.getClass()));
+				CloudFoundryPlugin.log(error);
+				return error;
+			}
+
+			// At this stage, cloud server is NOT null
+			setCurrentOperation(op);
 			try {
 				ServerEventHandler.getDefault().fireUpdateStarting(cloudServer);
-				opToRun.run(monitor);
+				op.run(monitor);
 			}
 			catch (Throwable t) {
 				cloudServer.setAndSaveToken(null);
@@ -189,6 +392,7 @@ public class UpdateOperationsScheduler implements OperationScheduler {
 			finally {
 				ServerEventHandler.getDefault().fireUpdateCompleted(cloudServer);
 			}
+			return Status.OK_STATUS;
 		}
 	}
-}
\ No newline at end of file
+}
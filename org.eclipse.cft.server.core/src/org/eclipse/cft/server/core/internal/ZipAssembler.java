@@ -0,0 +1,770 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Assembles zip archives from module resources. Instances are not shared, so
+ * separate publish operations can assemble archives concurrently.
+ * <p/>
+ * Assembly runs in three phases:
+ * <p/>
+ * 1) Collect: the module resources to include are collected in archive order.
+ * <p/>
+ * 2) Compress: file contents are read, checksummed and compressed in parallel
+ * on a bounded pool shared by all assemblers. Files that are already
+ * compressed (jars, images, etc..) are stored as-is rather than compressed
+ * again. Only a bounded number of entries is compressed ahead of the writer,
+ * and large files are not held in memory but streamed by the writer.
+ * <p/>
+ * 3) Write: entries are written in archive order in standard zip format, as
+ * written by {@link ZipOutputStream}.
+ * <p/>
+ * Archives that would require Zip64 extensions (more than 65535 entries, or
+ * more than 4 GB) are written sequentially with {@link ZipOutputStream}
+ * instead.
+ * <p/>
+ * The time spent in each phase is available after assembly, and traced.
+ *
+ */
+public class ZipAssembler {
+
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Files up to this size are read and compressed in memory in parallel.
+	 * Larger files are streamed by the writer.
+	 */
+	private static final long IN_MEMORY_LIMIT = 1024 * 1024;
+
+	private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Maximum number of entries compressed ahead of the writer, which bounds
+	 * the memory used by compressed entries waiting to be written.
+	 */
+	private static final int MAX_PENDING_ENTRIES = PARALLELISM * 4;
+
+	private static final long ZIP32_MAX_SIZE = 0xFFFFFFFFL;
+
+	private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList("jar", "war", "ear", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			"zip", "gz", "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif", "webp", "ico", "mp3", "mp4", "woff", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$ //$NON-NLS-15$
+			"woff2")); //$NON-NLS-1$
+
+	private static ForkJoinPool pool;
+
+	private long collectTime;
+
+	private long writeTime;
+
+	private long totalTime;
+
+	private final AtomicLong compressTime = new AtomicLong();
+
+	/**
+	 * Writes a zip archive containing all folders in the given resources, and
+	 * the files that are in the given filter.
+	 * @param allResources
+	 * @param filterInFiles files to include. If null, all files are included.
+	 * @param zipFile
+	 * @throws Exception if failed to read a resource or to write the archive
+	 */
+	public void assemble(List<IModuleResource> allResources, Set<IModuleResource> filterInFiles, File zipFile)
+			throws Exception {
+		long start = System.currentTimeMillis();
+
+		List<PendingEntry> pendingEntries = new ArrayList<PendingEntry>();
+		collect(allResources, filterInFiles, pendingEntries);
+		long collected = System.currentTimeMillis();
+		collectTime = collected - start;
+
+		if (requiresZip64(pendingEntries)) {
+			writeSequential(pendingEntries, zipFile);
+		}
+		else {
+			writeParallel(pendingEntries, zipFile);
+		}
+
+		totalTime = System.currentTimeMillis() - start;
+		CloudFoundryPlugin.trace("Assembled " + zipFile.getName() + " with " + pendingEntries.size() //$NON-NLS-1$ //$NON-NLS-2$
+				+ " entries in " + totalTime + " ms - collect: " + collectTime + " ms, compress (all threads): " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ compressTime.get() + " ms, write: " + writeTime + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 *
+	 * @return time in ms spent collecting resources in the last assembly
+	 */
+	public long getCollectTime() {
+		return collectTime;
+	}
+
+	/**
+	 *
+	 * @return time in ms spent reading and compressing entries in the last
+	 * assembly, summed across all threads
+	 */
+	public long getCompressTime() {
+		return compressTime.get();
+	}
+
+	/**
+	 *
+	 * @return time in ms spent writing the archive, excluding time waiting for
+	 * entries to be compressed
+	 */
+	public long getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 *
+	 * @return total time in ms of the last assembly
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	protected void collect(List<IModuleResource> resources, Set<IModuleResource> filterInFiles,
+			List<PendingEntry> pendingEntries) {
+		if (resources == null) {
+			return;
+		}
+		for (IModuleResource resource : resources) {
+			if (resource instanceof IModuleFolder) {
+				long timeStamp = 0;
+				IContainer folder = (IContainer) resource.getAdapter(IContainer.class);
+				if (folder != null) {
+					timeStamp = folder.getLocalTimeStamp();
+				}
+				pendingEntries.add(new PendingEntry(CloudUtil.getZipRelativeName(resource), null, timeStamp));
+				collect(Arrays.asList(((IModuleFolder) resource).members()), filterInFiles, pendingEntries);
+			}
+			else if (filterInFiles == null || filterInFiles.contains(resource)) {
+				IModuleFile moduleFile = (IModuleFile) resource;
+				long timeStamp = 0;
+				IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+				if (iFile != null) {
+					timeStamp = iFile.getLocalTimeStamp();
+				}
+				else {
+					File file = (File) moduleFile.getAdapter(File.class);
+					if (file != null) {
+						timeStamp = file.lastModified();
+					}
+				}
+				pendingEntries.add(new PendingEntry(CloudUtil.getZipRelativeName(resource), moduleFile, timeStamp));
+			}
+		}
+	}
+
+	protected boolean requiresZip64(List<PendingEntry> pendingEntries) {
+		if (pendingEntries.size() > ZIP32_MAX_ENTRIES) {
+			return true;
+		}
+		long totalSize = 0;
+		for (PendingEntry entry : pendingEntries) {
+			if (entry.moduleFile != null) {
+				long size = entry.getLocalSize();
+				if (size < 0) {
+					// Unknown size. Be conservative
+					size = IN_MEMORY_LIMIT;
+				}
+				totalSize += size;
+			}
+		}
+		// Leave room for headers and for compressed data that is larger than
+		// the original
+		return totalSize > ZIP32_MAX_SIZE / 2;
+	}
+
+	protected void writeParallel(List<PendingEntry> pendingEntries, File zipFile) throws Exception {
+		ForkJoinPool pool = getPool();
+		LinkedList<ForkJoinTask<PreparedEntry>> tasks = new LinkedList<ForkJoinTask<PreparedEntry>>();
+		int next = 0;
+
+		ZipWriter writer = new ZipWriter(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER_SIZE));
+		try {
+			while (next < pendingEntries.size() || !tasks.isEmpty()) {
+				while (next < pendingEntries.size() && tasks.size() < MAX_PENDING_ENTRIES) {
+					final PendingEntry pendingEntry = pendingEntries.get(next++);
+					tasks.add(pool.submit(new Callable<PreparedEntry>() {
+
+						public PreparedEntry call() throws Exception {
+							long start = System.currentTimeMillis();
+							try {
+								return prepare(pendingEntry);
+							}
+							finally {
+								compressTime.addAndGet(System.currentTimeMillis() - start);
+							}
+						}
+					}));
+				}
+
+				PreparedEntry prepared;
+				try {
+					prepared = tasks.removeFirst().get();
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					throw cause instanceof Exception ? (Exception) cause : e;
+				}
+
+				long start = System.currentTimeMillis();
+				writer.write(prepared);
+				writeTime += System.currentTimeMillis() - start;
+			}
+			long start = System.currentTimeMillis();
+			writer.finish();
+			writeTime += System.currentTimeMillis() - start;
+		}
+		finally {
+			for (ForkJoinTask<PreparedEntry> task : tasks) {
+				task.cancel(false);
+			}
+			writer.close();
+		}
+	}
+
+	/**
+	 * Reads, checksums and compresses the given entry if it is small enough to
+	 * be held in memory, otherwise determines how the writer should stream it.
+	 */
+	protected PreparedEntry prepare(PendingEntry entry) throws IOException, CoreException {
+		PreparedEntry prepared = new PreparedEntry(entry);
+		if (entry.moduleFile == null) {
+			prepared.method = ZipEntry.STORED;
+			prepared.data = new byte[0];
+			prepared.size = 0;
+			prepared.crc = 0;
+			return prepared;
+		}
+
+		boolean compressed = isCompressed(entry.name);
+		long localSize = entry.getLocalSize();
+		if (localSize >= 0 && localSize <= IN_MEMORY_LIMIT) {
+			byte[] content = readFully(entry.openInput(), (int) localSize);
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			prepared.crc = crc.getValue();
+			prepared.size = content.length;
+			if (compressed) {
+				prepared.method = ZipEntry.STORED;
+				prepared.data = content;
+			}
+			else {
+				prepared.method = ZipEntry.DEFLATED;
+				prepared.data = deflate(content);
+			}
+		}
+		else if (compressed && localSize >= 0) {
+			// Stored entries need the checksum before the data, so compute
+			// it here and let the writer copy the file, checking that the
+			// content did not change
+			prepared.method = ZipEntry.STORED;
+			prepared.crc = checksum(entry.openInput());
+			prepared.size = localSize;
+		}
+		else {
+			// Deflated by the writer, with the checksum and sizes written
+			// after the data
+			prepared.method = ZipEntry.DEFLATED;
+			prepared.level = compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+		}
+		return prepared;
+	}
+
+	/**
+	 * Writes all entries on the calling thread with {@link ZipOutputStream}.
+	 * Used for archives that require Zip64 extensions.
+	 */
+	protected void writeSequential(List<PendingEntry> pendingEntries, File zipFile) throws Exception {
+		long start = System.currentTimeMillis();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+		try {
+			for (PendingEntry pendingEntry : pendingEntries) {
+				ZipEntry zipEntry = new ZipEntry(pendingEntry.name);
+				if (pendingEntry.hasTimeStamp()) {
+					zipEntry.setTime(pendingEntry.timeStamp);
+				}
+				out.putNextEntry(zipEntry);
+				if (pendingEntry.moduleFile != null) {
+					InputStream input = pendingEntry.openInput();
+					try {
+						int n;
+						while ((n = input.read(buffer)) != -1) {
+							out.write(buffer, 0, n);
+						}
+					}
+					finally {
+						input.close();
+					}
+				}
+				out.closeEntry();
+			}
+		}
+		finally {
+			out.close();
+		}
+		writeTime = System.currentTimeMillis() - start;
+	}
+
+	protected static boolean isCompressed(String name) {
+		int index = name.lastIndexOf('.');
+		return index >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+	}
+
+	private static byte[] readFully(InputStream input, int expectedSize) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(expectedSize);
+			byte[] buffer = new byte[Math.max(1, Math.min(expectedSize, BUFFER_SIZE))];
+			int n;
+			while ((n = input.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	private static long checksum(InputStream input) throws IOException {
+		try {
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = input.read(buffer)) != -1) {
+				crc.update(buffer, 0, n);
+			}
+			return crc.getValue();
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	private static byte[] deflate(byte[] content) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+			byte[] buffer = new byte[Math.max(64, Math.min(content.length, BUFFER_SIZE))];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(PARALLELISM);
+		}
+		return pool;
+	}
+
+	/**
+	 * Resource to be added to the archive.
+	 */
+	protected static class PendingEntry {
+
+		final String name;
+
+		/**
+		 * Null for folders
+		 */
+		final IModuleFile moduleFile;
+
+		final long timeStamp;
+
+		PendingEntry(String name, IModuleFile moduleFile, long timeStamp) {
+			this.name = name;
+			this.moduleFile = moduleFile;
+			this.timeStamp = timeStamp;
+		}
+
+		boolean hasTimeStamp() {
+			return timeStamp != IResource.NULL_STAMP && timeStamp != 0;
+		}
+
+		/**
+		 *
+		 * @return size of the local file, or -1 if not known
+		 */
+		long getLocalSize() {
+			File file = (File) moduleFile.getAdapter(File.class);
+			if (file == null) {
+				IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+				IPath location = iFile != null ? iFile.getLocation() : null;
+				if (location != null) {
+					file = location.toFile();
+				}
+			}
+			return file != null && file.isFile() ? file.length() : -1;
+		}
+
+		InputStream openInput() throws IOException, CoreException {
+			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+			if (iFile != null) {
+				return iFile.getContents();
+			}
+			File file = (File) moduleFile.getAdapter(File.class);
+			return new FileInputStream(file);
+		}
+	}
+
+	/**
+	 * Entry ready to be written. Either holds the entry data, or describes
+	 * how the writer should stream the data from the local file.
+	 */
+	protected static class PreparedEntry {
+
+		final PendingEntry entry;
+
+		int method;
+
+		/**
+		 * Compressed or stored data, or null if the writer streams the file
+		 */
+		byte[] data;
+
+		long crc;
+
+		/**
+		 * Uncompressed size, or -1 if not known until the entry is written
+		 */
+		long size = -1;
+
+		/**
+		 * Compression level for deflated entries streamed by the writer
+		 */
+		int level = Deflater.DEFAULT_COMPRESSION;
+
+		PreparedEntry(PendingEntry entry) {
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * Writes entries in standard zip format, without Zip64 extensions.
+	 */
+	protected static class ZipWriter {
+
+		private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+		private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+		private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+		private static final int END_SIGNATURE = 0x06054b50;
+
+		private static final int VERSION = 20;
+
+		/**
+		 * Data descriptor follows the data
+		 */
+		private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+		/**
+		 * Names are UTF-8 encoded
+		 */
+		private static final int FLAG_UTF8 = 0x800;
+
+		private final CountingOutputStream out;
+
+		private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+		private int entryCount;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		ZipWriter(OutputStream out) {
+			this.out = new CountingOutputStream(out);
+		}
+
+		void write(PreparedEntry prepared) throws IOException, CoreException {
+			long offset = out.getCount();
+			byte[] name = prepared.entry.name.getBytes(StandardCharsets.UTF_8);
+			long dosTime = toDosTime(
+					prepared.entry.hasTimeStamp() ? prepared.entry.timeStamp : System.currentTimeMillis());
+
+			long crc;
+			long compressedSize;
+			long size;
+			int flags = FLAG_UTF8;
+
+			if (prepared.data != null) {
+				crc = prepared.crc;
+				compressedSize = prepared.data.length;
+				size = prepared.size;
+				writeLocalHeader(flags, prepared.method, dosTime, crc, compressedSize, size, name);
+				out.write(prepared.data);
+			}
+			else if (prepared.method == ZipEntry.STORED) {
+				crc = prepared.crc;
+				compressedSize = prepared.size;
+				size = prepared.size;
+				writeLocalHeader(flags, prepared.method, dosTime, crc, compressedSize, size, name);
+				CRC32 checksum = new CRC32();
+				long copied = copy(prepared.entry.openInput(), out, checksum);
+				if (copied != size || checksum.getValue() != crc) {
+					throw new ZipException("File changed while being archived: " + prepared.entry.name); //$NON-NLS-1$
+				}
+			}
+			else {
+				flags |= FLAG_DATA_DESCRIPTOR;
+				writeLocalHeader(flags, prepared.method, dosTime, 0, 0, 0, name);
+
+				CRC32 checksum = new CRC32();
+				Deflater deflater = new Deflater(prepared.level, true);
+				try {
+					DeflaterOutputStream deflaterOut = new DeflaterOutputStream(new NonClosingOutputStream(out),
+							deflater, BUFFER_SIZE);
+					InputStream input = prepared.entry.openInput();
+					size = 0;
+					try {
+						int n;
+						while ((n = input.read(buffer)) != -1) {
+							checksum.update(buffer, 0, n);
+							deflaterOut.write(buffer, 0, n);
+							size += n;
+						}
+					}
+					finally {
+						input.close();
+					}
+					deflaterOut.finish();
+					compressedSize = deflater.getBytesWritten();
+				}
+				finally {
+					deflater.end();
+				}
+				crc = checksum.getValue();
+
+				writeInt(out, DATA_DESCRIPTOR_SIGNATURE);
+				writeInt(out, crc);
+				writeInt(out, checkZip32(compressedSize));
+				writeInt(out, checkZip32(size));
+			}
+
+			checkZip32(offset);
+			if (++entryCount > ZIP32_MAX_ENTRIES) {
+				throw new ZipException("Too many entries for a zip archive without Zip64 extensions"); //$NON-NLS-1$
+			}
+
+			writeInt(centralDirectory, CENTRAL_HEADER_SIGNATURE);
+			writeShort(centralDirectory, VERSION);
+			writeShort(centralDirectory, VERSION);
+			writeShort(centralDirectory, flags);
+			writeShort(centralDirectory, prepared.method);
+			writeInt(centralDirectory, dosTime);
+			writeInt(centralDirectory, crc);
+			writeInt(centralDirectory, compressedSize);
+			writeInt(centralDirectory, size);
+			writeShort(centralDirectory, name.length);
+			// extra field length, comment length, disk number, internal and
+			// external attributes
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeInt(centralDirectory, 0);
+			writeInt(centralDirectory, offset);
+			centralDirectory.write(name);
+		}
+
+		void finish() throws IOException {
+			long offset = checkZip32(out.getCount());
+			centralDirectory.writeTo(out);
+			long size = centralDirectory.size();
+
+			writeInt(out, END_SIGNATURE);
+			writeShort(out, 0);
+			writeShort(out, 0);
+			writeShort(out, entryCount);
+			writeShort(out, entryCount);
+			writeInt(out, checkZip32(size));
+			writeInt(out, offset);
+			writeShort(out, 0);
+			out.flush();
+		}
+
+		void close() throws IOException {
+			out.close();
+		}
+
+		private void writeLocalHeader(int flags, int method, long dosTime, long crc, long compressedSize, long size,
+				byte[] name) throws IOException {
+			writeInt(out, LOCAL_HEADER_SIGNATURE);
+			writeShort(out, VERSION);
+			writeShort(out, flags);
+			writeShort(out, method);
+			writeInt(out, dosTime);
+			writeInt(out, crc);
+			writeInt(out, checkZip32(compressedSize));
+			writeInt(out, checkZip32(size));
+			writeShort(out, name.length);
+			writeShort(out, 0);
+			out.write(name);
+		}
+
+		private long copy(InputStream input, OutputStream output, CRC32 checksum) throws IOException {
+			try {
+				long count = 0;
+				int n;
+				while ((n = input.read(buffer)) != -1) {
+					checksum.update(buffer, 0, n);
+					output.write(buffer, 0, n);
+					count += n;
+				}
+				return count;
+			}
+			finally {
+				input.close();
+			}
+		}
+
+		private static long checkZip32(long value) throws ZipException {
+			if (value > ZIP32_MAX_SIZE) {
+				throw new ZipException("Archive too large for a zip archive without Zip64 extensions"); //$NON-NLS-1$
+			}
+			return value;
+		}
+
+		private static void writeShort(OutputStream out, int value) throws IOException {
+			out.write(value & 0xFF);
+			out.write((value >>> 8) & 0xFF);
+		}
+
+		private static void writeInt(OutputStream out, long value) throws IOException {
+			out.write((int) (value & 0xFF));
+			out.write((int) ((value >>> 8) & 0xFF));
+			out.write((int) ((value >>> 16) & 0xFF));
+			out.write((int) ((value >>> 24) & 0xFF));
+		}
+
+		/**
+		 * Converts Java time to MS-DOS date and time, as done by
+		 * {@link ZipOutputStream}
+		 */
+		private static long toDosTime(long time) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			int year = calendar.get(Calendar.YEAR);
+			if (year < 1980) {
+				return (1 << 21) | (1 << 16);
+			}
+			return ((long) (year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+					| (calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+					| (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	private static class NonClosingOutputStream extends FilterOutputStream {
+
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -29,6 +29,7 @@ package org.eclipse.cft.server.core.internal.application;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.eclipse.cft.server.core.ArchiveEntry;
 
@@ -36,11 +37,38 @@ public abstract class AbstractArchiveEntry implements ArchiveEntry {
 
 	public static final int UNDEFINED_SIZE = -1;
 
-	private static final int BUFFER_SIZE = 4096;
+	private static final int BUFFER_SIZE = 64 * 1024;
 
-	private long size = UNDEFINED_SIZE;
+	/**
+	 * Digests and read buffers are reused per thread, as entries of an archive
+	 * may be digested in parallel (see {@link ArchiveEntryDigester})
+	 */
+	private static final ThreadLocal<MessageDigest> SHA1_DIGEST = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA"); //$NON-NLS-1$
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
 
-	private byte[] sha1Digest;
+	private static final ThreadLocal<byte[]> READ_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BUFFER_SIZE];
+		}
+	};
+
+	/*
+	 * Volatile, as the values may be deduced by a pool thread of the
+	 * ArchiveEntryDigester while the entry is read by another thread
+	 */
+	private volatile long size = UNDEFINED_SIZE;
+
+	private volatile byte[] sha1Digest;
 
 	/**
 	 * Sets the size that should be returned. If this method is not called the
@@ -82,39 +110,53 @@ public abstract class AbstractArchiveEntry implements ArchiveEntry {
 		return sha1Digest;
 	}
 
-	private void deduceMissingData() {
+	private synchronized void deduceMissingData() {
+		if (this.size != UNDEFINED_SIZE && this.sha1Digest != null) {
+			// Deduced concurrently by another thread
+			return;
+		}
 		try {
-			InputStream inputStream = getInputStream();
-			try {
-				try {
-					MessageDigest digest = (this.sha1Digest == null ? MessageDigest.getInstance("SHA") : null); //$NON-NLS-1$
-					byte[] buffer = new byte[BUFFER_SIZE];
-					int byteCount = 0;
-					int bytesRead = -1;
-					while ((bytesRead = inputStream.read(buffer)) != -1) {
-						byteCount += bytesRead;
-						if (digest != null) {
-							digest.update(buffer, 0, bytesRead);
-						}
-					}
-					if (this.size == UNDEFINED_SIZE) {
-						this.size = byteCount;
-					}
-					if (this.sha1Digest == null && digest != null) {
-						this.sha1Digest = digest.digest();
-					}
-				}
-				catch (Exception e) {
-					throw new IllegalStateException(e);
-				}
-
+			MessageDigest digest = SHA1_DIGEST.get();
+			digest.reset();
+			long byteCount = digestContent(digest);
+			if (this.size == UNDEFINED_SIZE) {
+				this.size = byteCount;
+			}
+			if (this.sha1Digest == null) {
+				this.sha1Digest = digest.digest();
 			}
-			finally {
-				inputStream.close();
+			else {
+				digest.reset();
 			}
 		}
 		catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
 	}
+
+	/**
+	 * Reads the entire content of this entry into the given digest.
+	 * Subclasses that have direct access to the content (for example, a file)
+	 * may override this to read it more efficiently than through
+	 * {@link #getInputStream()}.
+	 * @param digest reset digest to update with the content
+	 * @return number of bytes read
+	 * @throws IOException if failed to read the content
+	 */
+	protected long digestContent(MessageDigest digest) throws IOException {
+		InputStream inputStream = getInputStream();
+		try {
+			byte[] buffer = READ_BUFFER.get();
+			long byteCount = 0;
+			int bytesRead = -1;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				byteCount += bytesRead;
+				digest.update(buffer, 0, bytesRead);
+			}
+			return byteCount;
+		}
+		finally {
+			inputStream.close();
+		}
+	}
 }
\ No newline at end of file
@@ -24,6 +24,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +35,7 @@ import org.eclipse.cft.server.core.ArchiveEntry;
 import org.eclipse.cft.server.core.CFApplicationArchive;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.wst.server.core.IModule;
 import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
@@ -86,6 +91,17 @@ public abstract class AbstractModuleResourceArchive implements CFApplicationArch
 		return resources;
 	}
 
+	/**
+	 * Computes the sha1 digests and sizes of all file entries in parallel,
+	 * so that they are available when the client iterates the entries for
+	 * resource matching, instead of being computed one at a time on the
+	 * calling thread.
+	 * @param monitor
+	 */
+	public void computeDigests(IProgressMonitor monitor) {
+		ArchiveEntryDigester.digest(getEntries(), monitor);
+	}
+
 	/**
 	 * All entries must be collected, for both resources that have changed as
 	 * well as those that haven't, as the CF client must first use that
@@ -202,6 +218,35 @@ public abstract class AbstractModuleResourceArchive implements CFApplicationArch
 			return null;
 		}
 
+		@Override
+		protected long digestContent(MessageDigest digest) throws IOException {
+			if (!canComputeResourceEntry()) {
+				return super.digestContent(digest);
+			}
+			// Read the file through a direct buffer to avoid copying its
+			// content into the Java heap
+			ByteBuffer buffer = ArchiveEntryDigester.takeDirectBuffer();
+			try {
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				try {
+					long byteCount = 0;
+					while (channel.read(buffer) != -1) {
+						buffer.flip();
+						byteCount += buffer.remaining();
+						digest.update(buffer);
+						buffer.clear();
+					}
+					return byteCount;
+				}
+				finally {
+					channel.close();
+				}
+			}
+			finally {
+				ArchiveEntryDigester.returnDirectBuffer(buffer);
+			}
+		}
+
 	}
 
 	/**
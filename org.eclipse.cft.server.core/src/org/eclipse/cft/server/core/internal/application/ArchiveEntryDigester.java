@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.application;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.cft.server.core.ArchiveEntry;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+/**
+ * Computes sha1 digests and sizes of archive entries in parallel, on a
+ * bounded pool shared by all archives. Entries keep the computed values, so
+ * that the values are available without reading the entries again when the
+ * client later iterates the entries for resource matching.
+ * <p/>
+ * Failures to compute a digest are ignored here, as the digest is computed
+ * again (and the failure reported) when it is requested by the client.
+ *
+ */
+public class ArchiveEntryDigester {
+
+	private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Direct buffers not in use. Bounded, so that at most one buffer per pool
+	 * thread is kept, and buffers used by other threads are not kept alive
+	 * with those threads.
+	 */
+	private static final BlockingQueue<ByteBuffer> DIRECT_BUFFERS = new ArrayBlockingQueue<ByteBuffer>(PARALLELISM);
+
+	/**
+	 * Interval at which cancellation is checked while waiting on an entry
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+
+	private static ForkJoinPool pool;
+
+	private ArchiveEntryDigester() {
+		// Util class
+	}
+
+	/**
+	 * Computes the sha1 digests and sizes of all file entries, and waits until
+	 * all have been computed or the monitor is canceled. On cancel, entries
+	 * already being digested complete in the background.
+	 * @param entries
+	 * @param monitor may be null
+	 */
+	public static void digest(Iterable<ArchiveEntry> entries, IProgressMonitor monitor) {
+		List<ArchiveEntry> files = new ArrayList<ArchiveEntry>();
+		if (entries != null) {
+			for (ArchiveEntry entry : entries) {
+				if (!entry.isDirectory()) {
+					files.add(entry);
+				}
+			}
+		}
+		if (files.size() < 2) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		ForkJoinPool pool = getPool();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(files.size());
+		for (final ArchiveEntry file : files) {
+			tasks.add(pool.submit(new Runnable() {
+
+				public void run() {
+					try {
+						file.getSha1Digest();
+						file.getSize();
+					}
+					catch (RuntimeException e) {
+						// Computed again and reported when requested by the
+						// client
+					}
+				}
+			}));
+		}
+
+		// Report progress on this thread only, as monitors are not thread
+		// safe
+		SubMonitor subMonitor = SubMonitor.convert(monitor, tasks.size());
+		for (int i = 0; i < tasks.size(); i++) {
+			if (!waitFor(tasks.get(i), subMonitor)) {
+				for (int j = i; j < tasks.size(); j++) {
+					tasks.get(j).cancel(false);
+				}
+				return;
+			}
+			subMonitor.worked(1);
+		}
+		CloudFoundryPlugin.trace("Computed digests for " + files.size() + " archive entries in " //$NON-NLS-1$ //$NON-NLS-2$
+				+ (System.currentTimeMillis() - start) + " ms"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Waits for the given task to complete, checking periodically for
+	 * cancellation so that a large entry does not delay it.
+	 * @param task
+	 * @param monitor
+	 * @return true if the task completed, false if the monitor was canceled or
+	 * the thread interrupted
+	 */
+	private static boolean waitFor(ForkJoinTask<?> task, IProgressMonitor monitor) {
+		while (!monitor.isCanceled()) {
+			try {
+				task.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				return true;
+			}
+			catch (TimeoutException e) {
+				// Check cancellation again
+			}
+			catch (ExecutionException e) {
+				// Computed again and reported when requested by the client
+				return true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes a cleared direct buffer of {@link #DIRECT_BUFFER_SIZE} bytes from
+	 * the free buffers, or allocates one if none is free. Must be returned
+	 * with {@link #returnDirectBuffer(ByteBuffer)} once no longer used.
+	 * @return direct buffer
+	 */
+	static ByteBuffer takeDirectBuffer() {
+		ByteBuffer buffer = DIRECT_BUFFERS.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Makes the given buffer available to be reused, or releases it if enough
+	 * buffers are free already.
+	 * @param buffer
+	 */
+	static void returnDirectBuffer(ByteBuffer buffer) {
+		DIRECT_BUFFERS.offer(buffer);
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(PARALLELISM);
+		}
+		return pool;
+	}
+}
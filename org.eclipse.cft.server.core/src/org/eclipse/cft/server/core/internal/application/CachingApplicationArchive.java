@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,7 +40,9 @@ import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudUtil;
 import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
 import org.eclipse.cft.server.core.internal.DeployedResourceCache.DeployedResourceEntry;
+import org.eclipse.cft.server.core.internal.Messages;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IModule;
 import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
@@ -68,7 +71,11 @@ import org.eclipse.wst.server.core.model.IModuleResource;
  * <p/>
  * 2) The second phase involves handling the list of resources that the server
  * indicates have not changed. This is done through a callback handler, which
- * then builds the partial war file with only those resources that have changed.
+ * then restricts the archive entries to only those resources that have
+ * changed. The changed module files are streamed directly from disk into the
+ * upload, reusing their precomputed sha1 codes and sizes. Only if a changed
+ * resource cannot be resolved to a local file is a partial war file written
+ * to disk instead.
  * 
  */
 public class CachingApplicationArchive extends AbstractModuleResourceArchive {
@@ -79,11 +86,29 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 	private final CachedDeployedApplication appID;
 
+	private final boolean strictChangeDetection;
+
 	public CachingApplicationArchive(List<IModuleResource> allResources, List<IModuleResource> changedResources,
 			IModule module, String appName) {
+		this(allResources, changedResources, module, null, appName);
+	}
+
+	/**
+	 * 
+	 * @param allResources
+	 * @param changedResources
+	 * @param module
+	 * @param serverId ID of the server where the app is published. Used to
+	 * keep cached sha1 entries separate for apps with the same name in
+	 * different servers. May be null.
+	 * @param appName
+	 */
+	public CachingApplicationArchive(List<IModuleResource> allResources, List<IModuleResource> changedResources,
+			IModule module, String serverId, String appName) {
 		super(module, allResources);
-		this.appID = new CachedDeployedApplication(appName);
+		this.appID = new CachedDeployedApplication(serverId, appName);
 		this.changedResources = changedResourcesAsZipNames(changedResources);
+		this.strictChangeDetection = CloudFoundryPlugin.getDefault().getStrictIncrementalPublish();
 	}
 
 	protected Set<String> changedResourcesAsZipNames(List<IModuleResource> changedResources) {
@@ -105,22 +130,38 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 	protected ModuleFileEntryAdapter getFileResourceEntryAdapter(IModuleFile file) {
 		String zipName = CloudUtil.getZipRelativeName(file);
 		boolean changed = changedResources != null && changedResources.contains(zipName);
-		return new ZipModuleFileEntryAdapter(file, appID, changed);
+		return new ZipModuleFileEntryAdapter(file, appID, changed, strictChangeDetection);
 	}
 
 	public void generatePartialWarFile(Set<String> knownResourceNames) {
 		Iterable<ArchiveEntry> localEntries = getEntries();
 		Map<String, AbstractModuleResourceEntryAdapter> missingChangedEntries = new HashMap<String, AbstractModuleResourceEntryAdapter>();
 		Set<IModuleResource> missingChangedResources = new HashSet<IModuleResource>();
+		List<ArchiveEntry> streamedEntries = new ArrayList<ArchiveEntry>();
+		boolean canStream = true;
 
 		for (ArchiveEntry entry : localEntries) {
 
 			if (entry.isDirectory() || !knownResourceNames.contains(entry.getName())) {
 				missingChangedEntries.put(entry.getName(), (AbstractModuleResourceEntryAdapter) entry);
 				missingChangedResources.add(((AbstractModuleResourceEntryAdapter) entry).getResource());
+				streamedEntries.add(entry);
+				if (entry instanceof ModuleFileEntryAdapter
+						&& !((ModuleFileEntryAdapter) entry).canComputeResourceEntry()) {
+					canStream = false;
+				}
 			}
 		}
 
+		if (canStream) {
+			// The entries already read the module files from disk and hold
+			// their sha1 codes and sizes, so no intermediate war file is
+			// needed.
+			fileName = getModule().getName() + ".war"; //$NON-NLS-1$
+			entries = streamedEntries;
+			return;
+		}
+
 		// Build war file with changed/missing resources
 		try {
 
@@ -234,7 +275,16 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 	/**
 	 * Module file resource specialisation of the Cloud Foundry client entry
 	 * adapter. This computes sha1 and file sizes and manages caching of such
-	 * values for resources that have changed.
+	 * values for resources that have changed. Cached values are only reused if
+	 * the local file's last modified time and length match those recorded in
+	 * the cached entry, as the entry may have been persisted in a previous
+	 * session.
+	 * <p/>
+	 * This also applies to resources flagged as changed by the publish delta,
+	 * as deltas often flag resources whose content has not changed (e.g. after
+	 * a clean build). In strict mode, changed resources are always hashed
+	 * again, and a warning is logged if the hash differs from a cached entry
+	 * that was considered up to date.
 	 * 
 	 */
 	public class ZipModuleFileEntryAdapter extends ModuleFileEntryAdapter {
@@ -243,12 +293,30 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 		private final boolean recalculate;
 
+		private final boolean strict;
+
+		private DeployedResourceEntry resolvedEntry;
+
 		public ZipModuleFileEntryAdapter(IModuleFile moduleFile, CachedDeployedApplication appName,
 				boolean recalculate) {
+			this(moduleFile, appName, recalculate, false);
+		}
+
+		/**
+		 * 
+		 * @param moduleFile
+		 * @param appName
+		 * @param recalculate true if the resource is flagged as changed
+		 * @param strict if true, changed resources are hashed again even if
+		 * the last modified time and size of the file match the cached entry
+		 */
+		public ZipModuleFileEntryAdapter(IModuleFile moduleFile, CachedDeployedApplication appName,
+				boolean recalculate, boolean strict) {
 			super(moduleFile);
 
 			this.appName = appName;
 			this.recalculate = recalculate;
+			this.strict = strict;
 		}
 
 		@Override
@@ -257,18 +325,34 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 			return entry != null ? entry.getFileSize() : UNDEFINED_SIZE;
 		}
 
-		public DeployedResourceEntry getDeployedResourcesEntry() {
+		public synchronized DeployedResourceEntry getDeployedResourcesEntry() {
+			if (resolvedEntry != null) {
+				return resolvedEntry;
+			}
 
 			DeployedResourceEntry deployedResourcesEntry = CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
 					.getEntry(appName, getName());
 
-			if (canComputeResourceEntry() && (recalculate || deployedResourcesEntry == null)) {
-				byte[] sha1 = super.getSha1Digest();
-				long fileSize = super.getSize();
-				deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, getName());
-				CloudFoundryPlugin.getDefault().getDeployedResourcesCache().add(appName, deployedResourcesEntry);
+			if (canComputeResourceEntry()) {
+				boolean upToDate = deployedResourcesEntry != null && deployedResourcesEntry.isUpToDate(file);
+				if (!upToDate || (recalculate && strict)) {
+					// Record the last modified time before reading the file, so
+					// that a change during the read invalidates the entry
+					long lastModified = file.lastModified();
+					byte[] sha1 = super.getSha1Digest();
+					long fileSize = super.getSize();
+
+					if (upToDate && !Arrays.equals(sha1, deployedResourcesEntry.getSha1())) {
+						CloudFoundryPlugin.logWarning(NLS.bind(Messages.CachingApplicationArchive_STALE_CACHED_ENTRY,
+								getName(), appName));
+					}
+
+					deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, getName(), lastModified);
+					CloudFoundryPlugin.getDefault().getDeployedResourcesCache().add(appName, deployedResourcesEntry);
+				}
 			}
 
+			resolvedEntry = deployedResourcesEntry;
 			return deployedResourcesEntry;
 		}
 
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.CloudServerEvent;
+import org.eclipse.cft.server.core.internal.CloudServerListener;
+import org.eclipse.cft.server.core.internal.CloudUtil;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ServerEventHandler;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Caches the OAuth access token of each connected v1 client, so that
+ * authorizing a request does not require logging in again. A cached token is
+ * used until it expires. Once it is close to expiring, a new token is
+ * requested in the background while the current one is still used.
+ * <p/>
+ * Tokens are persisted in the server only when they change. Cached tokens are
+ * discarded when a request is not authorized, and when the password of their
+ * server is updated or their server is connected or disconnected.
+ *
+ */
+public class AccessTokenCache implements CloudServerListener {
+
+	/**
+	 * Tokens expiring in less than this time (ms) are refreshed in the
+	 * background.
+	 */
+	public static final long REFRESH_MARGIN = 60 * 1000;
+
+	private static AccessTokenCache defaultCache;
+
+	/**
+	 * Clients are weakly referenced, so that tokens of disconnected clients
+	 * are discarded with the client. The values must not reference the
+	 * clients.
+	 */
+	private final Map<CloudFoundryOperations, CachedToken> tokens = new WeakHashMap<CloudFoundryOperations, CachedToken>();
+
+	public static synchronized AccessTokenCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new AccessTokenCache();
+			ServerEventHandler.getDefault().addServerListener(defaultCache);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 *
+	 * @param client connected client
+	 * @param cfServer server where the token is persisted if it changes. May
+	 * be null
+	 * @return non-null token that has not expired
+	 */
+	public OAuth2AccessToken getToken(CloudFoundryOperations client, CloudFoundryServer cfServer) {
+		CachedToken cachedToken;
+		synchronized (tokens) {
+			cachedToken = tokens.get(client);
+			if (cachedToken == null) {
+				cachedToken = new CachedToken(cfServer != null ? cfServer.getServer().getId() : null);
+				tokens.put(client, cachedToken);
+			}
+		}
+		return cachedToken.get(client, cfServer);
+	}
+
+	/**
+	 * Discards the cached token of the given client, for example if it was
+	 * revoked, so that the next request logs in again.
+	 * @param client
+	 */
+	public void invalidate(CloudFoundryOperations client) {
+		synchronized (tokens) {
+			tokens.remove(client);
+		}
+	}
+
+	/**
+	 * Discards the cached tokens of all clients of the given server.
+	 * @param cfServer
+	 */
+	public void invalidate(CloudFoundryServer cfServer) {
+		String serverId = cfServer.getServer().getId();
+		synchronized (tokens) {
+			for (Iterator<CachedToken> it = tokens.values().iterator(); it.hasNext();) {
+				if (serverId.equals(it.next().serverId)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public void serverChanged(CloudServerEvent event) {
+		switch (event.getType()) {
+		case CloudServerEvent.EVENT_SERVER_CONNECTED:
+		case CloudServerEvent.EVENT_SERVER_DISCONNECTED:
+		case CloudServerEvent.EVENT_UPDATE_PASSWORD:
+			if (event.getServer() != null) {
+				invalidate(event.getServer());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static class CachedToken {
+
+		/**
+		 * Id of the server of the client, or null if not known
+		 */
+		private final String serverId;
+
+		private OAuth2AccessToken token;
+
+		/**
+		 * Token as last persisted in the server
+		 */
+		private String savedToken;
+
+		private boolean refreshScheduled;
+
+		CachedToken(String serverId) {
+			this.serverId = serverId;
+		}
+
+		synchronized OAuth2AccessToken get(CloudFoundryOperations client, CloudFoundryServer cfServer) {
+			if (token == null || expiresWithin(0)) {
+				// No valid token to use in the meantime. Log in on this thread
+				setToken(client.login(), cfServer);
+			}
+			else if (expiresWithin(REFRESH_MARGIN) && !refreshScheduled) {
+				scheduleRefresh(client, cfServer);
+			}
+			return token;
+		}
+
+		private boolean expiresWithin(long time) {
+			Date expiration = token.getExpiration();
+			// Tokens with no expiration are not cached, as it is not known
+			// when they have to be refreshed
+			return expiration == null || expiration.getTime() - System.currentTimeMillis() < time;
+		}
+
+		private void scheduleRefresh(final CloudFoundryOperations client, final CloudFoundryServer cfServer) {
+			refreshScheduled = true;
+			Job job = new Job(Messages.AccessTokenCache_REFRESH_JOB) {
+
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					OAuth2AccessToken newToken = null;
+					try {
+						newToken = client.login();
+					}
+					catch (RuntimeException e) {
+						// Login is attempted again on the requesting thread
+						// once the current token expires
+						CloudFoundryPlugin.logWarning("Failed to refresh access token: " + e.getMessage()); //$NON-NLS-1$
+					}
+					synchronized (CachedToken.this) {
+						refreshScheduled = false;
+						if (newToken != null) {
+							setToken(newToken, cfServer);
+						}
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			job.schedule();
+		}
+
+		private void setToken(OAuth2AccessToken newToken, CloudFoundryServer cfServer) {
+			this.token = newToken;
+			if (cfServer != null) {
+				// In the SSO case, store the token for later use
+				try {
+					String tokenValue = CloudUtil.getTokenAsJson(newToken);
+					if (!tokenValue.equals(savedToken)) {
+						cfServer.setAndSaveToken(tokenValue);
+						savedToken = tokenValue;
+					}
+				}
+				catch (JsonProcessingException e) {
+					CloudFoundryPlugin.logWarning(e.getMessage());
+				}
+			}
+		}
+	}
+}
@@ -36,11 +36,11 @@ abstract public class ApplicationRequest<T> extends BehaviourRequest<T> {
 	}
 
 	@Override
-	protected long waitOnErrorInterval(Throwable exception, SubMonitor monitor) throws CoreException {
+	protected long getPollingInterval(Throwable exception, SubMonitor monitor) throws CoreException {
 		if (CloudErrorUtil.is503Error(exception)) {
 			return 2000;
 		}
-		return super.waitOnErrorInterval(exception, monitor);
+		return super.getPollingInterval(exception, monitor);
 	}
 
 	@Override
@@ -103,12 +103,16 @@ public abstract class BaseClientRequest<T> {
 	/**
 	 * Performs a client operation, and if necessary, re-attempts the operation
 	 * after a certain interval IFF an error occurs based on
-	 * {@link #getTotalTimeWait()} and
-	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}.
+	 * {@link #getTotalTimeWait()},
+	 * {@link #getPollingInterval(Throwable, SubMonitor)} and
+	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}. Except when polling,
+	 * the actual interval between attempts, and whether an attempt is made at
+	 * all, is decided by the {@link #getRetryPolicy()}.
 	 * <p/>
 	 * The default behaviour is to only attempt a client operation once and quit
 	 * after an error is encountered. Subclasses may modify this behaviour by
-	 * overriding {@link #getTotalTimeWait()} and
+	 * overriding {@link #getTotalTimeWait()},
+	 * {@link #getPollingInterval(Throwable, SubMonitor)} and
 	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}
 	 * <p/>
 	 * Note that reattempts are only decided based on errors thrown by the
@@ -128,6 +132,8 @@ public abstract class BaseClientRequest<T> {
 
 		boolean reattempt = true;
 		long timeLeft = getTotalTimeWait();
+		RetryPolicy retryPolicy = getRetryPolicy();
+		int failedAttempts = 0;
 
 		// Either this operation returns a result during the waiting period or
 		// an error occurred, and error
@@ -137,14 +143,39 @@ public abstract class BaseClientRequest<T> {
 
 			long interval = -1;
 
+			retryPolicy.beforeAttempt(getRequestLabel());
 			try {
-				return doRun(client, subProgress);
+				T result = doRun(client, subProgress);
+				retryPolicy.succeeded();
+				return result;
 			}
 			catch (Throwable e) {
 				error = e;
 			}
 
-			interval = waitOnErrorInterval(error, subProgress);
+			try {
+				interval = getPollingInterval(error, subProgress);
+			}
+			catch (CoreException | RuntimeException e) {
+				// Report the outcome of the attempt, as a probe of the server
+				// would otherwise never end and the server would stay
+				// unavailable
+				retryPolicy.failed(error);
+				throw e;
+			}
+			if (interval > 0) {
+				// Waiting for a state change rather than recovering from a
+				// failure, so reattempt at the requested interval
+				retryPolicy.polled();
+			}
+			else {
+				retryPolicy.failed(error);
+				failedAttempts++;
+				interval = waitOnErrorInterval(error, subProgress);
+				if (interval > 0) {
+					interval = retryPolicy.getRetryDelay(failedAttempts, interval);
+				}
+			}
 			timeLeft -= interval;
 			reattempt = !subProgress.isCanceled() && timeLeft >= 0 && interval > 0;
 			if (reattempt) {
@@ -203,6 +234,38 @@ public abstract class BaseClientRequest<T> {
 		return -1;
 	}
 
+	/**
+	 * Given an error, determine how long the operation should wait before
+	 * polling again, for example because an application has not finished
+	 * staging yet. Unlike
+	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}, which is used for errors the
+	 * operation may recover from, polling reattempts are made at exactly the
+	 * returned interval, regardless of the {@link RetryPolicy}, until the
+	 * total time to wait is reached.
+	 * <p/>
+	 * By default it returns -1, meaning that no error is polled on.
+	 * @param exception
+	 * @param monitor
+	 * @return interval value greater than 0 if the operation polls on the
+	 * error. Any other value equal or less than 0 will result in the error
+	 * being handled by {@link #waitOnErrorInterval(Throwable, SubMonitor)}.
+	 * @throw CoreException if failed to determine interval. A CoreException
+	 * will result in no further attempts.
+	 */
+	protected long getPollingInterval(Throwable exception, SubMonitor monitor) throws CoreException {
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @return policy deciding when failed attempts are made again. By default,
+	 * the policy shared by requests that are not sent to a particular server.
+	 * @throws CoreException if failed to resolve the policy
+	 */
+	protected RetryPolicy getRetryPolicy() throws CoreException {
+		return RetryPolicy.getDefault();
+	}
+
 	/**
 	 * Perform the actual client operation. The client is guaranteed to be
 	 * non-null at this stage.
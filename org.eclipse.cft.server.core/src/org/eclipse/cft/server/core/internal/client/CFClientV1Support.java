@@ -18,17 +18,18 @@ import java.net.URI;
 import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.client.lib.domain.CloudSpace;
-import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
-import org.eclipse.cft.server.core.internal.CloudUtil;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 /**
  * Contains helper methods to allow access to certain components of an existing
  * v1 client (so an existing connection to Cloud Foundry) that cannot be access
@@ -60,6 +61,7 @@ public class CFClientV1Support {
 		this.restTemplate = RestUtils.createRestTemplate(httpProxyConfiguration, trustSelfSigned, true);
 		ClientHttpRequestFactory requestFactory = restTemplate.getRequestFactory();
 		restTemplate.setRequestFactory(authorize(requestFactory));
+		restTemplate.getInterceptors().add(invalidateTokenIfUnauthorized(cfClient));
 
 		this.tokenUrl = cloudInfo.getTokenUrl();
 		
@@ -90,6 +92,25 @@ public class CFClientV1Support {
 		};
 	}
 
+	/**
+	 * Discards the cached token of the client if a request is not authorized,
+	 * as the token may have been revoked, so that the next request logs in
+	 * again.
+	 */
+	protected ClientHttpRequestInterceptor invalidateTokenIfUnauthorized(final CloudFoundryOperations cfClient) {
+		return new ClientHttpRequestInterceptor() {
+
+			public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+					throws IOException {
+				ClientHttpResponse response = execution.execute(request, body);
+				if (response.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+					AccessTokenCache.getDefault().invalidate(cfClient);
+				}
+				return response;
+			}
+		};
+	}
+
 	protected String getUrl(String path) {
 		return cloudInfo.getCloudControllerUrl() + (path.startsWith("/") //$NON-NLS-1$
 				? path : "/" + path); //$NON-NLS-1$
@@ -98,19 +119,9 @@ public class CFClientV1Support {
 	protected AuthorizationHeaderProvider getHeaderProvider(final CloudFoundryOperations cfClient) {
 		AuthorizationHeaderProvider oauth = new AuthorizationHeaderProvider() {
 			public String getAuthorizationHeader() {
-				OAuth2AccessToken token = cfClient.login();
-				
-				if(cfServer != null) {
-					// In the SSO case, store the token for later use
-					try {
-						String tokenValue = CloudUtil.getTokenAsJson(token);
-						cfServer.setAndSaveToken(tokenValue);
-					}
-					catch (JsonProcessingException e) {
-						CloudFoundryPlugin.logWarning(e.getMessage());
-					}					
-				}
-				
+				// Reuse the client's token until it nears expiry, instead of
+				// logging in for every request
+				OAuth2AccessToken token = AccessTokenCache.getDefault().getToken(cfClient, cfServer);
 				return token.getTokenType() + " " + token.getValue(); //$NON-NLS-1$
 			}
 		};
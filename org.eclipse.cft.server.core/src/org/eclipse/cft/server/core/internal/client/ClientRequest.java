@@ -89,6 +89,9 @@ public abstract class ClientRequest<T> extends BaseClientRequest<T> {
 						getTokenAccessErrorLabel()));
 				accessError = ce;
 
+				// The cached token may have been revoked
+				AccessTokenCache.getDefault().invalidate(client);
+
 				int attempts = 3;
 				OAuth2AccessToken token = handler.login(subProgress, attempts, CloudOperationsConstants.LOGIN_INTERVAL);
 				if (token == null) {
@@ -21,6 +21,10 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal.client;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.cloudfoundry.client.lib.ClientHttpResponseCallback;
 import org.cloudfoundry.client.lib.CloudCredentials;
 import org.cloudfoundry.client.lib.CloudFoundryException;
 import org.cloudfoundry.client.lib.CloudFoundryOperations;
@@ -58,6 +63,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IModule;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.web.client.RestClientException;
 
@@ -674,6 +680,144 @@ public class ClientRequestFactory {
 		};
 	}
 
+	/**
+	 * Lists the files under a directory of an application instance. The
+	 * legacy file API lists one directory per request, so subdirectories are
+	 * listed one after the other.
+	 * @param path directory relative to the home directory of the instance;
+	 * empty for the home directory
+	 * @param depth 1 for the children of the directory, 2 to include the
+	 * children of its subdirectories, and so on
+	 * @return request returning the files, with their paths relative to the
+	 * directory
+	 */
+	public BaseClientRequest<List<RemoteFile>> listFiles(final CloudApplication app, final int instanceIndex,
+			final String path, final int depth) throws CoreException {
+		String label = NLS.bind(Messages.CloudFoundryServerBehaviour_FETCHING_FILE, path, app.getName());
+		return new FileRequest<List<RemoteFile>>(label, behaviour) {
+			@Override
+			protected List<RemoteFile> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+				List<RemoteFile> files = new ArrayList<RemoteFile>();
+				listFiles(client, app, instanceIndex, path, "", depth, files); //$NON-NLS-1$
+				return files;
+			}
+		};
+	}
+
+	private static void listFiles(CloudFoundryOperations client, CloudApplication app, int instanceIndex,
+			String path, String relativePath, int depth, List<RemoteFile> files) {
+		String listing = client.getFile(app.getName(), instanceIndex, appendPath(path, relativePath));
+		if (listing == null) {
+			return;
+		}
+		for (String line : listing.split("\n")) { //$NON-NLS-1$
+			// Each line has the name of a file, followed by '/' for
+			// directories, and its approximate size
+			String[] content = line.trim().split("\\s+"); //$NON-NLS-1$
+			String name = content[0];
+			if (name.length() == 0) {
+				continue;
+			}
+			boolean isDir = name.endsWith("/"); //$NON-NLS-1$
+			if (isDir) {
+				name = name.substring(0, name.length() - 1);
+			}
+			String filePath = appendPath(relativePath, name);
+			files.add(new RemoteFile(filePath, isDir, content.length > 1 ? parseLegacySize(content[1]) : -1, 0));
+			if (isDir && depth > 1) {
+				listFiles(client, app, instanceIndex, path, filePath, depth - 1, files);
+			}
+		}
+	}
+
+	private static String appendPath(String path, String name) {
+		if (path == null || path.length() == 0) {
+			return name;
+		}
+		if (name.length() == 0) {
+			return path;
+		}
+		return path.endsWith("/") ? path + name : path + '/' + name; //$NON-NLS-1$
+	}
+
+	/**
+	 * 
+	 * @param size size as listed by the legacy file API, e.g. "12B" or "1.5K"
+	 * @return approximate size in bytes, or -1 if unknown
+	 */
+	private static long parseLegacySize(String size) {
+		try {
+			if (size.endsWith("B")) { //$NON-NLS-1$
+				return Long.parseLong(size.substring(0, size.length() - 1));
+			}
+			else if (size.endsWith("K")) { //$NON-NLS-1$
+				return (long) (Float.parseFloat(size.substring(0, size.length() - 1)) * 1000);
+			}
+			else if (size.endsWith("M")) { //$NON-NLS-1$
+				return (long) (Float.parseFloat(size.substring(0, size.length() - 1)) * 1000 * 1000);
+			}
+		}
+		catch (NumberFormatException e) {
+			// Unknown size
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the bytes of a file of an application instance to the given
+	 * stream. If the request is attempted again after an error, the copy
+	 * resumes after the bytes already written.
+	 * @param out receives the file content. Not closed.
+	 * @param offset number of bytes at the start of the file to skip
+	 * @return request returning the number of bytes written
+	 */
+	public BaseClientRequest<Long> getFile(final CloudApplication app, final int instanceIndex, final String path,
+			final OutputStream out, final long offset) throws CoreException {
+		String label = NLS.bind(Messages.CloudFoundryServerBehaviour_FETCHING_FILE, path, app.getName());
+		final CountingOutputStream counting = new CountingOutputStream(out);
+		return new FileRequest<Long>(label, behaviour) {
+			@Override
+			protected Long doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+				final long position = offset + counting.getCount();
+				client.openFile(app.getName(), instanceIndex, path, new ClientHttpResponseCallback() {
+					public void onClientHttpResponse(ClientHttpResponse response) throws IOException {
+						InputStream in = response.getBody();
+						try {
+							byte[] buffer = new byte[32 * 1024];
+							long skipped = 0;
+							while (skipped < position) {
+								long n = in.skip(position - skipped);
+								if (n <= 0) {
+									// Streams may skip nothing before their end.
+									// Read the bytes to discard instead
+									n = in.read(buffer, 0, (int) Math.min(buffer.length, position - skipped));
+									if (n < 0) {
+										throw new EOFException("File " + path + " ended before offset " + position); //$NON-NLS-1$ //$NON-NLS-2$
+									}
+								}
+								skipped += n;
+							}
+							int bytesRead;
+							while ((bytesRead = in.read(buffer)) != -1) {
+								counting.write(buffer, 0, bytesRead);
+							}
+						}
+						finally {
+							in.close();
+						}
+					}
+				});
+				try {
+					counting.flush();
+				}
+				catch (IOException e) {
+					throw CloudErrorUtil.toCoreException(e);
+				}
+				return counting.getCount();
+			}
+		};
+	}
+
 	/**
 	 * Check if the 'host' in the 'domainName' is reserved (route owned by us or
 	 * someone else), and if not reserve it. Clients are expected to call
@@ -753,4 +897,13 @@ public class ClientRequestFactory {
 	public boolean supportsSsh() {
 		return false;
 	}
+
+	/**
+	 * Releases resources held by the factory, like pooled connections. Called
+	 * when the behaviour is disconnected or disposed, after which the factory
+	 * is no longer used.
+	 */
+	public void dispose() {
+		// Nothing to release
+	}
 }
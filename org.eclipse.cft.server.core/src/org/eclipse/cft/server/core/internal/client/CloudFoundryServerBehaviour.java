@@ -22,8 +22,14 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal.client;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -64,7 +70,9 @@ import org.eclipse.cft.server.core.internal.CloudFoundryTargetManager;
 import org.eclipse.cft.server.core.internal.CloudServerEvent;
 import org.eclipse.cft.server.core.internal.CloudServerUtil;
 import org.eclipse.cft.server.core.internal.CloudUtil;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.cft.server.core.internal.ModuleResourceDeltaWrapper;
 import org.eclipse.cft.server.core.internal.OperationScheduler;
 import org.eclipse.cft.server.core.internal.ServerEventHandler;
@@ -87,7 +95,6 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.IJobChangeEvent;
@@ -192,6 +199,18 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return requestFactory;
 	}
 
+	/**
+	 * Disposes the request factory, if created. A new one is created when
+	 * next needed.
+	 */
+	private void disposeRequestFactory() {
+		ClientRequestFactory factory = requestFactory;
+		requestFactory = null;
+		if (factory != null) {
+			factory.dispose();
+		}
+	}
+
 	public synchronized void setTargetManager(CloudFoundryTargetManager targetManager) {
 		// Target manager cannot be null.
 		if (targetManager != null) {
@@ -336,6 +355,18 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	 */
 	public void deleteApplication(String appName, IProgressMonitor monitor) throws CoreException {
 		getRequestFactory().deleteApplication(appName).run(monitor);
+		clearDeployedResources(appName);
+	}
+
+	/**
+	 * Discards the cached sha1 entries of a deleted application, including
+	 * its persisted index.
+	 * @param appName
+	 * @throws CoreException
+	 */
+	protected void clearDeployedResources(String appName) throws CoreException {
+		CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
+				.remove(new CachedDeployedApplication(getCloudFoundryServer().getServerId(), appName));
 	}
 
 	/**
@@ -434,6 +465,9 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		server.setServerState(IServer.STATE_STOPPED);
 		server.setServerPublishState(IServer.PUBLISH_STATE_NONE);
 
+		// Disconnects pooled SSH sessions
+		disposeRequestFactory();
+
 		ServerEventHandler.getDefault().fireServerEvent(
 				new CloudServerEvent(getCloudFoundryServer(), CloudServerEvent.EVENT_SERVER_DISCONNECTED));
 	}
@@ -460,6 +494,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	public void dispose() {
 		super.dispose();
 		getServer().removeServerListener(serverListener);
+		disposeRequestFactory();
 	}
 
 	/**
@@ -744,6 +779,77 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return getRequestFactory().getFile(app, instanceIndex, path, isDir).run(monitor);
 	}
 
+	/**
+	 * Lists the files under a directory of an application instance, down to
+	 * the given depth, with as few requests as possible.
+	 * @param app
+	 * @param instanceIndex
+	 * @param path directory relative to the home directory of the instance;
+	 * empty for the home directory
+	 * @param depth 1 for the children of the directory, 2 to include the
+	 * children of its subdirectories, and so on
+	 * @param monitor
+	 * @return files with their paths relative to the directory. Never null
+	 * @throws CoreException if the directory could not be listed
+	 */
+	public List<RemoteFile> listFiles(CloudApplication app, int instanceIndex, String path, int depth,
+			IProgressMonitor monitor) throws CoreException {
+		return getRequestFactory().listFiles(app, instanceIndex, path, depth).run(monitor);
+	}
+
+	/**
+	 * Copies the bytes of a file of an application instance to the given
+	 * stream, without converting them to text.
+	 * @param app
+	 * @param instanceIndex
+	 * @param path path of the file in the instance
+	 * @param out receives the file content. Not closed.
+	 * @param offset number of bytes at the start of the file to skip, e.g. to
+	 * resume an interrupted download
+	 * @param monitor
+	 * @return number of bytes written
+	 * @throws CoreException if the file could not be read
+	 */
+	public long getFile(CloudApplication app, int instanceIndex, String path, OutputStream out, long offset,
+			IProgressMonitor monitor) throws CoreException {
+		return getRequestFactory().getFile(app, instanceIndex, path, out, offset).run(monitor);
+	}
+
+	/**
+	 * Downloads a file of an application instance to a local file.
+	 * @param app
+	 * @param instanceIndex
+	 * @param path path of the file in the instance
+	 * @param target local file. Parent folders are created if necessary.
+	 * @param resume if true and the target exists, only the bytes after its
+	 * current size are downloaded and appended to it. Otherwise the target is
+	 * overwritten.
+	 * @param monitor
+	 * @return size of the target once downloaded
+	 * @throws CoreException if the file could not be read or written
+	 */
+	public long getFile(CloudApplication app, int instanceIndex, String path, Path target, boolean resume,
+			IProgressMonitor monitor) throws CoreException {
+		try {
+			if (target.getParent() != null) {
+				Files.createDirectories(target.getParent());
+			}
+			long offset = resume && Files.exists(target) ? Files.size(target) : 0;
+			OutputStream out = new BufferedOutputStream(offset > 0
+					? Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+					: Files.newOutputStream(target));
+			try {
+				return offset + getFile(app, instanceIndex, path, out, offset, monitor);
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			throw CloudErrorUtil.toCoreException(e);
+		}
+	}
+
 	public List<CFServiceOffering> getServiceOfferings(IProgressMonitor monitor) throws CoreException {
 		return getRequestFactory().getServiceOfferings().run(monitor);
 	}
@@ -1431,6 +1537,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 				final CloudFoundryApplicationModule cloudModule = cloudServer.getExistingCloudModule(module[0]);
 				if (cloudModule != null && cloudModule.getApplication() != null) {
 					getRequestFactory().deleteApplication(cloudModule.getDeployedApplicationName()).run(monitor);
+					clearDeployedResources(cloudModule.getDeployedApplicationName());
 				}
 			}
 			else if (!module[0].isExternal()) {
@@ -1538,6 +1645,20 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}.run(monitor);
 	}
 
+	/**
+	 * 
+	 * @return executor shared by all requests of the server that callers may
+	 * stop waiting for when canceled
+	 * @throws CoreException if the server is not available
+	 */
+	protected RequestExecutor getRequestExecutor() throws CoreException {
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(getCloudFoundryServer().getServerOriginal());
+		if (data == null) {
+			throw CloudErrorUtil.toCoreException("No server data available for " + getServer().getId()); //$NON-NLS-1$
+		}
+		return data.getRequestExecutor();
+	}
+
 	/**
 	 * Retrieves the routes for the given domain name; will return early if
 	 * cancelled, with an OperationCanceledException.
@@ -1546,8 +1667,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 		BaseClientRequest<List<CloudRoute>> request = getRequestFactory().getRoutes(domainName);
 
-		CancellableRequestThread<List<CloudRoute>> t = new CancellableRequestThread<List<CloudRoute>>(request, monitor);
-		return t.runAndWaitForCompleteOrCancelled();
+		return getRequestExecutor().runAndWait(request, monitor);
 
 	}
 
@@ -1578,8 +1698,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 		BaseClientRequest<Boolean> request = getRequestFactory().reserveRouteIfAvailable(host, domainName);
 
-		CancellableRequestThread<Boolean> t = new CancellableRequestThread<Boolean>(request, monitor);
-		Boolean result = t.runAndWaitForCompleteOrCancelled();
+		Boolean result = getRequestExecutor().runAndWait(request, monitor);
 
 		if (result != null) {
 			return result;
@@ -1898,12 +2017,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	}
 
 	protected CFApplicationArchive getIncrementalPublishArchive(final ApplicationDeploymentInfo deploymentInfo,
-			IModule[] modules) {
+			IModule[] modules) throws CoreException {
 		IModuleResource[] allResources = getResources(modules);
 		IModuleResourceDelta[] deltas = getPublishedResourceDelta(modules);
 		List<IModuleResource> changedResources = getChangedResources(deltas);
 		CFApplicationArchive moduleArchive = new CachingApplicationArchive(Arrays.asList(allResources),
-				changedResources, modules[0], deploymentInfo.getDeploymentName());
+				changedResources, modules[0], getCloudFoundryServer().getServerId(),
+				deploymentInfo.getDeploymentName());
 
 		return moduleArchive;
 	}
@@ -2213,138 +2333,3 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return null;
 	}
 }
-
-/**
- * Requests may be wrapped using this class, such that if the user cancels the
- * monitor, the thread will automatically return.
- * 
- * Note: Since the BaseClientRequest itself does not check the monitor, the
- * BaseClientRequest may still be running even though the calling thread has
- * return. Care should be taken to consider this logic.
- */
-class CancellableRequestThread<T> {
-
-	private T result = null;
-
-	private Throwable exceptionThrown = null;
-
-	private boolean threadComplete = false;
-
-	private final Object lock = new Object();
-
-	private final IProgressMonitor monitor;
-
-	private final BaseClientRequest<T> request;
-
-	public CancellableRequestThread(BaseClientRequest<T> request, IProgressMonitor monitor) {
-		this.request = request;
-		this.monitor = monitor;
-	}
-
-	/** This is called by ThreadWrapper.run(...) */
-	private void runInThread() {
-
-		try {
-			result = request.run(monitor);
-		}
-		catch (Exception e) {
-			exceptionThrown = e;
-		}
-		finally {
-			synchronized (lock) {
-				threadComplete = true;
-				lock.notify();
-			}
-		}
-
-	}
-
-	/**
-	 * Starts the thread to invoke the request, and begins waiting for the
-	 * thread to complete or be cancelled.
-	 */
-	public T runAndWaitForCompleteOrCancelled() {
-		try {
-
-			// Start the thread that runs the requst
-			ThreadWrapper tw = new ThreadWrapper();
-			tw.start();
-
-			while (!monitor.isCanceled()) {
-
-				synchronized (lock) {
-					// Check for cancelled every 0.25 seconds.
-					lock.wait(250);
-
-					if (threadComplete) {
-						break;
-					}
-				}
-			}
-
-			Throwable thr = getExceptionThrown();
-			// Throw any caught exceptions
-			if (thr != null) {
-				if (thr instanceof RuntimeException) {
-					// Throw unchecked exception
-					throw (RuntimeException) thr;
-
-				}
-				else {
-					// Convert checked to unchecked exception
-					throw new RuntimeException(thr);
-				}
-
-			}
-
-			// Check for cancelled
-			if (!isThreadComplete() && getResult() == null) {
-				throw new OperationCanceledException();
-			}
-
-			T result = getResult();
-
-			return result;
-
-		}
-		catch (InterruptedException e) {
-			throw new OperationCanceledException();
-		}
-	}
-
-	public Throwable getExceptionThrown() {
-		synchronized (lock) {
-			return exceptionThrown;
-		}
-	}
-
-	public boolean isThreadComplete() {
-		synchronized (lock) {
-			return threadComplete;
-		}
-	}
-
-	public T getResult() {
-		synchronized (lock) {
-			return result;
-		}
-	}
-
-	/**
-	 * Simple thread that calls runInThread(...), to ensure that the
-	 * BaseClientRequest may only be started by calling the
-	 * runAndWaitForCompleteOrCancelled(...) method.
-	 */
-	private class ThreadWrapper extends Thread {
-
-		private ThreadWrapper() {
-			setDaemon(true);
-			setName(CancellableRequestThread.class.getName());
-		}
-
-		@Override
-		public void run() {
-			runInThread();
-		}
-	}
-}
@@ -25,6 +25,7 @@ import org.eclipse.cft.server.core.internal.CloudErrorUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -68,12 +69,16 @@ public abstract class CloudServerRequest<T> {
 	/**
 	 * Performs the client request, and if necessary, re-attempts the request
 	 * after a certain interval IFF an error occurs based on
-	 * {@link #getRetryTimeout()} and
-	 * {@link #getRetryInterval(Throwable, SubMonitor)}.
+	 * {@link #getRetryTimeout()},
+	 * {@link #getPollingInterval(Throwable, IProgressMonitor)} and
+	 * {@link #getRetryInterval(Throwable, SubMonitor)}. Except when polling,
+	 * the actual interval between attempts, and whether an attempt is made at
+	 * all, is decided by the {@link #getRetryPolicy()}.
 	 * <p/>
 	 * The default behaviour is to only attempt a client request once and quit
 	 * after an error is encountered. Subclasses may modify this behaviour by
-	 * overriding {@link #getRetryTimeout()} and
+	 * overriding {@link #getRetryTimeout()},
+	 * {@link #getPollingInterval(Throwable, IProgressMonitor)} and
 	 * {@link #getRetryInterval(Throwable, SubMonitor)}
 	 * <p/>
 	 * Note that reattempts are only decided based on errors thrown by the
@@ -93,6 +98,8 @@ public abstract class CloudServerRequest<T> {
 
 		boolean reattempt = true;
 		long timeLeft = getRetryTimeout();
+		RetryPolicy retryPolicy = getRetryPolicy();
+		int failedAttempts = 0;
 
 		// Either this operation returns a result during the waiting period or
 		// an error occurred, and error
@@ -102,14 +109,39 @@ public abstract class CloudServerRequest<T> {
 
 			long interval = -1;
 
+			retryPolicy.beforeAttempt(requestLabel);
 			try {
-				return runRequest(client, monitor);
+				T result = runRequest(client, monitor);
+				retryPolicy.succeeded();
+				return result;
 			}
 			catch (Throwable e) {
 				error = e;
 			}
 
-			interval = getRetryInterval(error, monitor);
+			try {
+				interval = getPollingInterval(error, monitor);
+			}
+			catch (CoreException | RuntimeException e) {
+				// Report the outcome of the attempt, as a probe of the server
+				// would otherwise never end and the server would stay
+				// unavailable
+				retryPolicy.failed(error);
+				throw e;
+			}
+			if (interval > 0) {
+				// Waiting for a state change rather than recovering from a
+				// failure, so reattempt at the requested interval
+				retryPolicy.polled();
+			}
+			else {
+				retryPolicy.failed(error);
+				failedAttempts++;
+				interval = getRetryInterval(error, monitor);
+				if (interval > 0) {
+					interval = retryPolicy.getRetryDelay(failedAttempts, interval);
+				}
+			}
 			timeLeft -= interval;
 			reattempt = !monitor.isCanceled() && timeLeft >= 0 && interval > 0;
 			if (reattempt) {
@@ -138,6 +170,16 @@ public abstract class CloudServerRequest<T> {
 		return cloudServer;
 	}
 
+	/**
+	 * 
+	 * @return policy deciding when failed attempts are made again. By default,
+	 * the policy shared by all requests to the server.
+	 */
+	protected RetryPolicy getRetryPolicy() {
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(getCloudServer().getServerOriginal());
+		return data != null ? data.getRetryPolicy() : RetryPolicy.getDefault();
+	}
+
 	/**
 	 * 
 	 * @return result of client operation
@@ -188,6 +230,9 @@ public abstract class CloudServerRequest<T> {
 					CloudFoundryPlugin.logWarning(NLS.bind(Messages.ClientRequest_RETRY_REQUEST, requestLabel));
 					accessError = ce;
 
+					// The cached tokens may have been revoked
+					AccessTokenCache.getDefault().invalidate(server);
+
 					int attempts = 3;
 					String token = handler.login(monitor, attempts, CloudOperationsConstants.LOGIN_INTERVAL);
 					if (token == null) {
@@ -246,6 +291,28 @@ public abstract class CloudServerRequest<T> {
 		return -1;
 	}
 
+	/**
+	 * Given an error, determine how long the operation should wait before
+	 * polling again, for example because an application has not finished
+	 * staging yet. Unlike
+	 * {@link #getRetryInterval(Throwable, IProgressMonitor)}, which is used for errors the
+	 * operation may recover from, polling reattempts are made at exactly the
+	 * returned interval, regardless of the {@link RetryPolicy}, until the
+	 * total time to wait is reached.
+	 * <p/>
+	 * By default it returns -1, meaning that no error is polled on.
+	 * @param exception
+	 * @param monitor
+	 * @return interval value greater than 0 if the operation polls on the
+	 * error. Any other value equal or less than 0 will result in the error
+	 * being handled by {@link #getRetryInterval(Throwable, IProgressMonitor)}.
+	 * @throw CoreException if failed to determine interval. A CoreException
+	 * will result in no further attempts.
+	 */
+	protected long getPollingInterval(Throwable exception, IProgressMonitor monitor) throws CoreException {
+		return -1;
+	}
+
 	/**
 	 * Total amount of time to wait. If less than the wait interval length, only
 	 * one attempt will be made
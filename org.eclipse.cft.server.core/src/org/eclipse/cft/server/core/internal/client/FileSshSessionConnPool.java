@@ -26,203 +26,661 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Vector;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.ISshClientSupport;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.Messages;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
 
 /** 
- * A simple thread-safe connection pool for SSH sessions used by the DiegoRequestFactory.getFile(..) method. 
- *  
+ * A thread-safe connection pool for SSH sessions used by the DiegoRequestFactory.getFile(..) method.
+ * <p/>
+ * The number of sessions in use at the same time is limited both globally and per application instance. Callers 
+ * waiting for a session are served in arrival order by fair semaphores. Sessions are returned to the pool after use,
+ * checked to be alive before being reused, and disconnected once idle for longer than the idle timeout. 
  **/
 public class FileSshSessionConnPool {
 
+	public static final int DEFAULT_MAX_ACTIVE_CONNECTIONS = 5;
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_INSTANCE = 2;
+
+	/** Time in milliseconds after which idle sessions are disconnected */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+	/** Interval in milliseconds in which a waiting caller checks its monitor */
+	private static final long PERMIT_WAIT_INTERVAL = 100;
+
 	/** Synchronize when accessing, key and value are thread-safe */
 	private final HashMap<CloudAppIndexKey /** CloudApplication+Instance Index*/, SessionList> sessionMap = new HashMap<>();
 	
 	private final CloudFoundryServerBehaviour behaviour;
 	
-	/** Synchronize on access */
-	private final AtomicInteger numberOfActiveConnections = new AtomicInteger();
-	
+	/** Permits for sessions in use, over all application instances. Fair, so that waiters are served in order. */
+	private final Semaphore activePermits;
+
+	private final int maxActiveConnections;
+
+	private final int maxConnectionsPerInstance;
+
+	private final long idleTimeout;
+
 	private final Object supportLock = new Object();
 	/** Synchronize on supportLock before accessing; we only ever request a new sshClientSupport from a single thread. */
 	private ISshClientSupport sshClientSupport;
 
-	private final long MAX_ACTIVE_CONNECTIONS = 5;
+	/** Set once an instance refused an SFTP channel, after which files are read with <code>cat</code> */
+	private volatile boolean sftpUnsupported;
 
 	/** Maximum length of time that we try to establish an SSH connection before giving up. */
 	private final long MAX_CONNECTION_ATTEMPT_TIME_IN_NANOS = TimeUnit.NANOSECONDS.convert(120, TimeUnit.SECONDS); 
 
+	private final Job evictionJob;
+
+	/** Set by dispose(), after which returned sessions are disconnected. Guarded by the session map. */
+	private boolean disposed;
+
+	// Metrics
+	private final AtomicLong acquireCount = new AtomicLong();
+
+	private final AtomicLong totalWaitTimeInMillis = new AtomicLong();
+
+	private final AtomicLong maxWaitTimeInMillis = new AtomicLong();
+
+	private final AtomicLong connectCount = new AtomicLong();
+
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	private final AtomicLong failedHealthCheckCount = new AtomicLong();
+
 	public FileSshSessionConnPool(CloudFoundryServerBehaviour behaviour) {
+		this(behaviour, DEFAULT_MAX_ACTIVE_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_INSTANCE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * @param maxActiveConnections maximum number of sessions in use at the same time, over all application instances
+	 * @param maxConnectionsPerInstance maximum number of sessions in use at the same time for one application instance
+	 * @param idleTimeout time in milliseconds after which idle sessions are disconnected
+	 */
+	public FileSshSessionConnPool(CloudFoundryServerBehaviour behaviour, int maxActiveConnections, int maxConnectionsPerInstance, long idleTimeout) {
 		this.behaviour = behaviour;
+		this.maxActiveConnections = maxActiveConnections;
+		this.maxConnectionsPerInstance = Math.min(maxConnectionsPerInstance, maxActiveConnections);
+		this.idleTimeout = idleTimeout;
+		this.activePermits = new Semaphore(maxActiveConnections, true);
+		this.evictionJob = new Job(Messages.FileSshSessionConnPool_EVICTION_JOB) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				if (evictIdleSessions()) {
+					schedule(FileSshSessionConnPool.this.idleTimeout);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		this.evictionJob.setSystem(true);
+	}
+
+	/** Runs a request with an SSH session of the pool. Implementations must not disconnect the session. */
+	public interface SessionRequest<T> {
+
+		/** 
+		 * @throws CoreException if the request failed for a reason that attempting it again will not fix
+		 * @throws Exception if the request failed; the session is then disconnected rather than reused, and the 
+		 * request is attempted again with another session
+		 */
+		T run(Session session) throws Exception;
 	}
-	
 		
-	/** Thread-safe; processes the file request, and returns the file/dir contents (if possible, otherwise a CoreException is thrown.) */
+	/** 
+	 * Thread-safe; processes the file request, and returns the file/dir contents (if possible, otherwise a CoreException is thrown.)
+	 * Directories are listed as by <code>ls -p</code>: one name per line, followed by '/' for directories. 
+	 */
 	public String processSshSessionRequest(CloudApplication app, int instanceIndex, final String path, final boolean isDir, IProgressMonitor monitor) throws CoreException {
-		
+		if(isDir) {
+			List<RemoteFile> files = listFiles(app, instanceIndex, path, 1, monitor);
+			List<String> names = new ArrayList<String>(files.size());
+			for(RemoteFile file : files) {
+				names.add(file.isDirectory() ? file.getName() + "/" : file.getName()); //$NON-NLS-1$
+			}
+			Collections.sort(names);
+			StringBuilder listing = new StringBuilder();
+			for(String name : names) {
+				listing.append(name).append('\n');
+			}
+			return listing.toString();
+		}
+		return runWithSession(app, instanceIndex, new SessionRequest<String>() {
+			@Override
+			public String run(Session session) throws Exception {
+				return runFileCommand(session, path);
+			}
+		}, monitor);
+	}
+
+	/** 
+	 * Thread-safe; lists the files under the given directory, down to the given depth, with their type, size, 
+	 * modification time and permissions. The files are listed with a single <code>find</code> command or, if 
+	 * <code>find</code> cannot list them (e.g. the BusyBox version does not support <code>-printf</code>), over SFTP.
+	 * @param path directory relative to the home directory of the instance; empty for the home directory
+	 * @param depth 1 for the children of the directory, 2 to include the children of its subdirectories, and so on
+	 * @return files with their paths relative to the directory
+	 */
+	public List<RemoteFile> listFiles(CloudApplication app, int instanceIndex, final String path, final int depth, IProgressMonitor monitor) throws CoreException {
+		final String dir = path == null || path.length() == 0 ? "." : path; //$NON-NLS-1$
+		final IProgressMonitor listMonitor = monitor != null ? monitor : new NullProgressMonitor();
+		return runWithSession(app, instanceIndex, new SessionRequest<List<RemoteFile>>() {
+			@Override
+			public List<RemoteFile> run(Session session) throws Exception {
+				ByteArrayOutputStream err = new ByteArrayOutputStream();
+				List<RemoteFile> files = runListCommand(session, dir, depth, err);
+				if(files != null) {
+					return files;
+				}
+				// find failed without listing any file: either the directory cannot be read, or find does not 
+				// support -printf. SFTP reports the same attributes, one directory at a time
+				ChannelSftp sftp = openSftp(session);
+				if(sftp == null) {
+					throw CloudErrorUtil.toCoreException(err.toString().trim());
+				}
+				try {
+					files = new ArrayList<RemoteFile>();
+					sftpList(sftp, dir, "", depth, files, listMonitor); //$NON-NLS-1$
+					return files;
+				} finally {
+					sftp.disconnect();
+				}
+			}
+		}, listMonitor);
+	}
+
+	/** Thread-safe; runs the request with a pooled SSH session to the given application instance, and returns its result. */
+	public <T> T runWithSession(CloudApplication app, int instanceIndex, SessionRequest<T> request, IProgressMonitor monitor) throws CoreException {
+		if (monitor == null) {
+			monitor = new NullProgressMonitor();
+		}
 		CloudAppIndexKey key = new CloudAppIndexKey(app, instanceIndex);
 
 		SessionList value;
 		synchronized(sessionMap) {
 			value = sessionMap.get(key);
+			if(value == null) {
+				value = new SessionList(maxConnectionsPerInstance);
+				sessionMap.put(key, value);
+			}
+			// Keep the list in the map while it is used
+			value.users++;
 		}
 
-		if(value == null) {
-			value = new SessionList();
+		try {
+			return runWithSession(key, value, request, monitor);
+		} finally {
 			synchronized(sessionMap) {
-				sessionMap.put(key, value);
+				value.users--;
 			}
-		} 
-		
-		return runWithSession(key, value, monitor, path, isDir);
-		
+		}
 	}
 	
 	/** Process the request with an available SSH session, otherwise establish a new one (if not above max connections limit).*/
-	private String runWithSession(CloudAppIndexKey key, SessionList value, IProgressMonitor monitor, final String path, final boolean isDir) throws CoreException {
-		
-		String fileResult = null; // This value should not be read unless requestProcessed is true.
-		boolean requestProcessed = false;
+	private <T> T runWithSession(CloudAppIndexKey key, SessionList value, SessionRequest<T> request, IProgressMonitor monitor) throws CoreException {
 		
 		Exception lastExceptionThrown = null;
 		
-		Session session = null;
-	
 		long expireTimeInNanos = System.nanoTime() + MAX_CONNECTION_ATTEMPT_TIME_IN_NANOS;
 		
-		while(!requestProcessed && System.nanoTime() < expireTimeInNanos) {
-			
-			session = value.acquireSessionIfAvailable().orElse(null);
-				
-			if(session != null) {
-				// If there is already a connection in the pool, then use it
-
-				RequestResult result = runWithSessionInner(value, session, path, isDir);
-				
-				requestProcessed = result.isRequestProcessed();
-				fileResult = result.getResult();
-				lastExceptionThrown = result.getLastExceptionThrown().orElse(null);
-				
-			} else {
-				
-				// If there is not already a connection in the pool, then establish a new connection
-				boolean areWeOverConnLimit = false;
-				synchronized(numberOfActiveConnections) {
-					if(numberOfActiveConnections.get() >= MAX_ACTIVE_CONNECTIONS) {
-						areWeOverConnLimit = true;
-					} else {
-						areWeOverConnLimit = false;
-						numberOfActiveConnections.incrementAndGet();
-					}
+		while(System.nanoTime() < expireTimeInNanos) {
+
+			// Per instance permit first, so that requests to a busy instance do not hold global permits 
+			// needed by other instances while they wait.
+			long waitStart = System.currentTimeMillis();
+			if(!acquire(value.permits, expireTimeInNanos, monitor)) {
+				break;
+			}
+			try {
+				if(!acquire(activePermits, expireTimeInNanos, monitor)) {
+					break;
 				}
-				
-				if(!areWeOverConnLimit) {
-				
+				recordWait(System.currentTimeMillis() - waitStart);
+				try {
+					Session session = null;
 					try {
-						synchronized (supportLock) {
-							if(sshClientSupport == null) {
-								sshClientSupport = behaviour.getSshClientSupport(monitor);
-							}
+						session = value.acquireHealthySession();
+						if(session == null) {
+							// If there is not already a connection in the pool, then establish a new connection
+							session = connect(key, monitor);
 						}
-						
-						session = sshClientSupport.connect(key.getApp().getName(), key.getIndex(), behaviour.getCloudFoundryServer().getServer(), monitor);
-						
-						RequestResult result = runWithSessionInner(value, session, path, isDir);
-						requestProcessed = result.isRequestProcessed();
-						fileResult = result.getResult();
-						lastExceptionThrown = result.getLastExceptionThrown().orElse(null);
-												
 					} catch (CoreException e) {
-						/* ignore, this is thrown by getSshClientSupport; we will try to establish the connection again after a short delay. */
+						/* thrown by getSshClientSupport or connect; we will try to establish the connection again after a short delay. */
 						lastExceptionThrown = e;
 					}
-					
-				} else {
-					/** We have too many active connections, so just wait for one to finish. */
+					if(session != null) {
+						try {
+							T result = request.run(session);
+							// If an error did not occur, it is safe to return the session to the pool
+							releaseSession(value, session);
+							scheduleEviction();
+							return result;
+						} catch(OperationCanceledException e) {
+							disconnect(session);
+							throw e;
+						} catch(CoreException e) {
+							// The request failed for a reason unrelated to the session (e.g. the file does not exist), 
+							// so it is not attempted again
+							releaseSession(value, session);
+							scheduleEviction();
+							throw e;
+						} catch(Exception e) {
+							/* Every exception should be caught here, to avoid failing to trigger the cleanup logic.
+							 * The SSH session will be terminated and not reused. */
+							lastExceptionThrown = e;
+							disconnect(session);
+						}
+					}
+				} finally {
+					activePermits.release();
 				}
+			} finally {
+				value.permits.release();
 			}
-			
-			if(!requestProcessed) {
-								
-				// Wait between failures.
-				try { Thread.sleep(1000); } catch (InterruptedException e) { throw new RuntimeException(e); }
-				
+
+			// Wait between failures, without holding permits.
+			try { Thread.sleep(1000); } catch (InterruptedException e) { throw new OperationCanceledException(); }
+			if(monitor.isCanceled()) {
+				throw new OperationCanceledException();
 			}
-			
 		}
 		
-		if(!requestProcessed) {
-			//  If the request was never successsfully processed, throw a status that includes the most recent thrown exception
-			throw new CoreException(CloudFoundryPlugin.getErrorStatus(Messages.SshFileSessionPool_UNABLE_TO_ESTABLISH_CONNECTION, lastExceptionThrown));
+		//  If the request was never successsfully processed, throw a status that includes the most recent thrown exception
+		throw new CoreException(CloudFoundryPlugin.getErrorStatus(Messages.SshFileSessionPool_UNABLE_TO_ESTABLISH_CONNECTION, lastExceptionThrown));
+	}
+
+	/** 
+	 * Thread-safe; copies the bytes of the given file to the output stream, starting at the given offset. The file is
+	 * read over an SFTP channel, or with <code>cat</code> if the instance does not support SFTP. If the connection fails
+	 * during the transfer, the transfer resumes after the bytes already written.
+	 * @param out receives the file content. Not closed.
+	 * @return number of bytes written to the output stream
+	 */
+	public long downloadFile(CloudApplication app, int instanceIndex, final String path, OutputStream out, final long offset, final IProgressMonitor monitor) throws CoreException {
+		final CountingOutputStream counting = new CountingOutputStream(out);
+		runWithSession(app, instanceIndex, new SessionRequest<Void>() {
+			@Override
+			public Void run(Session session) throws Exception {
+				long position = offset + counting.getCount();
+				ChannelSftp sftp = openSftp(session);
+				if(sftp != null) {
+					try {
+						sftpDownload(sftp, path, counting, position, monitor);
+						return null;
+					} finally {
+						sftp.disconnect();
+					}
+				}
+				execDownload(session, path, counting, position, monitor);
+				return null;
+			}
+		}, monitor);
+		try {
+			counting.flush();
+		} catch (IOException e) {
+			throw CloudErrorUtil.toCoreException(e);
 		}
-		
-		return fileResult;
-		
+		return counting.getCount();
 	}
-	
-	/** Call JSch API to retrieve the file, and handle cleanup if an error occurs */
-	private RequestResult runWithSessionInner(SessionList value, Session session, String path, boolean isDir) {
 
-		boolean processed = false; // Whether the user's session request completed w/o error.
-		boolean errorOccurred = false; // Whether a jsch error occurred at any point.
-		
-		Exception lastExceptionThrown = null; // For diagnostic purposes only
-		
-		String result = null;
+	/**
+	 * @return a connected SFTP channel, or null if the instances of the server do not support SFTP
+	 * @throws JSchException if the channel could not be opened for another reason, for example because the session is
+	 * down
+	 */
+	private ChannelSftp openSftp(Session session) throws JSchException {
+		if(sftpUnsupported) {
+			return null;
+		}
+		ChannelSftp sftp = null;
 		try {
-			Channel channel = session.openChannel("exec");
-			try {
-				
-				String command = isDir ? "ls -p " + path //$NON-NLS-1$
-						// Basic work-around to scp which doesn't appear to work
-						// well. Returns empty content for existing files.
-						: "cat " + path; //$NON-NLS-1$
+			sftp = (ChannelSftp) session.openChannel("sftp"); //$NON-NLS-1$
+			sftp.connect();
+			return sftp;
+		} catch (JSchException e) {
+			if (sftp != null) {
+				sftp.disconnect();
+			}
+			if (!isSubsystemRefused(session, e)) {
+				throw e;
+			}
+			// SFTP subsystem not available in the container
+			sftpUnsupported = true;
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the failure to connect an SFTP channel is because the instance refused the SFTP subsystem, rather
+	 * than because the session or the channel could not be opened
+	 */
+	private static boolean isSubsystemRefused(Session session, JSchException e) {
+		if (!session.isConnected()) {
+			return false;
+		}
+		// JSch reports a channel that the server did not open as "channel is not opened." or "open failed"
+		String message = e.getMessage();
+		return message == null || !(message.startsWith("channel is not opened") || message.startsWith("open failed")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/** Lists the files under the directory over SFTP, which reports the attributes of each file, one directory at a time. */
+	private static void sftpList(ChannelSftp sftp, String dir, String relativePath, int depth, List<RemoteFile> files, IProgressMonitor monitor) throws SftpException, CoreException {
+		Vector<?> entries;
+		try {
+			entries = sftp.ls(relativePath.length() == 0 ? dir : dir + '/' + relativePath);
+		} catch (SftpException e) {
+			if(e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE || e.id == ChannelSftp.SSH_FX_PERMISSION_DENIED) {
+				throw CloudErrorUtil.toCoreException(e);
+			}
+			throw e;
+		}
+		for(Object entry : entries) {
+			if(monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			String name = ((ChannelSftp.LsEntry) entry).getFilename();
+			if(".".equals(name) || "..".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+				continue;
+			}
+			SftpATTRS attrs = ((ChannelSftp.LsEntry) entry).getAttrs();
+			String path = relativePath.length() == 0 ? name : relativePath + '/' + name;
+			files.add(new RemoteFile(path, attrs.isDir(), attrs.getSize(), attrs.getMTime() * 1000L, attrs.getPermissions() & 07777));
+			if(attrs.isDir() && depth > 1) {
+				sftpList(sftp, dir, path, depth - 1, files, monitor);
+			}
+		}
+	}
+
+	private static void sftpDownload(ChannelSftp sftp, String path, OutputStream out, long position, final IProgressMonitor monitor) throws SftpException, CoreException {
+		try {
+			sftp.get(path, out, new SftpProgressMonitor() {
+				public void init(int op, String src, String dest, long max) {
+				}
 
-				((ChannelExec) channel).setCommand(command);
+				public boolean count(long count) {
+					return !monitor.isCanceled();
+				}
 
-				result = getContent(channel);
+				public void end() {
+				}
+			}, ChannelSftp.RESUME, position);
+		} catch (SftpException e) {
+			if(e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE || e.id == ChannelSftp.SSH_FX_PERMISSION_DENIED) {
+				throw CloudErrorUtil.toCoreException(e);
+			}
+			throw e;
+		}
+		if(monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
 
-				processed = true;
-				
+	/** Streams the raw output of <code>cat</code>, or of <code>tail</code> when resuming, to the output stream. */
+	private static void execDownload(Session session, String path, OutputStream out, long position, IProgressMonitor monitor) throws JSchException, IOException, CoreException {
+		ChannelExec channel = (ChannelExec) session.openChannel("exec"); //$NON-NLS-1$
+		try {
+			String quotedPath = quote(path);
+			channel.setCommand(position > 0 ? "tail -c +" + (position + 1) + " " + quotedPath : "cat " + quotedPath); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			channel.setErrStream(err);
+			InputStream in = channel.getInputStream();
+			channel.connect();
+			try {
+				byte[] buffer = new byte[32 * 1024];
+				int bytesRead;
+				while((bytesRead = in.read(buffer)) != -1) {
+					if(monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					out.write(buffer, 0, bytesRead);
+				}
 			} finally {
-				channel.disconnect();
+				in.close();
 			}
-			
-		} catch(Exception e) {
-			/* This will be either JSchException or IOException, but every exception should be caught here, to avoid failing to trigger the cleanup logic.
-			 * Any exceptions we will safely ignore, and the SSH session will be terminated and not reused. */
-			errorOccurred = true;
-			lastExceptionThrown = e;
+			if(getExitStatus(channel) > 0) {
+				throw CloudErrorUtil.toCoreException(err.toString().trim());
+			}
+		} finally {
+			channel.disconnect();
 		}
+	}
 
-		if(errorOccurred) {
-			try { session.disconnect(); } catch(Exception e2) { /* ignore */ }
+	/** 
+	 * Lists the files under the directory with <code>find</code>, which prints the metadata of each file (see {@link RemoteFileListing}).
+	 * @param err receives the error output of the command
+	 * @return files listed, or null if the command failed without listing any file 
+	 */
+	private static List<RemoteFile> runListCommand(Session session, String dir, int depth, ByteArrayOutputStream err) throws JSchException, IOException {
+		ChannelExec channel = (ChannelExec) session.openChannel("exec"); //$NON-NLS-1$
+		try {
+			channel.setCommand(RemoteFileListing.getFindCommand(dir, depth));
+			channel.setErrStream(err);
+			List<RemoteFile> files = RemoteFileListing.parseFindOutput(getContent(channel));
+			// find also fails if only some subdirectories could not be read, in which case the other files are still listed
+			if(files.isEmpty() && getExitStatus(channel) > 0) {
+				return null;
+			}
+			return files;
+		} finally {
+			channel.disconnect();
+		}
+	}
+
+	/** Waits for the exit status of the command, which is set once the channel is closed, shortly after the end of its output. */
+	private static int getExitStatus(Channel channel) {
+		for(int i = 0; i < 50 && !channel.isClosed(); i++) {
+			try { Thread.sleep(20); } catch (InterruptedException e) { throw new OperationCanceledException(); }
+		}
+		return channel.getExitStatus();
+	}
 
-			synchronized(numberOfActiveConnections) {
-				numberOfActiveConnections.decrementAndGet();
+	/** @return the path quoted for a POSIX shell */
+	static String quote(String path) {
+		return "'" + path.replace("'", "'\\''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/** Waits for a permit until it is available, the deadline passes (returns false), or the monitor is canceled. */
+	private static boolean acquire(Semaphore semaphore, long expireTimeInNanos, IProgressMonitor monitor) {
+		try {
+			while(System.nanoTime() < expireTimeInNanos) {
+				if(monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				if(semaphore.tryAcquire(PERMIT_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
 			}
-		} else {
-			// If an error did not occur, it is safe to return the session to the pool
-			value.releaseSession(session);
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		return false;
+	}
+
+	private Session connect(CloudAppIndexKey key, IProgressMonitor monitor) throws CoreException {
+		ISshClientSupport support;
+		synchronized (supportLock) {
+			if(sshClientSupport == null) {
+				sshClientSupport = behaviour.getSshClientSupport(monitor);
+			}
+			support = sshClientSupport;
+		}
+		Session session = support.connect(key.getApp().getName(), key.getIndex(), behaviour.getCloudFoundryServer().getServer(), monitor);
+		connectCount.incrementAndGet();
+		return session;
+	}
+
+	/** Returns the session to the pool, or disconnects it if the pool was disposed */
+	private void releaseSession(SessionList value, Session session) {
+		synchronized(sessionMap) {
+			if(!disposed) {
+				value.releaseSession(session);
+				return;
+			}
+		}
+		disconnect(session);
+	}
+
+	private void disconnect(Session session) {
+		try { session.disconnect(); } catch(Exception e2) { /* ignore */ }
+	}
+
+	private void recordWait(long waitTime) {
+		acquireCount.incrementAndGet();
+		totalWaitTimeInMillis.addAndGet(waitTime);
+		long max;
+		while((max = maxWaitTimeInMillis.get()) < waitTime && !maxWaitTimeInMillis.compareAndSet(max, waitTime)) {
+			// Retry
+		}
+	}
+
+	private void scheduleEviction() {
+		// Has no effect if already scheduled, so sessions may stay idle up to twice the timeout
+		if(evictionJob.getState() == Job.NONE) {
+			evictionJob.schedule(idleTimeout);
+		}
+	}
+
+	/** 
+	 * Disconnects sessions idle for longer than the idle timeout, and removes unused application instances from the pool.
+	 * @return true if idle sessions remain in the pool 
+	 */
+	boolean evictIdleSessions() {
+		long now = System.currentTimeMillis();
+		List<Session> toDisconnect = new ArrayList<Session>();
+		boolean idleRemaining = false;
+		synchronized(sessionMap) {
+			for(Iterator<SessionList> it = sessionMap.values().iterator(); it.hasNext();) {
+				SessionList list = it.next();
+				list.removeIdleSince(now - idleTimeout, toDisconnect);
+				if(list.getIdleCount() > 0) {
+					idleRemaining = true;
+				} else if(list.users == 0) {
+					it.remove();
+				}
+			}
+		}
+		for(Session session : toDisconnect) {
+			disconnect(session);
+		}
+		evictedCount.addAndGet(toDisconnect.size());
+		return idleRemaining;
+	}
+
+	/** Disconnects all idle sessions. Sessions in use are disconnected when they are returned. */
+	public void dispose() {
+		evictionJob.cancel();
+		List<Session> toDisconnect = new ArrayList<Session>();
+		synchronized(sessionMap) {
+			disposed = true;
+			for(SessionList list : sessionMap.values()) {
+				list.removeIdleSince(Long.MAX_VALUE, toDisconnect);
+			}
+			sessionMap.clear();
+		}
+		for(Session session : toDisconnect) {
+			disconnect(session);
+		}
+	}
+
+	// Metrics ----------------------
+
+	/** @return number of sessions currently in use */
+	public int getActiveCount() {
+		return maxActiveConnections - activePermits.availablePermits();
+	}
+
+	/** @return number of connected sessions waiting in the pool to be reused */
+	public int getIdleCount() {
+		int idle = 0;
+		synchronized(sessionMap) {
+			for(SessionList list : sessionMap.values()) {
+				idle += list.getIdleCount();
+			}
+		}
+		return idle;
+	}
+
+	/** @return number of callers waiting for a session */
+	public int getWaitingCount() {
+		return activePermits.getQueueLength();
+	}
+
+	/** @return fraction of the maximum number of active sessions currently in use, between 0 and 1 */
+	public double getUtilization() {
+		return (double) getActiveCount() / maxActiveConnections;
+	}
+
+	/** @return average time in milliseconds that callers waited for the per instance and global permits */
+	public long getAverageWaitTime() {
+		long count = acquireCount.get();
+		return count > 0 ? totalWaitTimeInMillis.get() / count : 0;
+	}
+
+	public long getMaxWaitTime() {
+		return maxWaitTimeInMillis.get();
+	}
+
+	/** @return number of SSH sessions established by the pool */
+	public long getConnectCount() {
+		return connectCount.get();
+	}
+
+	/** @return number of idle sessions disconnected after the idle timeout */
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/** @return number of pooled sessions discarded as they were no longer connected */
+	public long getFailedHealthCheckCount() {
+		return failedHealthCheckCount.get();
+	}
+
+	/** Runs the command reading the file on the session, and returns its output */
+	private static String runFileCommand(Session session, String path) throws IOException, JSchException {
+		Channel channel = session.openChannel("exec");
+		try {
+			
+			// Basic work-around to scp which doesn't appear to work
+			// well. Returns empty content for existing files.
+			String command = "cat " + quote(path); //$NON-NLS-1$
+
+			((ChannelExec) channel).setCommand(command);
+
+			return getContent(channel);
+
+		} finally {
+			channel.disconnect();
 		}
-		
-		return new RequestResult(processed, result, lastExceptionThrown);
-		
 	}
 
 	/** Read JSch Channel into String */
@@ -262,32 +720,6 @@ public class FileSshSessionConnPool {
 	
 	// Inner Classes ----------------------
 	
-	private static class RequestResult {
-		private final boolean requestProcessed;
-		private final String userResult; // May be null, if the user returned null.
-		
-		private final Exception lastExceptionThrown;
-		
-		public RequestResult(boolean requestProcessed, String userResult, Exception lastExceptionThrown) {
-			this.requestProcessed = requestProcessed;
-			this.userResult = userResult;
-			this.lastExceptionThrown = lastExceptionThrown;
-		}
-		
-		public boolean isRequestProcessed() {
-			return requestProcessed;
-		}
-		
-		public String getResult() {
-			return userResult;
-		}
-		
-		public Optional<Exception> getLastExceptionThrown() {
-			return Optional.ofNullable(lastExceptionThrown);
-		}
-		
-	}
-	
 	/** Combination of CloudApplication and app index to create a single map key; Thread-safe. */
 	private static class CloudAppIndexKey {
 		
@@ -323,29 +755,86 @@ public class FileSshSessionConnPool {
 			
 	}
 	
-	/** List of SSH sessions that are available to be reused; Thread-safe .*/
-	private static class SessionList {
+	/** Idle SSH sessions of an application instance that are available to be reused, and the permits for sessions in use; Thread-safe .*/
+	private class SessionList {
 
-		/** Synchronize on access */
-		private final List<Session> availableSessions = new ArrayList<Session>();
+		/** Fair, so that waiters are served in order */
+		final Semaphore permits;
+
+		/** Number of requests using this list. Guarded by the session map. */
+		int users;
+
+		/** Synchronize on access. Most recently released sessions are last. */
+		private final LinkedList<IdleSession> availableSessions = new LinkedList<IdleSession>();
 		
-		public SessionList() {
+		public SessionList(int maxConnections) {
+			this.permits = new Semaphore(maxConnections, true);
 		}
 		
-		public Optional<Session> acquireSessionIfAvailable() {
-			synchronized (availableSessions) {
-				if(availableSessions.size() > 0) {
-					return Optional.of(availableSessions.remove(0));
+		/** @return most recently used session that is still connected, or null if none. Sessions that are no longer connected are discarded. */
+		public Session acquireHealthySession() {
+			while(true) {
+				IdleSession idle;
+				synchronized (availableSessions) {
+					idle = availableSessions.pollLast();
+				}
+				if(idle == null) {
+					return null;
 				}
+				if(isHealthy(idle.session)) {
+					return idle.session;
+				}
+				failedHealthCheckCount.incrementAndGet();
+				disconnect(idle.session);
+			}
+		}
+
+		private boolean isHealthy(Session session) {
+			if(!session.isConnected()) {
+				return false;
+			}
+			try {
+				session.sendKeepAliveMsg();
+				return true;
+			} catch(Exception e) {
+				return false;
 			}
-			
-			return Optional.empty();
 		}
 
 		public void releaseSession(Session s) {
 			synchronized (availableSessions) {
-				availableSessions.add(s);
+				availableSessions.addLast(new IdleSession(s, System.currentTimeMillis()));
+			}
+		}
+
+		public int getIdleCount() {
+			synchronized (availableSessions) {
+				return availableSessions.size();
+			}
+		}
+
+		/** Moves sessions idle since before the given time to the given list */
+		public void removeIdleSince(long time, List<Session> removed) {
+			synchronized (availableSessions) {
+				for(Iterator<IdleSession> it = availableSessions.iterator(); it.hasNext();) {
+					IdleSession idle = it.next();
+					if(idle.idleSince <= time) {
+						removed.add(idle.session);
+						it.remove();
+					}
+				}
 			}
 		}
 	}
+
+	private static class IdleSession {
+		final Session session;
+
+		final long idleSince;
+
+		IdleSession(Session session, long idleSince) {
+			this.session = session;
+			this.idleSince = idleSince;
+		}
+	}
 }
@@ -25,6 +25,7 @@ import org.eclipse.cft.server.core.internal.CloudErrorUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
@@ -133,6 +134,12 @@ public abstract class LocalServerRequest<T> extends ClientRequest<T> {
 		return getCloudServer().getBehaviour().getClient(monitor);
 	}
 
+	@Override
+	protected RetryPolicy getRetryPolicy() throws CoreException {
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(getCloudServer().getServerOriginal());
+		return data != null ? data.getRetryPolicy() : super.getRetryPolicy();
+	}
+
 	/**
 	 * 
 	 * @return non-null Cloud Foundry server instance. If it cannot be resolved,
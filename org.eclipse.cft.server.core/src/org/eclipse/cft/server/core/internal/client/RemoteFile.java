@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+/**
+ * File or directory found when listing a directory of an application
+ * instance (see
+ * {@link CloudFoundryServerBehaviour#listFiles(org.cloudfoundry.client.lib.domain.CloudApplication, int, String, int, org.eclipse.core.runtime.IProgressMonitor)}
+ * ).
+ *
+ */
+public class RemoteFile {
+
+	private final String path;
+
+	private final boolean directory;
+
+	private final long size;
+
+	private final long modifiedTime;
+
+	private final int mode;
+
+	/**
+	 *
+	 * @param path path relative to the listed directory, with segments
+	 * separated by '/'
+	 * @param directory
+	 * @param size size in bytes, or -1 if not known
+	 * @param modifiedTime time of the last modification in milliseconds since
+	 * the epoch, or 0 if not known
+	 */
+	public RemoteFile(String path, boolean directory, long size, long modifiedTime) {
+		this(path, directory, size, modifiedTime, -1);
+	}
+
+	/**
+	 *
+	 * @param path path relative to the listed directory, with segments
+	 * separated by '/'
+	 * @param directory
+	 * @param size size in bytes, or -1 if not known
+	 * @param modifiedTime time of the last modification in milliseconds since
+	 * the epoch, or 0 if not known
+	 * @param mode permission bits (e.g. 0644), or -1 if not known
+	 */
+	public RemoteFile(String path, boolean directory, long size, long modifiedTime, int mode) {
+		this.path = path;
+		this.directory = directory;
+		this.size = size;
+		this.modifiedTime = modifiedTime;
+		this.mode = mode;
+	}
+
+	/**
+	 *
+	 * @return path relative to the listed directory, e.g. "lib/app.jar"
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 *
+	 * @return last segment of the path
+	 */
+	public String getName() {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 *
+	 * @return path of the parent directory relative to the listed directory,
+	 * or an empty string if the parent is the listed directory
+	 */
+	public String getParentPath() {
+		int index = path.lastIndexOf('/');
+		return index >= 0 ? path.substring(0, index) : ""; //$NON-NLS-1$
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 *
+	 * @return size in bytes, or -1 if not known
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return time of the last modification in milliseconds since the epoch,
+	 * or 0 if not known
+	 */
+	public long getModifiedTime() {
+		return modifiedTime;
+	}
+
+	/**
+	 *
+	 * @return permission bits, e.g. 0644 for a file readable by all and
+	 * writable by its owner, or -1 if not known
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	@Override
+	public String toString() {
+		return directory ? path + '/' : path;
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Structured listing of the files of an application instance, printed by
+ * <code>find</code> with {@link #FIND_FORMAT} (see
+ * {@link #getFindCommand(String, int)}). Each line describes one file,
+ * with the fields separated by a space:
+ * <ol>
+ * <li>Type of the file, following symbolic links: 'd' for directories, 'f'
+ * for regular files, 'N' for broken links.</li>
+ * <li>Permission bits, in octal.</li>
+ * <li>Size in bytes.</li>
+ * <li>Time of the last modification, in seconds since the epoch, with a
+ * fraction.</li>
+ * <li>Path relative to the listed directory. It is last, as it may contain
+ * spaces.</li>
+ * </ol>
+ * This gives the metadata of all the files listed in a single command, which,
+ * unlike the output of <code>ls</code>, does not depend on the locale or the
+ * version of the tools in the container.
+ *
+ */
+public class RemoteFileListing {
+
+	/**
+	 * Format passed to <code>find -printf</code>
+	 */
+	public static final String FIND_FORMAT = "%Y %m %s %T@ %P\\n"; //$NON-NLS-1$
+
+	private static final int FIELD_COUNT = 5;
+
+	private RemoteFileListing() {
+		// Utility class
+	}
+
+	/**
+	 * 
+	 * @param dir directory to list, relative to the home directory of the
+	 * instance, or "." for the home directory. Followed if it is a symbolic
+	 * link, as <code>find</code> would otherwise list the link only.
+	 * @param depth number of levels of subdirectories to list, starting at 1
+	 * for the children of the directory
+	 * @return shell command printing the files under the directory with
+	 * {@link #FIND_FORMAT}
+	 */
+	public static String getFindCommand(String dir, int depth) {
+		return "find -H " + FileSshSessionConnPool.quote(dir) + " -mindepth 1 -maxdepth " + depth + " -printf " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ FileSshSessionConnPool.quote(FIND_FORMAT);
+	}
+
+	/**
+	 * 
+	 * @param output output of <code>find</code> printed with
+	 * {@link #FIND_FORMAT}. May be null
+	 * @return files listed, in the order they were printed. Lines that are not
+	 * in the expected format are skipped. Never null
+	 */
+	public static List<RemoteFile> parseFindOutput(String output) {
+		List<RemoteFile> files = new ArrayList<RemoteFile>();
+		if (output == null) {
+			return files;
+		}
+		for (String line : output.split("\n")) { //$NON-NLS-1$
+			RemoteFile file = parseFindLine(line);
+			if (file != null) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * 
+	 * @param line line printed by <code>find</code> with {@link #FIND_FORMAT}
+	 * @return file described by the line, or null if the line is not in the
+	 * expected format
+	 */
+	public static RemoteFile parseFindLine(String line) {
+		String[] fields = line.split(" ", FIELD_COUNT); //$NON-NLS-1$
+		if (fields.length < FIELD_COUNT || fields[0].length() != 1 || fields[4].length() == 0) {
+			return null;
+		}
+		// Values that cannot be read are unknown, but the file is still
+		// listed
+		int mode = -1;
+		long size = -1;
+		long modifiedTime = 0;
+		try {
+			mode = Integer.parseInt(fields[1], 8);
+		}
+		catch (NumberFormatException e) {
+			// Unknown mode
+		}
+		try {
+			size = Long.parseLong(fields[2]);
+		}
+		catch (NumberFormatException e) {
+			// Unknown size
+		}
+		try {
+			modifiedTime = (long) (Double.parseDouble(fields[3]) * 1000);
+		}
+		catch (NumberFormatException e) {
+			// Unknown modification time
+		}
+		return new RemoteFile(fields[4], fields[0].charAt(0) == 'd', size, modifiedTime, mode);
+	}
+}
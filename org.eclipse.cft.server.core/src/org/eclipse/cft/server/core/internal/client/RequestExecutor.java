@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+
+/**
+ * Runs client requests of a server on a bounded pool of threads, so that
+ * callers can stop waiting for a request when their progress monitor is
+ * canceled. Threads are reused across requests and exit when idle.
+ * <p/>
+ * Cancellation goes both ways: canceling the caller's monitor cancels the
+ * request's future, and canceling the future makes the monitor seen by the
+ * request report that it was canceled. Since a request may not check its
+ * monitor, it may still be running after its caller has returned.
+ * <p/>
+ * The executor keeps the number of requests completed, and the total time
+ * they spent queued and running, to help diagnose slow servers.
+ *
+ */
+public class RequestExecutor implements Executor {
+
+	public static final int DEFAULT_MAX_THREADS = 4;
+
+	/**
+	 * Idle time in seconds after which threads exit
+	 */
+	private static final long KEEP_ALIVE = 60;
+
+	/**
+	 * Interval in milliseconds in which a waiting caller checks its monitor.
+	 * The caller is woken as soon as the request completes.
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong totalQueueTime = new AtomicLong();
+
+	private final AtomicLong totalRunTime = new AtomicLong();
+
+	/**
+	 *
+	 * @param name used to name the threads of the executor
+	 * @param maxThreads maximum number of requests running at the same time
+	 */
+	public RequestExecutor(final String name, int maxThreads) {
+		this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								RequestExecutor.class.getName() + " - " + name + " - " + count.incrementAndGet()); //$NON-NLS-1$ //$NON-NLS-2$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Submits the request to run on the executor.
+	 * @param request
+	 * @param monitor monitor of the caller. May be null
+	 * @return future result of the request. Canceling the future makes the
+	 * monitor passed to the request report that it was canceled.
+	 */
+	public <T> Future<T> submit(final BaseClientRequest<T> request, IProgressMonitor monitor) {
+		final CancelableMonitor requestMonitor = new CancelableMonitor(
+				monitor != null ? monitor : new NullProgressMonitor());
+		final long submitTime = System.currentTimeMillis();
+		Future<T> future = executor.submit(new Callable<T>() {
+
+			public T call() throws Exception {
+				long startTime = System.currentTimeMillis();
+				try {
+					return request.run(requestMonitor);
+				}
+				finally {
+					long endTime = System.currentTimeMillis();
+					totalQueueTime.addAndGet(startTime - submitTime);
+					totalRunTime.addAndGet(endTime - startTime);
+					completedCount.incrementAndGet();
+				}
+			}
+		});
+		requestMonitor.setFuture(future);
+		return future;
+	}
+
+	/**
+	 * Runs the given task on the executor. Used to run tasks made of several
+	 * requests, for example with a
+	 * {@link java.util.concurrent.CompletionService}.
+	 */
+	public void execute(final Runnable task) {
+		final long submitTime = System.currentTimeMillis();
+		executor.execute(new Runnable() {
+
+			public void run() {
+				long startTime = System.currentTimeMillis();
+				try {
+					task.run();
+				}
+				finally {
+					long endTime = System.currentTimeMillis();
+					totalQueueTime.addAndGet(startTime - submitTime);
+					totalRunTime.addAndGet(endTime - startTime);
+					completedCount.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs the request on the executor, and waits until it completes or the
+	 * given monitor is canceled.
+	 * @param request
+	 * @param monitor
+	 * @return result of the request
+	 * @throws CoreException if the request failed
+	 * @throws OperationCanceledException if the monitor was canceled before
+	 * the request completed
+	 */
+	public <T> T runAndWait(BaseClientRequest<T> request, IProgressMonitor monitor) throws CoreException {
+		Future<T> future = submit(request, monitor);
+		try {
+			while (true) {
+				if (monitor != null && monitor.isCanceled()) {
+					future.cancel(true);
+					throw new OperationCanceledException();
+				}
+				try {
+					return future.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					// Check the monitor again
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			future.cancel(true);
+			throw new OperationCanceledException();
+		}
+		catch (CancellationException e) {
+			throw new OperationCanceledException();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw CloudErrorUtil.toCoreException(cause);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of requests waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 *
+	 * @return number of requests currently running
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 *
+	 * @return average time in milliseconds that completed requests waited for
+	 * a thread
+	 */
+	public long getAverageQueueTime() {
+		long count = completedCount.get();
+		return count > 0 ? totalQueueTime.get() / count : 0;
+	}
+
+	/**
+	 *
+	 * @return average time in milliseconds that completed requests took to run
+	 */
+	public long getAverageRunTime() {
+		long count = completedCount.get();
+		return count > 0 ? totalRunTime.get() / count : 0;
+	}
+
+	/**
+	 * Stops accepting requests. Requests already submitted still run.
+	 */
+	public void dispose() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Monitor passed to requests, which is also canceled if the future of the
+	 * request is canceled.
+	 */
+	private static class CancelableMonitor extends ProgressMonitorWrapper {
+
+		private volatile Future<?> future;
+
+		CancelableMonitor(IProgressMonitor monitor) {
+			super(monitor);
+		}
+
+		void setFuture(Future<?> future) {
+			this.future = future;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			Future<?> future = this.future;
+			return (future != null && future.isCancelled()) || getWrappedProgressMonitor().isCanceled();
+		}
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.Random;
+
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Decides when failed client requests are attempted again. Requests decide
+ * whether an error may be retried and the base interval to wait (see
+ * {@link BaseClientRequest#waitOnErrorInterval(Throwable, org.eclipse.core.runtime.SubMonitor)}
+ * and {@link CloudServerRequest#getRetryInterval(Throwable, org.eclipse.core.runtime.IProgressMonitor)}
+ * ), and the policy of the server the request is sent to decides the following.
+ * Reattempts that poll for a state change rather than recover from a failure
+ * (for example, waiting for an application to finish staging) are made at the
+ * interval requested by the request, and are not subject to the policy (see
+ * {@link BaseClientRequest#getPollingInterval(Throwable, org.eclipse.core.runtime.SubMonitor)}
+ * and {@link CloudServerRequest#getPollingInterval(Throwable, org.eclipse.core.runtime.IProgressMonitor)}
+ * ).
+ * <ul>
+ * <li>How long to actually wait. The interval doubles with each attempt, up
+ * to a maximum, and is randomised so that concurrent requests do not retry at
+ * the same time.</li>
+ * <li>Whether there is budget left for another attempt. All requests to a
+ * server share a budget of retries that is replenished over time, so that
+ * many failing requests do not add up to a retry storm.</li>
+ * <li>Whether a request should be attempted at all. After a number of
+ * consecutive server errors (5xx), requests fail immediately for a while,
+ * after which one request is let through to probe the server.</li>
+ * </ul>
+ * A policy is shared by all requests to a server, and is thread safe.
+ * Subclasses may override the protected methods to change the policy.
+ *
+ */
+public class RetryPolicy {
+
+	/**
+	 * Maximum interval in milliseconds between attempts, unless the request
+	 * asks for a longer base interval.
+	 */
+	public static final long DEFAULT_MAX_INTERVAL = 8000;
+
+	/**
+	 * Maximum number of retries that can be made in a burst
+	 */
+	public static final int DEFAULT_RETRY_BUDGET = 20;
+
+	/**
+	 * Number of retries added to the budget per second
+	 */
+	public static final double DEFAULT_BUDGET_REFILL_RATE = 1.0;
+
+	/**
+	 * Number of consecutive server errors after which requests fail fast
+	 */
+	public static final int DEFAULT_BREAKER_THRESHOLD = 5;
+
+	/**
+	 * Time in milliseconds that requests fail fast once the breaker trips
+	 */
+	public static final long DEFAULT_BREAKER_OPEN_TIME = 10 * 1000;
+
+	private static final RetryPolicy DEFAULT = new RetryPolicy();
+
+	private final Random random = new Random();
+
+	private final long maxInterval;
+
+	private final int retryBudget;
+
+	private final double budgetRefillRate;
+
+	private final int breakerThreshold;
+
+	private final long breakerOpenTime;
+
+	private double availableRetries;
+
+	private long lastRefill;
+
+	private int consecutiveServerErrors;
+
+	/**
+	 * Time until which requests fail fast, or 0 if the breaker is closed
+	 */
+	private long breakerOpenUntil;
+
+	private boolean probing;
+
+	private long retryCount;
+
+	private long budgetExhaustedCount;
+
+	private long breakerTrippedCount;
+
+	private long rejectedCount;
+
+	public RetryPolicy() {
+		this(DEFAULT_MAX_INTERVAL, DEFAULT_RETRY_BUDGET, DEFAULT_BUDGET_REFILL_RATE, DEFAULT_BREAKER_THRESHOLD,
+				DEFAULT_BREAKER_OPEN_TIME);
+	}
+
+	public RetryPolicy(long maxInterval, int retryBudget, double budgetRefillRate, int breakerThreshold,
+			long breakerOpenTime) {
+		this.maxInterval = maxInterval;
+		this.retryBudget = retryBudget;
+		this.budgetRefillRate = budgetRefillRate;
+		this.breakerThreshold = breakerThreshold;
+		this.breakerOpenTime = breakerOpenTime;
+		this.availableRetries = retryBudget;
+		this.lastRefill = currentTimeMillis();
+	}
+
+	/**
+	 *
+	 * @return policy used by requests that are not sent to a particular
+	 * server
+	 */
+	public static RetryPolicy getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Called before each attempt of a request.
+	 * @param requestLabel
+	 * @throws CoreException if the request must fail without being attempted,
+	 * because the server has been returning errors
+	 */
+	public synchronized void beforeAttempt(String requestLabel) throws CoreException {
+		if (breakerOpenUntil == 0) {
+			return;
+		}
+		if (currentTimeMillis() >= breakerOpenUntil && !probing) {
+			// Let one request through to see if the server recovered
+			probing = true;
+			return;
+		}
+		rejectedCount++;
+		throw CloudErrorUtil.toCoreException(NLS.bind(Messages.RetryPolicy_SERVER_UNAVAILABLE, requestLabel));
+	}
+
+	/**
+	 * Called when an attempt succeeded.
+	 */
+	public synchronized void succeeded() {
+		consecutiveServerErrors = 0;
+		breakerOpenUntil = 0;
+		probing = false;
+	}
+
+	/**
+	 * Called when an attempt failed.
+	 * @param error
+	 */
+	public synchronized void failed(Throwable error) {
+		if (!isServerError(error)) {
+			// The server responded normally. Only server errors count
+			// towards tripping the breaker
+			responded();
+			return;
+		}
+		consecutiveServerErrors++;
+		if (probing || (breakerOpenUntil == 0 && consecutiveServerErrors >= breakerThreshold)) {
+			probing = false;
+			breakerOpenUntil = currentTimeMillis() + breakerOpenTime;
+			breakerTrippedCount++;
+		}
+	}
+
+	/**
+	 * Called when an attempt failed with an error the request polls on, for
+	 * example because an application is still staging. The error is an
+	 * expected response, so it does not count towards tripping the breaker.
+	 */
+	public synchronized void polled() {
+		responded();
+	}
+
+	private void responded() {
+		consecutiveServerErrors = 0;
+		if (probing) {
+			succeeded();
+		}
+	}
+
+	/**
+	 *
+	 * @param attempt number of failed attempts made so far, starting at 1
+	 * @param baseInterval interval requested by the request for the first
+	 * retry. Must be positive.
+	 * @return time to wait in milliseconds before the next attempt, or -1 if
+	 * no further attempt should be made
+	 */
+	public synchronized long getRetryDelay(int attempt, long baseInterval) {
+		if (baseInterval <= 0 || breakerOpenUntil != 0) {
+			return -1;
+		}
+		if (!acquireRetry()) {
+			budgetExhaustedCount++;
+			return -1;
+		}
+		retryCount++;
+		return getBackoff(attempt, baseInterval);
+	}
+
+	/**
+	 *
+	 * @return exponential backoff with jitter, between half and the full
+	 * backoff interval
+	 */
+	protected long getBackoff(int attempt, long baseInterval) {
+		long interval = baseInterval;
+		long max = Math.max(maxInterval, baseInterval);
+		for (int i = 1; i < attempt && interval < max; i++) {
+			interval *= 2;
+		}
+		interval = Math.min(interval, max);
+		return interval / 2 + (long) (random.nextDouble() * (interval / 2 + 1));
+	}
+
+	private boolean acquireRetry() {
+		long now = currentTimeMillis();
+		availableRetries = Math.min(retryBudget, availableRetries + (now - lastRefill) * budgetRefillRate / 1000);
+		lastRefill = now;
+		if (availableRetries < 1) {
+			return false;
+		}
+		availableRetries--;
+		return true;
+	}
+
+	protected boolean isServerError(Throwable error) {
+		return CloudErrorUtil.isServerError(error);
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 *
+	 * @return true if requests currently fail without being attempted
+	 */
+	public synchronized boolean isBreakerOpen() {
+		return breakerOpenUntil != 0;
+	}
+
+	/**
+	 *
+	 * @return number of retries allowed by the policy
+	 */
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 *
+	 * @return number of retries denied because the retry budget was used up
+	 */
+	public synchronized long getBudgetExhaustedCount() {
+		return budgetExhaustedCount;
+	}
+
+	/**
+	 *
+	 * @return number of times the breaker tripped
+	 */
+	public synchronized long getBreakerTrippedCount() {
+		return breakerTrippedCount;
+	}
+
+	/**
+	 *
+	 * @return number of requests that failed fast while the breaker was open
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+}
@@ -55,7 +55,8 @@ abstract public class StagingAwareRequest<T> extends BehaviourRequest<T> {
 		super(label, behaviour);
 	}
 
-	protected long waitOnErrorInterval(Throwable exception, SubMonitor monitor) throws CoreException {
+	@Override
+	protected long getPollingInterval(Throwable exception, SubMonitor monitor) throws CoreException {
 
 		if (exception instanceof CoreException) {
 			exception = ((CoreException) exception).getCause();
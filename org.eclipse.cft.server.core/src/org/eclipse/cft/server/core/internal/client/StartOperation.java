@@ -36,6 +36,7 @@ import org.eclipse.cft.server.core.internal.CloudErrorUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.application.AbstractModuleResourceArchive;
 import org.eclipse.cft.server.core.internal.application.ApplicationUtil;
 import org.eclipse.cft.server.core.internal.application.CachingApplicationArchive;
 import org.eclipse.core.runtime.CoreException;
@@ -129,6 +130,8 @@ public class StartOperation extends RestartOperation {
 		// created in the
 		// CF server.
 
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
+
 		IModule actualModule = getModules() != null && getModules().length > 0 ? getModules()[0] : null;
 		if (actualModule != null && !actualModule.isExternal()) {
 
@@ -136,8 +139,6 @@ public class StartOperation extends RestartOperation {
 					appModule.getDeployedApplicationName());
 			getBehaviour().printlnToConsole(appModule, generatingArchiveLabel);
 
-			SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
-
 			subMonitor.subTask(generatingArchiveLabel);
 			CFApplicationArchive applicationArchive = getBehaviour().generateApplicationArchiveFile(
 					appModule.getDeploymentInfo(), appModule, getModules(), server, incrementalPublish,
@@ -199,13 +200,15 @@ public class StartOperation extends RestartOperation {
 					return null;
 				}
 
-			}.run(subMonitor.newChild(70));
+			}.run(subMonitor.newChild(50));
 
 			getBehaviour().printlnToConsole(appModule, Messages.CONSOLE_APP_PUSHED_MESSAGE);
 
 		}
 
-		super.performDeployment(appModule, monitor);
+		// The monitor was converted above, so the rest of the deployment
+		// reports to a child rather than beginning the monitor again
+		super.performDeployment(appModule, subMonitor.newChild(20));
 	}
 
 	/**
@@ -235,12 +238,13 @@ public class StartOperation extends RestartOperation {
 	protected void pushArchive(CloudFoundryOperations client, final CloudFoundryApplicationModule appModule,
 			CFApplicationArchive applicationArchive, final IProgressMonitor monitor) throws CoreException {
 		String appName = appModule.getDeploymentInfo().getDeploymentName();
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
 
 		// [95636410] - verify that the application actually exists.
 		// Otherwise a cryptic error may be thrown and the user may not
 		// know that the upload failed because the application no longer exists
 		try {
-			getBehaviour().getCloudApplication(appName, monitor);
+			getBehaviour().getCloudApplication(appName, subMonitor.newChild(10));
 		}
 		catch (CoreException e) {
 			if (CloudErrorUtil.isNotFoundException(e)) {
@@ -262,6 +266,13 @@ public class StartOperation extends RestartOperation {
 				// AFTER
 				// the server determines the list of missing file names.
 				try {
+					// Compute sha1 digests of all resources in parallel before
+					// the client requests them one at a time for resource
+					// matching
+					if (applicationArchive instanceof AbstractModuleResourceArchive) {
+						((AbstractModuleResourceArchive) applicationArchive).computeDigests(subMonitor.newChild(40));
+					}
+
 					if (applicationArchive instanceof CachingApplicationArchive) {
 						final CachingApplicationArchive cachingArchive = (CachingApplicationArchive) applicationArchive;
 						ApplicationArchive v1ArchiveWrapper = ApplicationUtil.asV1ApplicationArchive(cachingArchive);
@@ -272,15 +283,17 @@ public class StartOperation extends RestartOperation {
 							}
 
 							public void onMatchedFileNames(Set<String> matchedFileNames) {
+								checkUploadCanceled(subMonitor);
 								cachingArchive.generatePartialWarFile(matchedFileNames);
 							}
 
 							public void onCheckResources() {
-
+								checkUploadCanceled(subMonitor);
 							}
 
 							public boolean onProgress(String status) {
-								return false;
+								// Stops waiting for the upload to be processed
+								return subMonitor.isCanceled();
 							}
 						});
 
@@ -300,20 +313,21 @@ public class StartOperation extends RestartOperation {
 							}
 
 							public void onMatchedFileNames(Set<String> matchedFileNames) {
-
+								checkUploadCanceled(subMonitor);
 							}
 
 							public void onCheckResources() {
-
+								checkUploadCanceled(subMonitor);
 							}
 
 							public boolean onProgress(String status) {
-								return false;
+								// Stops waiting for the upload to be processed
+								return subMonitor.isCanceled();
 							}
 						});
 					}
 					// Check for cancel
-					if (monitor.isCanceled()) {
+					if (subMonitor.isCanceled()) {
 						throw new OperationCanceledException(
 								Messages.bind(Messages.OPERATION_CANCELED, getOperationName()));
 					}
@@ -343,6 +357,18 @@ public class StartOperation extends RestartOperation {
 		}
 	}
 	
+	/**
+	 * Aborts the upload of the application archive if the monitor is
+	 * canceled. Called by the client between the steps of the upload.
+	 * @param monitor
+	 * @throws OperationCanceledException if canceled
+	 */
+	private void checkUploadCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException(Messages.bind(Messages.OPERATION_CANCELED, getOperationName()));
+		}
+	}
+
 	protected void updateIfManifestChanged(CloudFoundryOperations client, CloudFoundryApplicationModule appModule,
 			IProgressMonitor monitor)  {
 		// See if the information in the existing Cloud app has changed compared to the info in the appModule
@@ -20,29 +20,58 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal.client;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.cloudfoundry.client.lib.domain.ApplicationStats;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+import org.cloudfoundry.client.lib.domain.InstanceState;
+import org.cloudfoundry.client.lib.domain.InstanceStats;
 import org.eclipse.cft.server.core.CFServiceInstance;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.cft.server.core.internal.ServerEventHandler;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IServer;
 
 /**
  * Updates all modules and services in the server
+ * <p/>
+ * If incremental refresh is enabled (see
+ * {@link CloudFoundryPlugin#getIncrementalRefresh()}), complete application
+ * information and stats are only fetched for applications whose GUID or last
+ * update time in the basic list of applications changed since their last
+ * complete update, and for applications that are starting, stopping, or not
+ * running all their instances. All applications are completely updated every
+ * {@link #FULL_REFRESH_INTERVAL} refreshes, to pick up changes in stats that
+ * do not change the application itself.
  *
  */
 public class UpdateAllOperation extends CFOperation {
 
+	/**
+	 * Number of refreshes after which all applications are completely updated
+	 * in incremental refresh.
+	 */
+	public static final int FULL_REFRESH_INTERVAL = 10;
+
 	public UpdateAllOperation(CloudFoundryServerBehaviour behaviour) {
 		super(behaviour);
 	}
@@ -84,7 +113,7 @@ public class UpdateAllOperation extends CFOperation {
 		ServerEventHandler.getDefault().fireModulesUpdated(cloudServer, cloudServer.getServer().getModules());
 
 		// 2. Slower update of apps with stats, service bindings, etc..
-		updateCompleteApps(applications, cloudServer, subMonitor.newChild(70));
+		updateCompleteApps(getAppsToUpdate(applications, cloudServer), cloudServer, subMonitor.newChild(70));
 
 		subMonitor.worked(20);
 	}
@@ -117,31 +146,195 @@ public class UpdateAllOperation extends CFOperation {
 		return applications;
 	}
 
+	/**
+	 * 
+	 * @param applications basic list of all applications
+	 * @param cloudServer
+	 * @return applications that need a complete update. All applications if
+	 * incremental refresh is disabled.
+	 */
+	protected List<CloudApplication> getAppsToUpdate(List<CloudApplication> applications,
+			CloudFoundryServer cloudServer) {
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(cloudServer.getServerOriginal());
+		if (applications == null || data == null) {
+			return applications;
+		}
+
+		List<String> appNames = new ArrayList<String>(applications.size());
+		for (CloudApplication application : applications) {
+			appNames.add(application.getName());
+		}
+		data.retainApplicationFingerprints(appNames);
+
+		if (!CloudFoundryPlugin.getDefault().getIncrementalRefresh()
+				|| data.incrementRefreshCount() % FULL_REFRESH_INTERVAL == 0) {
+			return applications;
+		}
+
+		Map<String, CloudFoundryApplicationModule> modulesByName = new HashMap<String, CloudFoundryApplicationModule>();
+		for (CloudFoundryApplicationModule appModule : cloudServer.getExistingCloudModules()) {
+			modulesByName.put(appModule.getDeployedApplicationName(), appModule);
+		}
+
+		List<CloudApplication> toUpdate = new ArrayList<CloudApplication>();
+		for (CloudApplication application : applications) {
+			String fingerprint = getFingerprint(application);
+			if (fingerprint == null || !fingerprint.equals(data.getApplicationFingerprint(application.getName()))
+					|| isTransitional(application, modulesByName.get(application.getName()))) {
+				toUpdate.add(application);
+			}
+		}
+		CloudFoundryPlugin.trace("Incremental refresh of " + cloudServer.getServer().getId() + ": updating " //$NON-NLS-1$ //$NON-NLS-2$
+				+ toUpdate.size() + " of " + applications.size() + " applications"); //$NON-NLS-1$ //$NON-NLS-2$
+		return toUpdate;
+	}
+
+	/**
+	 * 
+	 * @param application
+	 * @return fingerprint of the application in the basic list of
+	 * applications, which changes when the application changes in the Cloud
+	 * Controller, or null if the application has no metadata to compute one
+	 */
+	protected String getFingerprint(CloudApplication application) {
+		Meta meta = application.getMeta();
+		if (meta == null || meta.getGuid() == null) {
+			return null;
+		}
+		StringBuilder fingerprint = new StringBuilder(meta.getGuid().toString());
+		fingerprint.append(':');
+		fingerprint.append(meta.getUpdated() != null ? meta.getUpdated().getTime()
+				: meta.getCreated() != null ? meta.getCreated().getTime() : 0);
+		return fingerprint.toString();
+	}
+
+	/**
+	 * 
+	 * @param application application in the basic list of applications
+	 * @param appModule existing module for the application. May be null
+	 * @return true if the application may be changing without its last update
+	 * time changing, for example while it is starting, or if it was never
+	 * completely updated.
+	 */
+	protected boolean isTransitional(CloudApplication application, CloudFoundryApplicationModule appModule) {
+		if (appModule == null || appModule.getApplication() == null || appModule.getApplicationStats() == null) {
+			return true;
+		}
+		if (appModule.getLocalModule() != null) {
+			int stateInServer = appModule.getStateInServer();
+			if (stateInServer == IServer.STATE_STARTING || stateInServer == IServer.STATE_STOPPING) {
+				return true;
+			}
+		}
+		if (application.getState() == AppState.STARTED) {
+			// Instances may still be starting, or may have crashed
+			return getRunningInstances(appModule.getApplicationStats()) < application.getInstances();
+		}
+		return false;
+	}
+
+	private int getRunningInstances(ApplicationStats stats) {
+		int running = 0;
+		if (stats.getRecords() != null) {
+			for (InstanceStats instanceStats : stats.getRecords()) {
+				if (instanceStats != null && instanceStats.getState() == InstanceState.RUNNING) {
+					running++;
+				}
+			}
+		}
+		return running;
+	}
+
 	protected void updateCompleteApps(List<CloudApplication> applications, CloudFoundryServer cloudServer,
 			SubMonitor subMonitor) throws CoreException {
 		if (applications == null) {
 			return;
 		}
-		applications.parallelStream().forEach((cloudApp) -> {
-			if (isCanceled(subMonitor)) {
-				return;
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(cloudServer.getServerOriginal());
+		subMonitor.setWorkRemaining(applications.size());
+
+		// Workers only check for cancellation. Progress is reported on this
+		// thread, as monitors are not thread safe
+		IProgressMonitor workerMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return UpdateAllOperation.this.isCanceled(subMonitor);
 			}
-			try {
-				CFV1Application updatedApplication = getBehaviour().getCompleteApplication(cloudApp, subMonitor);
-				if (updatedApplication != null && updatedApplication.getStats() != null) {
-					CloudFoundryApplicationModule appModule = cloudServer.updateModule(
-							updatedApplication.getApplication(), updatedApplication.getApplication().getName(),
-							updatedApplication.getStats(), subMonitor);
+		};
+
+		CompletionService<CloudFoundryApplicationModule> completionService = new ExecutorCompletionService<CloudFoundryApplicationModule>(
+				data != null ? data.getRefreshExecutor() : Runnable::run);
+		List<Future<CloudFoundryApplicationModule>> futures = new ArrayList<Future<CloudFoundryApplicationModule>>();
+		for (CloudApplication cloudApp : applications) {
+			futures.add(completionService
+					.submit(() -> updateCompleteApp(cloudApp, cloudServer, data, workerMonitor)));
+		}
+
+		// Notify listeners as soon as each app is updated
+		int remaining = futures.size();
+		try {
+			while (remaining > 0) {
+				if (isCanceled(subMonitor)) {
+					for (Future<CloudFoundryApplicationModule> future : futures) {
+						future.cancel(false);
+					}
+					return;
+				}
+				Future<CloudFoundryApplicationModule> completed = completionService.poll(100, TimeUnit.MILLISECONDS);
+				if (completed == null) {
+					continue;
+				}
+				remaining--;
+				try {
+					CloudFoundryApplicationModule appModule = completed.get();
 					if (appModule != null) {
-						appModule.validateAndUpdateStatus();
 						ServerEventHandler.getDefault().fireModuleUpdated(cloudServer, appModule.getLocalModule());
 					}
 				}
+				catch (ExecutionException e) {
+					CloudFoundryPlugin.logError(e.getCause());
+				}
+				subMonitor.worked(1);
 			}
-			catch (CoreException e) {
-				CloudFoundryPlugin.logError(e);
+		}
+		catch (InterruptedException e) {
+			for (Future<CloudFoundryApplicationModule> future : futures) {
+				future.cancel(false);
 			}
-			subMonitor.worked(1);
-		});
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Fetches complete information for the given app and updates its module.
+	 * Runs on the refresh executor of the server.
+	 * @return updated module, or null if the app was not updated
+	 */
+	protected CloudFoundryApplicationModule updateCompleteApp(CloudApplication cloudApp,
+			CloudFoundryServer cloudServer, ServerData data, IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return null;
+		}
+		try {
+			CFV1Application updatedApplication = getBehaviour().getCompleteApplication(cloudApp, monitor);
+			if (updatedApplication != null && updatedApplication.getStats() != null) {
+				CloudFoundryApplicationModule appModule = cloudServer.updateModule(
+						updatedApplication.getApplication(), updatedApplication.getApplication().getName(),
+						updatedApplication.getStats(), monitor);
+				if (appModule != null) {
+					if (data != null) {
+						// Only skip the app in the next refresh once it
+						// was updated successfully
+						data.setApplicationFingerprint(cloudApp.getName(), getFingerprint(cloudApp));
+					}
+					appModule.validateAndUpdateStatus();
+					return appModule;
+				}
+			}
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.logError(e);
+		}
+		return null;
 	}
 }
@@ -40,7 +40,9 @@ import org.eclipse.cft.server.core.internal.client.CFInfo;
 import org.eclipse.cft.server.core.internal.client.ClientRequestFactory;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
+import org.eclipse.cft.server.core.internal.client.CountingOutputStream;
 import org.eclipse.cft.server.core.internal.client.FileSshSessionConnPool;
+import org.eclipse.cft.server.core.internal.client.RemoteFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
@@ -167,6 +169,49 @@ public class DiegoRequestFactory extends ClientRequestFactory {
 		};
 	}
 
+	@Override
+	public BaseClientRequest<List<RemoteFile>> listFiles(final CloudApplication app, final int instanceIndex,
+			final String path, final int depth) throws CoreException {
+
+		// If ssh is not supported, list each directory with the legacy file API
+		if (!supportsSsh()) {
+			return super.listFiles(app, instanceIndex, path, depth);
+		}
+
+		String label = NLS.bind(Messages.CloudFoundryServerBehaviour_FETCHING_FILE, path, app.getName());
+		return new BehaviourRequest<List<RemoteFile>>(label, behaviour) {
+			@Override
+			protected List<RemoteFile> doRun(CloudFoundryOperations client, SubMonitor progress)
+					throws CoreException {
+				// All directories down to the given depth are listed with a
+				// single command
+				return fileSshConnectionPool.listFiles(app, instanceIndex, path, depth, progress);
+			}
+		};
+	}
+
+	@Override
+	public BaseClientRequest<Long> getFile(final CloudApplication app, final int instanceIndex, final String path,
+			final OutputStream out, final long offset) throws CoreException {
+
+		// If ssh is not supported, try the default legacy file fetching
+		if (!supportsSsh()) {
+			return super.getFile(app, instanceIndex, path, out, offset);
+		}
+
+		String label = NLS.bind(Messages.CloudFoundryServerBehaviour_FETCHING_FILE, path, app.getName());
+		final CountingOutputStream counting = new CountingOutputStream(out);
+		return new BehaviourRequest<Long>(label, behaviour) {
+			@Override
+			protected Long doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+				// Resume after the bytes written by a previous attempt
+				fileSshConnectionPool.downloadFile(app, instanceIndex, path, counting, offset + counting.getCount(),
+						progress);
+				return counting.getCount();
+			}
+		};
+	}
+
 	@Override
 	public CFInfo getCloudInfo() throws CoreException {
 		if (cachedInfo == null) {
@@ -191,6 +236,11 @@ public class DiegoRequestFactory extends ClientRequestFactory {
 
 	}
 
+	@Override
+	public void dispose() {
+		fileSshConnectionPool.dispose();
+	}
+
 	protected String getContent(Channel channel) throws CoreException {
 		InputStream in = null;
 		OutputStream outStream = null;
@@ -15,6 +15,13 @@ package org.eclipse.cft.server.core.internal.ssh;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
@@ -26,13 +33,16 @@ import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.ISshClientSupport;
 import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.CloudServerUtil;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
 import org.eclipse.cft.server.core.internal.client.CFClientV1Support;
 import org.eclipse.cft.server.core.internal.client.CFInfo;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IServer;
 import org.springframework.http.HttpStatus;
@@ -48,6 +58,12 @@ import com.jcraft.jsch.UserInfo;
  */
 public class SshClientSupport extends CFClientV1Support implements ISshClientSupport {
 
+	/**
+	 * Interval in milliseconds in which a caller waiting for a one-time code
+	 * checks its monitor
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+
 	private String sshClientId;
 
 	public SshClientSupport(CloudFoundryOperations cfClient, CFInfo cloudInfo,
@@ -108,22 +124,37 @@ public class SshClientSupport extends CFClientV1Support implements ISshClientSup
 			throws CoreException {
 
 		CloudFoundryServer cloudServer = CloudServerUtil.getCloudServer(server);
-		CloudApplication app = cloudServer.getBehaviour().getCloudApplication(appName, monitor);
+		ServerData data = CloudFoundryPlugin.getModuleCache().getData(cloudServer.getServerOriginal());
+		// Null if the server was removed, in which case nothing is cached
+		SshConnectionCache cache = data != null ? data.getSshConnectionCache(cloudServer) : null;
 
-		if (app == null) {
-			throw CloudErrorUtil.toCoreException(NLS.bind(Messages.SshClientSupport_NO_CLOUD_APP, appName));
+		CompletableFuture<String> code = null;
+		UUID appGuid;
+		if (cache != null) {
+			// The one-time code is requested while the application GUID is
+			// looked up and the session is set up
+			code = cache.takeSshCode(new Supplier<String>() {
+
+				public String get() {
+					return getSshCode();
+				}
+			});
+			appGuid = cache.getAppGuid(appName, monitor);
+		}
+		else {
+			appGuid = getAppGuid(cloudServer, appName, monitor);
 		}
 
 		JSch jsch = new JSch();
 
 		String user = "cf:" //$NON-NLS-1$
-				+ app.getMeta().getGuid().toString() + "/" + appInstance; //$NON-NLS-1$
+				+ appGuid.toString() + "/" + appInstance; //$NON-NLS-1$
 
 		String oneTimeCode = null;
 		try {
 			Session session = jsch.getSession(user, getSshHost().getHost(), getSshHost().getPort());
 
-			oneTimeCode = getSshCode();
+			oneTimeCode = code != null ? waitForCode(code, monitor) : getSshCode();
 
 			session.setPassword(oneTimeCode);
 			session.setUserInfo(getUserInfo(oneTimeCode));
@@ -134,11 +165,61 @@ public class SshClientSupport extends CFClientV1Support implements ISshClientSup
 
 		}
 		catch (JSchException e) {
+			// The cached GUID may be out of date, e.g. if the application was
+			// deleted and deployed again
+			if (cache != null) {
+				cache.invalidateAppGuid(appName);
+			}
 			throw CloudErrorUtil.asCoreException("SSH connection error " + e.getMessage() //$NON-NLS-1$
 					, e, false);
 		}
 	}
 
+	/**
+	 * Looks up the GUID of the given application without caching it.
+	 */
+	private static UUID getAppGuid(CloudFoundryServer cloudServer, String appName, IProgressMonitor monitor)
+			throws CoreException {
+		CloudApplication app = cloudServer.getBehaviour().getCloudApplication(appName, monitor);
+		if (app == null || app.getMeta() == null || app.getMeta().getGuid() == null) {
+			throw CloudErrorUtil.toCoreException(NLS.bind(Messages.SshClientSupport_NO_CLOUD_APP, appName));
+		}
+		return app.getMeta().getGuid();
+	}
+
+	/**
+	 * Waits for the one-time code requested for a session, or until the
+	 * monitor is canceled.
+	 */
+	private static String waitForCode(CompletableFuture<String> code, IProgressMonitor monitor) {
+		try {
+			while (true) {
+				if (monitor != null && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				try {
+					return code.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					// Check the monitor again
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		catch (CancellationException e) {
+			throw new OperationCanceledException();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new CloudOperationException(cause);
+		}
+	}
+
 	protected UserInfo getUserInfo(final String accessToken) {
 		return new UserInfo() {
 
@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.ssh;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.CloudServerEvent;
+import org.eclipse.cft.server.core.internal.CloudServerListener;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ServerEventHandler;
+import org.eclipse.cft.server.core.internal.application.ModuleChangeEvent;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Keeps what is needed to open SSH sessions to the applications of a server,
+ * so that opening a session does not wait for requests that were already made
+ * for a previous session:
+ * <ul>
+ * <li>The GUIDs of applications, keyed by application name. They are filled
+ * from the applications read by refreshes of the server, and invalidated when
+ * an application is updated or deleted, or the server is disconnected.</li>
+ * <li>One-time SSH codes. Each session needs a new code, which is requested
+ * in the background while the rest of the session is being set up. When
+ * several sessions are opened in a row, the code of the next session is
+ * requested ahead of time. Prefetched codes that are not used within
+ * {@link #CODE_MAX_AGE} ms are discarded, as codes expire.</li>
+ * </ul>
+ * One cache is shared by all SSH sessions to a server (see
+ * {@link org.eclipse.cft.server.core.internal.ModuleCache.ServerData#getSshConnectionCache(CloudFoundryServer)}
+ * ), and is thread safe.
+ *
+ */
+public class SshConnectionCache implements CloudServerListener {
+
+	/**
+	 * Time in milliseconds after which a prefetched SSH code is not used
+	 */
+	public static final long CODE_MAX_AGE = 30 * 1000;
+
+	/**
+	 * Time in milliseconds since the previous SSH code was used within which
+	 * a code is prefetched for the next session
+	 */
+	public static final long PREFETCH_WINDOW = 5 * 1000;
+
+	/**
+	 * Maximum number of SSH codes requested ahead of time
+	 */
+	public static final int MAX_PREFETCHED_CODES = 2;
+
+	/**
+	 * Maximum number of SSH codes requested at the same time
+	 */
+	private static final int MAX_CODE_THREADS = 2;
+
+	/**
+	 * Idle time in seconds after which threads exit
+	 */
+	private static final long KEEP_ALIVE = 60;
+
+	private final CloudFoundryServer cloudServer;
+
+	private final Map<String, UUID> appGuids = new HashMap<String, UUID>();
+
+	/**
+	 * Incremented each time GUIDs are invalidated, so that GUIDs fetched
+	 * before are not added to the cache.
+	 */
+	private long guidGeneration;
+
+	private final LinkedList<PrefetchedCode> prefetchedCodes = new LinkedList<PrefetchedCode>();
+
+	private long lastCodeTime;
+
+	private final ThreadPoolExecutor codeExecutor;
+
+	private volatile boolean disposed;
+
+	private final AtomicLong guidHitCount = new AtomicLong();
+
+	private final AtomicLong guidMissCount = new AtomicLong();
+
+	private final AtomicLong prefetchedCodeCount = new AtomicLong();
+
+	private final AtomicLong discardedCodeCount = new AtomicLong();
+
+	public SshConnectionCache(CloudFoundryServer cloudServer) {
+		this.cloudServer = cloudServer;
+		final String name = cloudServer.getServer().getId();
+		this.codeExecutor = new ThreadPoolExecutor(MAX_CODE_THREADS, MAX_CODE_THREADS, KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								SshConnectionCache.class.getName() + " - " + name + " - " + count.incrementAndGet()); //$NON-NLS-1$ //$NON-NLS-2$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.codeExecutor.allowCoreThreadTimeOut(true);
+		ServerEventHandler.getDefault().addServerListener(this);
+	}
+
+	/**
+	 * 
+	 * @param appName deployed name of the application
+	 * @param monitor
+	 * @return GUID of the application, from the cache if possible
+	 * @throws CoreException if the application does not exist or could not be
+	 * fetched
+	 */
+	public UUID getAppGuid(String appName, IProgressMonitor monitor) throws CoreException {
+		long generation;
+		synchronized (appGuids) {
+			UUID guid = appGuids.get(appName);
+			if (guid != null) {
+				guidHitCount.incrementAndGet();
+				return guid;
+			}
+			generation = guidGeneration;
+		}
+		guidMissCount.incrementAndGet();
+
+		CloudApplication app = cloudServer.getBehaviour().getCloudApplication(appName, monitor);
+		UUID guid = getGuid(app);
+		if (guid == null) {
+			throw CloudErrorUtil.toCoreException(NLS.bind(Messages.SshClientSupport_NO_CLOUD_APP, appName));
+		}
+		synchronized (appGuids) {
+			if (generation == guidGeneration && !disposed) {
+				appGuids.put(appName, guid);
+			}
+		}
+		return guid;
+	}
+
+	/**
+	 * Removes the GUID of the given application from the cache, for example
+	 * because connecting with it failed.
+	 * @param appName deployed name of the application
+	 */
+	public void invalidateAppGuid(String appName) {
+		synchronized (appGuids) {
+			appGuids.remove(appName);
+			guidGeneration++;
+		}
+	}
+
+	/**
+	 * Removes the GUIDs of all applications from the cache.
+	 */
+	public void invalidateAppGuids() {
+		synchronized (appGuids) {
+			appGuids.clear();
+			guidGeneration++;
+		}
+	}
+
+	/**
+	 * Takes a one-time SSH code for a new session. The code is either one that
+	 * was prefetched, or one that is requested in the background, so that the
+	 * caller can set up the session while waiting for it.
+	 * @param codeRequest requests a new code from the server. Called in a
+	 * background thread, and may throw runtime exceptions.
+	 * @return future code, that completes exceptionally if the code could not
+	 * be obtained. Never null.
+	 */
+	public CompletableFuture<String> takeSshCode(Supplier<String> codeRequest) {
+		CompletableFuture<String> code = null;
+		int toPrefetch = 0;
+		synchronized (prefetchedCodes) {
+			long now = System.currentTimeMillis();
+			discardStaleCodes(now);
+			PrefetchedCode prefetched = prefetchedCodes.poll();
+			if (prefetched != null) {
+				prefetchedCodeCount.incrementAndGet();
+				code = prefetched.code;
+			}
+			// Sessions opened in a row, e.g. for several application
+			// instances, are likely to be followed by more
+			if (now - lastCodeTime <= PREFETCH_WINDOW) {
+				toPrefetch = MAX_PREFETCHED_CODES - prefetchedCodes.size();
+			}
+			lastCodeTime = now;
+		}
+
+		if (code == null) {
+			code = requestCode(codeRequest);
+		}
+		for (int i = 0; i < toPrefetch && !disposed; i++) {
+			CompletableFuture<String> prefetch = requestCode(codeRequest);
+			synchronized (prefetchedCodes) {
+				prefetchedCodes.add(new PrefetchedCode(prefetch, System.currentTimeMillis()));
+			}
+		}
+		return code;
+	}
+
+	private CompletableFuture<String> requestCode(Supplier<String> codeRequest) {
+		if (disposed) {
+			CompletableFuture<String> code = new CompletableFuture<String>();
+			code.cancel(false);
+			return code;
+		}
+		return CompletableFuture.supplyAsync(codeRequest, codeExecutor);
+	}
+
+	/**
+	 * Must be called with the prefetched codes locked
+	 */
+	private void discardStaleCodes(long now) {
+		for (Iterator<PrefetchedCode> it = prefetchedCodes.iterator(); it.hasNext();) {
+			PrefetchedCode prefetched = it.next();
+			if (now - prefetched.requestTime > CODE_MAX_AGE || prefetched.code.isCompletedExceptionally()) {
+				it.remove();
+				discardedCodeCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Discards prefetched SSH codes, for example because the credentials
+	 * they were requested with are no longer valid.
+	 */
+	public void discardSshCodes() {
+		synchronized (prefetchedCodes) {
+			discardedCodeCount.addAndGet(prefetchedCodes.size());
+			prefetchedCodes.clear();
+			lastCodeTime = 0;
+		}
+	}
+
+	@Override
+	public void serverChanged(CloudServerEvent event) {
+		if (disposed || event.getServer() == null
+				|| !cloudServer.getServer().getId().equals(event.getServer().getServer().getId())) {
+			return;
+		}
+		switch (event.getType()) {
+		case CloudServerEvent.EVENT_MODULES_UPDATED:
+			// All applications were refreshed. Fill the cache with their
+			// current GUIDs
+			Map<String, UUID> guids = new HashMap<String, UUID>();
+			for (CloudFoundryApplicationModule appModule : cloudServer.getExistingCloudModules()) {
+				UUID appGuid = getGuid(appModule.getApplication());
+				if (appGuid != null) {
+					guids.put(appModule.getDeployedApplicationName(), appGuid);
+				}
+			}
+			synchronized (appGuids) {
+				appGuids.clear();
+				appGuids.putAll(guids);
+				guidGeneration++;
+			}
+			break;
+		case CloudServerEvent.EVENT_MODULE_UPDATED:
+		case CloudServerEvent.EVENT_APP_DEPLOYMENT_CHANGED:
+		case CloudServerEvent.EVENT_APP_DELETED:
+			CloudFoundryApplicationModule appModule = event instanceof ModuleChangeEvent
+					? cloudServer.getExistingCloudModule(((ModuleChangeEvent) event).getModule()) : null;
+			String appName = appModule != null ? appModule.getDeployedApplicationName() : null;
+			UUID guid = appModule != null && event.getType() == CloudServerEvent.EVENT_MODULE_UPDATED
+					? getGuid(appModule.getApplication()) : null;
+			if (appName == null) {
+				// The module of a deleted application may already be gone,
+				// so its application name is not known
+				invalidateAppGuids();
+			}
+			else if (guid != null) {
+				// The application was just refreshed
+				synchronized (appGuids) {
+					appGuids.put(appName, guid);
+					guidGeneration++;
+				}
+			}
+			else {
+				invalidateAppGuid(appName);
+			}
+			break;
+		case CloudServerEvent.EVENT_SERVER_CONNECTED:
+		case CloudServerEvent.EVENT_SERVER_DISCONNECTED:
+		case CloudServerEvent.EVENT_UPDATE_PASSWORD:
+			invalidateAppGuids();
+			discardSshCodes();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static UUID getGuid(CloudApplication app) {
+		return app != null && app.getMeta() != null ? app.getMeta().getGuid() : null;
+	}
+
+	/**
+	 * Clears the cache and stops listening to server events.
+	 */
+	public void dispose() {
+		disposed = true;
+		ServerEventHandler.getDefault().removeServerListener(this);
+		invalidateAppGuids();
+		discardSshCodes();
+		codeExecutor.shutdown();
+	}
+
+	/**
+	 * 
+	 * @return number of GUIDs that were found in the cache
+	 */
+	public long getGuidHitCount() {
+		return guidHitCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of GUIDs that had to be fetched
+	 */
+	public long getGuidMissCount() {
+		return guidMissCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of sessions that used an SSH code prefetched for them
+	 */
+	public long getPrefetchedCodeCount() {
+		return prefetchedCodeCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of prefetched SSH codes that were never used
+	 */
+	public long getDiscardedCodeCount() {
+		return discardedCodeCount.get();
+	}
+
+	private static class PrefetchedCode {
+
+		final CompletableFuture<String> code;
+
+		final long requestTime;
+
+		PrefetchedCode(CompletableFuture<String> code, long requestTime) {
+			this.code = code;
+			this.requestTime = requestTime;
+		}
+	}
+}
@@ -68,6 +68,8 @@ public class AccountResource extends CloudFoundryHostFile {
 		if (!applications.isEmpty()) {
 			applications.clear();
 		}
+		// Files of the applications are listed again as well
+		RemoteFileTreeCache.refreshTrees(server);
 		try {
 			List<CloudApplication> cloudApps = server.getBehaviour().getApplications(monitor);
 			for (CloudApplication cloudApp : cloudApps) {
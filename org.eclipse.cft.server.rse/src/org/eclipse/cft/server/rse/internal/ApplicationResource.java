@@ -66,7 +66,8 @@ public class ApplicationResource extends CloudFoundryHostFile {
 	}
 
 	/**
-	 * Fetches the list of children for the given path over the network. Do not
+	 * Fetches the list of children for the given path over the network, unless
+	 * they were listed recently (see {@link RemoteFileTreeCache}). Do not
 	 * call this method from a UI thread, call
 	 * {@link #getChildren(String, IProgressMonitor)} instead.
 	 * 
@@ -99,14 +100,29 @@ public class ApplicationResource extends CloudFoundryHostFile {
 	}
 
 	/**
-	 * Returns the cached list of children for the given path.
+	 * Returns the cached list of children for the given path. Never fetches
+	 * them over the network.
 	 * 
 	 * @param path
 	 * @param monitor
-	 * @return
+	 * @return cached children, or null if the children are not known
 	 */
 	public List<FileResource> getChildren(String path, IProgressMonitor monitor) {
-		return fileMap.get(path);
+		List<FileResource> files = fileMap.get(path);
+		if (files == null && RemoteFileTreeCache.getTree(server, app, id).getCachedChildren(path) != null) {
+			// Listed together with its parent directory
+			files = fetchChildren(path, monitor);
+		}
+		return files;
+	}
+
+	/**
+	 * Discards the children known for all paths, so that they are fetched
+	 * over the network the next time they are needed.
+	 */
+	public void refreshChildren() {
+		fileMap.clear();
+		RemoteFileTreeCache.getTree(server, app, id).refresh();
 	}
 
 	@Override
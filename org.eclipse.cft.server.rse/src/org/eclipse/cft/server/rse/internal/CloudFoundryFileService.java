@@ -20,17 +20,14 @@
  ********************************************************************************/
 package org.eclipse.cft.server.rse.internal;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.client.RemoteFile;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.rse.core.model.IHost;
 import org.eclipse.rse.services.clientserver.messages.SystemMessageException;
@@ -95,22 +92,19 @@ public class CloudFoundryFileService extends AbstractFileService implements IClo
 			String appName = app.getCloudApplication().getName();
 			int instance = app.getInstanceId();
 			try {
-				String content = server.getBehaviour().getFile(app.getCloudApplication(), instance, path.concat(remoteFile).substring(1),
-						localFile.isDirectory(),monitor);
-				if (content != null) {
-					if (!localFile.exists()) {
-						localFile.getParentFile().mkdirs();
-					}
-					ByteArrayInputStream inStream = new ByteArrayInputStream(content.getBytes());
-					OutputStream outStream = new BufferedOutputStream(new FileOutputStream(localFile));
-					byte[] buffer = new byte[4096];
-					int bytesRead = -1;
-					while ((bytesRead = inStream.read(buffer)) != -1) {
-						outStream.write(buffer, 0, bytesRead);
-					}
-					outStream.flush();
-					inStream.close();
-					outStream.close();
+				RemoteFile listed = getListedFile(app, path, remoteFile);
+				if (listed != null && isUnchanged(localFile, listed)) {
+					// Downloaded before, and not modified since
+					return;
+				}
+				// Streams the raw bytes to the local file, so binary files are
+				// not corrupted and large files are not held in memory
+				server.getBehaviour().getFile(app.getCloudApplication(), instance,
+						path.concat(remoteFile).substring(1), localFile.toPath(), false, monitor);
+				if (listed != null && listed.getModifiedTime() > 0) {
+					// Allows the next download to be skipped if the file does
+					// not change
+					localFile.setLastModified(listed.getModifiedTime());
 				}
 			}
 			catch (Exception e) {
@@ -121,6 +115,36 @@ public class CloudFoundryFileService extends AbstractFileService implements IClo
 
 	}
 
+	/**
+	 * 
+	 * @return the file as last listed, if its directory was listed recently,
+	 * or null
+	 */
+	private RemoteFile getListedFile(ApplicationResource app, String parentPath, String name) {
+		List<RemoteFile> files = RemoteFileTreeCache
+				.getTree(app.getServer(), app.getCloudApplication(), app.getInstanceId()).getCachedChildren(parentPath);
+		if (files != null) {
+			for (RemoteFile file : files) {
+				if (!file.isDirectory() && name.equals(file.getName())) {
+					return file;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return true if the local file has the size and modification time of
+	 * the remote file
+	 */
+	private static boolean isUnchanged(File localFile, RemoteFile remoteFile) {
+		// Local file systems may only keep modification times in seconds
+		return localFile.isFile() && remoteFile.getSize() >= 0 && remoteFile.getModifiedTime() > 0
+				&& localFile.length() == remoteFile.getSize()
+				&& localFile.lastModified() / 1000 == remoteFile.getModifiedTime() / 1000;
+	}
+
 	@Override
 	public String getDescription() {
 		return Messages.CloudFoundryFileService_DESCRIPTION_FILE_SERVICES;
@@ -299,6 +323,8 @@ public class CloudFoundryFileService extends AbstractFileService implements IClo
 		}
 		ApplicationResource app = parseApp(parentPath);
 		if (app != null) {
+			// Refreshing an application lists its files again
+			app.refreshChildren();
 			List<FileResource> files = app.fetchChildren("/", monitor); //$NON-NLS-1$
 			return files.toArray(new FileResource[files.size()]);
 		}
@@ -69,6 +69,7 @@ public class CloudFoundryRsePlugin extends SystemBasePlugin {
 	 * )
 	 */
 	public void stop(BundleContext context) throws Exception {
+		RemoteFileTreeCache.disposeAll();
 		plugin = null;
 		super.stop(context);
 	}
@@ -43,14 +43,17 @@ public class FileResource extends CloudFoundryHostFile {
 
 	private String path;
 
-	private String size;
+	private long size;
+
+	private int mode = -1;
 
 	public FileResource() {
 		super();
 	}
 
 	public boolean canRead() {
-		return true;
+		// Files are read as the owner of the files of the application
+		return mode < 0 || (mode & 0400) != 0;
 	}
 
 	public boolean canWrite() {
@@ -84,6 +87,14 @@ public class FileResource extends CloudFoundryHostFile {
 		return modifiedDate;
 	}
 
+	/**
+	 * 
+	 * @return permission bits of the file, or -1 if not known
+	 */
+	public int getMode() {
+		return mode;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -93,29 +104,8 @@ public class FileResource extends CloudFoundryHostFile {
 	}
 
 	public long getSize() {
-		// An approximation!!
-		long l = 0;
-		try {
-			String num = "0"; //$NON-NLS-1$
-			if (size.endsWith("B")) { //$NON-NLS-1$
-				num = size.substring(0, size.length() - 1);
-				l = Long.parseLong(num);
-			}
-			else if (size.endsWith("K")) { //$NON-NLS-1$
-				num = size.substring(0, size.length() - 1);
-				float f = Float.parseFloat(num) * 1000;
-				l = ((Float) f).longValue();
-			}
-			else if (size.endsWith("M")) { //$NON-NLS-1$
-				num = size.substring(0, size.length() - 1);
-				float f = Float.parseFloat(num) * 1000 * 1000;
-				l = ((Float) f).longValue();
-			}
-		}
-		catch (Exception e) {
-			// Swallow the exception and return 0;
-		}
-		return l;
+		// Approximate for files listed with the legacy file API
+		return size;
 	}
 
 	public boolean isArchive() {
@@ -159,6 +149,10 @@ public class FileResource extends CloudFoundryHostFile {
 		this.modifiedDate = modifiedDate;
 	}
 
+	public void setMode(int mode) {
+		this.mode = mode;
+	}
+
 	public void setName(String name) {
 		this.name = name;
 	}
@@ -167,7 +161,7 @@ public class FileResource extends CloudFoundryHostFile {
 		this.parent = parent;
 	}
 
-	public void setSize(String size) {
+	public void setSize(long size) {
 		this.size = size;
 	}
 
@@ -27,6 +27,7 @@ import java.util.List;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.client.RemoteFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 
@@ -54,34 +55,34 @@ public class FilesContentProvider {
 			String parent = (String) inputElement;
 			try {
 				if (AppState.STARTED.equals(app.getState())) {
-					String path = parent.substring(1);
-					// assume everything is a directory for now. Files are handled separately via "download"
-					boolean isDir = true;
-					String blob = server.getBehaviour().getFile(app, instance, path, isDir, monitor);
-					if (blob != null) {
-						String[] files = blob.split("\n"); //$NON-NLS-1$
-						long timestamp = Calendar.getInstance().getTimeInMillis();
-						for (int i = 0; i < files.length; i++) {
-							String[] content = files[i].split("\\s+"); //$NON-NLS-1$
-							String name = content[0];
-							if (name.trim().length() > 0) {
-								FileResource resource = new FileResource();
-								if (name.endsWith("/")) { //$NON-NLS-1$
-									resource.setIsDirectory(true);
-									resource.setIsFile(false);
-									name = name.substring(0, name.length() - 1);
-								}
-								resource.setName(name);
-								resource.setModifiedDate(timestamp);
-								String parentPath = ApplicationResource.getAbsolutePath(app, instance + parent);
-								resource.setParentPath(parentPath);
-								resource.setAbsolutePath(parentPath.concat(content[0]));
-								if (content.length > 1) {
-									resource.setSize(content[1]);
-								}
-								list.add(resource);
-							}
+					// Directories are listed together with their
+					// subdirectories, and kept for a while, so expanding a
+					// subdirectory does not list it again
+					List<RemoteFile> files = RemoteFileTreeCache.getTree(server, app, instance).getChildren(parent,
+							monitor);
+					// Only used if the listing has no modification times, as
+					// with the legacy file API
+					long timestamp = Calendar.getInstance().getTimeInMillis();
+					String parentPath = ApplicationResource.getAbsolutePath(app,
+							instance + (parent.endsWith("/") ? parent : parent + "/")); //$NON-NLS-1$ //$NON-NLS-2$
+					for (RemoteFile file : files) {
+						FileResource resource = new FileResource();
+						if (file.isDirectory()) {
+							resource.setIsDirectory(true);
+							resource.setIsFile(false);
 						}
+						resource.setName(file.getName());
+						resource.setModifiedDate(file.getModifiedTime() > 0 ? file.getModifiedTime() : timestamp);
+						resource.setParentPath(parentPath);
+						// Paths of directories end with '/', as in the listings
+						// of the legacy file API
+						resource.setAbsolutePath(parentPath.concat(file.isDirectory() ? file.getName() + "/" //$NON-NLS-1$
+								: file.getName()));
+						if (file.getSize() >= 0) {
+							resource.setSize(file.getSize());
+						}
+						resource.setMode(file.getMode());
+						list.add(resource);
 					}
 				}
 			}
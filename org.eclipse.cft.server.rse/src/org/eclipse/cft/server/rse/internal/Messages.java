@@ -30,6 +30,8 @@ public class Messages extends NLS {
 	public static String CloudFoundryFileService_DESCRIPTION_FILE_SERVICE_NAME;
 
 	public static String CloudFoundryFileService_DESCRIPTION_FILE_SERVICES;
+
+	public static String RemoteFileTreeCache_PREFETCH_JOB;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.rse.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.client.RemoteFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Remote file tree of an application instance, so that browsing its files
+ * does not list the same directories over and over again:
+ * <ul>
+ * <li>A directory is listed together with its subdirectories, in a single
+ * request. Expanding a subdirectory afterwards needs no request.</li>
+ * <li>When a directory whose content is already known is expanded, its
+ * subdirectories are listed in the background, so that they can be expanded
+ * in turn without waiting.</li>
+ * <li>Servers that do not support SSH list one directory per request, so
+ * their directories are listed one level at a time, when expanded.</li>
+ * <li>Listings are kept for {@link #DEFAULT_TTL} ms, or until they are
+ * refreshed explicitly (see {@link #refresh()}).</li>
+ * </ul>
+ * One tree is kept per application instance (see
+ * {@link #getTree(CloudFoundryServer, CloudApplication, int)}), and is thread
+ * safe.
+ *
+ */
+public class RemoteFileTreeCache {
+
+	/**
+	 * Time in milliseconds for which listings are used
+	 */
+	public static final long DEFAULT_TTL = 30 * 1000;
+
+	/**
+	 * Depth of the listing of a directory on servers that list it with a
+	 * single request: its children, and the children of its subdirectories
+	 */
+	private static final int LISTING_DEPTH = 2;
+
+	private static final Map<String, RemoteFileTreeCache> trees = new HashMap<String, RemoteFileTreeCache>();
+
+	private final CloudFoundryServer server;
+
+	private final int instance;
+
+	private volatile CloudApplication app;
+
+	/**
+	 * Depth at which directories are listed, or 0 if not known yet
+	 */
+	private volatile int listingDepth;
+
+	/**
+	 * Listings keyed by directory path, relative to the home directory of the
+	 * instance, without leading or trailing '/'
+	 */
+	private final Map<String, Listing> listings = new HashMap<String, Listing>();
+
+	private final Set<String> pendingPrefetches = new LinkedHashSet<String>();
+
+	private final Job prefetchJob;
+
+	private final long ttl;
+
+	public RemoteFileTreeCache(CloudFoundryServer server, CloudApplication app, int instance, long ttl) {
+		this.server = server;
+		this.app = app;
+		this.instance = instance;
+		this.ttl = ttl;
+		this.prefetchJob = new Job(NLS.bind(Messages.RemoteFileTreeCache_PREFETCH_JOB, app.getName())) {
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				prefetchPending(monitor);
+				return Status.OK_STATUS;
+			}
+		};
+		this.prefetchJob.setSystem(true);
+	}
+
+	/**
+	 * 
+	 * @param server
+	 * @param app
+	 * @param instance index of the application instance
+	 * @return file tree of the given application instance, shared by all
+	 * callers browsing it
+	 */
+	public static RemoteFileTreeCache getTree(CloudFoundryServer server, CloudApplication app, int instance) {
+		String key = getKey(server) + app.getName() + '#' + instance;
+		synchronized (trees) {
+			RemoteFileTreeCache tree = trees.get(key);
+			if (tree == null) {
+				tree = new RemoteFileTreeCache(server, app, instance, DEFAULT_TTL);
+				trees.put(key, tree);
+			}
+			else {
+				// Use the application most recently fetched from the server
+				tree.app = app;
+			}
+			return tree;
+		}
+	}
+
+	/**
+	 * Discards the file trees of all application instances of the given
+	 * server, for example because its applications were fetched again.
+	 * @param server
+	 */
+	public static void refreshTrees(CloudFoundryServer server) {
+		String prefix = getKey(server);
+		List<RemoteFileTreeCache> removed = new ArrayList<RemoteFileTreeCache>();
+		synchronized (trees) {
+			for (Iterator<Map.Entry<String, RemoteFileTreeCache>> it = trees.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<String, RemoteFileTreeCache> entry = it.next();
+				if (entry.getKey().startsWith(prefix)) {
+					removed.add(entry.getValue());
+					it.remove();
+				}
+			}
+		}
+		for (RemoteFileTreeCache tree : removed) {
+			tree.dispose();
+		}
+	}
+
+	/**
+	 * Discards the file trees of all application instances.
+	 */
+	public static void disposeAll() {
+		List<RemoteFileTreeCache> removed;
+		synchronized (trees) {
+			removed = new ArrayList<RemoteFileTreeCache>(trees.values());
+			trees.clear();
+		}
+		for (RemoteFileTreeCache tree : removed) {
+			tree.dispose();
+		}
+	}
+
+	private static String getKey(CloudFoundryServer server) {
+		return server.getServer().getId() + '/';
+	}
+
+	/**
+	 * Returns the children of a directory, listing it if its content is not
+	 * known or is out of date. If its content is known, its subdirectories are
+	 * listed in the background.
+	 * @param path directory relative to the home directory of the instance,
+	 * e.g. "/app/lib/". Leading and trailing '/' are ignored.
+	 * @param monitor
+	 * @return children of the directory. Never null
+	 * @throws CoreException if the directory could not be listed
+	 */
+	public List<RemoteFile> getChildren(String path, IProgressMonitor monitor) throws CoreException {
+		String dir = normalize(path);
+		Listing listing = getListing(dir);
+		if (listing == null) {
+			return fetch(dir, monitor);
+		}
+		if (!listing.subdirectoriesListed && getListingDepth() > 1) {
+			schedulePrefetch(dir);
+		}
+		return listing.children;
+	}
+
+	/**
+	 * 
+	 * @param path directory relative to the home directory of the instance
+	 * @return children of the directory if its content is known and up to
+	 * date, or null. Never lists the directory.
+	 */
+	public List<RemoteFile> getCachedChildren(String path) {
+		Listing listing = getListing(normalize(path));
+		return listing != null ? listing.children : null;
+	}
+
+	/**
+	 * Discards the listing of the given directory and its subdirectories, so
+	 * that they are listed again the next time they are needed.
+	 * @param path directory relative to the home directory of the instance
+	 */
+	public void refresh(String path) {
+		String dir = normalize(path);
+		synchronized (listings) {
+			for (Iterator<String> it = listings.keySet().iterator(); it.hasNext();) {
+				String listed = it.next();
+				if (dir.length() == 0 || listed.equals(dir) || listed.startsWith(dir + '/')) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards all listings.
+	 */
+	public void refresh() {
+		refresh(""); //$NON-NLS-1$
+	}
+
+	/**
+	 * Lists the directory, and its subdirectories if the server lists them
+	 * with the same request, and keeps their listings.
+	 * @return children of the directory
+	 */
+	protected List<RemoteFile> fetch(String dir, IProgressMonitor monitor) throws CoreException {
+		int depth = getListingDepth();
+		boolean subdirectoriesListed = depth > 1;
+		List<RemoteFile> files = server.getBehaviour().listFiles(app, instance, dir, depth, monitor);
+
+		// Paths of the files are relative to the listed directory. Children
+		// of subdirectories are grouped by subdirectory
+		Map<String, List<RemoteFile>> childrenByDir = new HashMap<String, List<RemoteFile>>();
+		childrenByDir.put("", new ArrayList<RemoteFile>()); //$NON-NLS-1$
+		for (RemoteFile file : files) {
+			if (subdirectoriesListed && file.isDirectory() && file.getParentPath().length() == 0) {
+				// Also keeps empty subdirectories, which have no files listed
+				if (!childrenByDir.containsKey(file.getPath())) {
+					childrenByDir.put(file.getPath(), new ArrayList<RemoteFile>());
+				}
+			}
+			List<RemoteFile> children = childrenByDir.get(file.getParentPath());
+			if (children == null) {
+				children = new ArrayList<RemoteFile>();
+				childrenByDir.put(file.getParentPath(), children);
+			}
+			children.add(file);
+		}
+
+		long now = System.currentTimeMillis();
+		Listing dirListing = new Listing(childrenByDir.get(""), now, subdirectoriesListed); //$NON-NLS-1$
+		synchronized (listings) {
+			removeExpiredListings(now);
+			listings.put(dir, dirListing);
+			for (Map.Entry<String, List<RemoteFile>> entry : childrenByDir.entrySet()) {
+				String subdir = entry.getKey();
+				if (subdir.length() == 0) {
+					continue;
+				}
+				String listedPath = append(dir, subdir);
+				// Subdirectories are listed at depth 1 only, so their own
+				// subdirectories are unknown, unless listed earlier
+				Listing previous = listings.get(listedPath);
+				listings.put(listedPath, new Listing(toChildren(entry.getValue()), now,
+						previous != null && previous.subdirectoriesListed));
+			}
+		}
+		return dirListing.children;
+	}
+
+	/**
+	 * 
+	 * @return depth at which directories are listed: with their subdirectories
+	 * if the server lists them with a single request (over SSH), otherwise one
+	 * level only, as the server would need a request per subdirectory
+	 */
+	protected int getListingDepth() {
+		if (listingDepth == 0) {
+			listingDepth = server.getBehaviour().supportsSsh() ? LISTING_DEPTH : 1;
+		}
+		return listingDepth;
+	}
+
+	/**
+	 * 
+	 * @return files with their paths relative to their parent directory
+	 */
+	private static List<RemoteFile> toChildren(List<RemoteFile> files) {
+		List<RemoteFile> children = new ArrayList<RemoteFile>(files.size());
+		for (RemoteFile file : files) {
+			children.add(new RemoteFile(file.getName(), file.isDirectory(), file.getSize(), file.getModifiedTime(),
+					file.getMode()));
+		}
+		return children;
+	}
+
+	private Listing getListing(String dir) {
+		synchronized (listings) {
+			Listing listing = listings.get(dir);
+			if (listing != null && System.currentTimeMillis() - listing.fetchTime >= ttl) {
+				listings.remove(dir);
+				return null;
+			}
+			return listing;
+		}
+	}
+
+	/**
+	 * Must be called with the listings locked
+	 */
+	private void removeExpiredListings(long now) {
+		for (Iterator<Listing> it = listings.values().iterator(); it.hasNext();) {
+			if (now - it.next().fetchTime >= ttl) {
+				it.remove();
+			}
+		}
+	}
+
+	protected void schedulePrefetch(String dir) {
+		synchronized (pendingPrefetches) {
+			if (!pendingPrefetches.add(dir)) {
+				return;
+			}
+		}
+		prefetchJob.schedule();
+	}
+
+	protected void prefetchPending(IProgressMonitor monitor) {
+		while (!monitor.isCanceled()) {
+			String dir;
+			synchronized (pendingPrefetches) {
+				Iterator<String> it = pendingPrefetches.iterator();
+				if (!it.hasNext()) {
+					return;
+				}
+				dir = it.next();
+			}
+			try {
+				Listing listing = getListing(dir);
+				if (listing == null || !listing.subdirectoriesListed) {
+					fetch(dir, monitor);
+				}
+			}
+			catch (CoreException e) {
+				// Not reported, as the directory is listed again, and any
+				// error reported, when it is expanded
+			}
+			catch (OperationCanceledException e) {
+				return;
+			}
+			finally {
+				synchronized (pendingPrefetches) {
+					pendingPrefetches.remove(dir);
+				}
+			}
+		}
+	}
+
+	private void dispose() {
+		prefetchJob.cancel();
+		synchronized (pendingPrefetches) {
+			pendingPrefetches.clear();
+		}
+		refresh();
+	}
+
+	private static String normalize(String path) {
+		if (path == null) {
+			return ""; //$NON-NLS-1$
+		}
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(start, end);
+	}
+
+	private static String append(String dir, String name) {
+		return dir.length() == 0 ? name : dir + '/' + name;
+	}
+
+	private static class Listing {
+
+		final List<RemoteFile> children;
+
+		final long fetchTime;
+
+		/**
+		 * True if the children of the subdirectories were listed at the same
+		 * time
+		 */
+		final boolean subdirectoriesListed;
+
+		Listing(List<RemoteFile> children, long fetchTime, boolean subdirectoriesListed) {
+			this.children = Collections.unmodifiableList(children);
+			this.fetchTime = fetchTime;
+			this.subdirectoriesListed = subdirectoriesListed;
+		}
+	}
+}
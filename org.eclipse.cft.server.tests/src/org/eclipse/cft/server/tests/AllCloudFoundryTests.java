@@ -20,6 +20,9 @@
  ********************************************************************************/
 package org.eclipse.cft.server.tests;
 
+import org.eclipse.cft.server.tests.core.AccessTokenCacheTest;
+import org.eclipse.cft.server.tests.core.ApplicationStateWatcherTest;
+import org.eclipse.cft.server.tests.core.ArchiveEntryDigesterTest;
 import org.eclipse.cft.server.tests.core.BehaviourOperationsTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryClientConnectionTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryProxyTest;
@@ -27,9 +30,16 @@ import org.eclipse.cft.server.tests.core.CloudFoundryServerBehaviourTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryServerTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryServicesTest;
 import org.eclipse.cft.server.tests.core.CloudUtilTest;
+import org.eclipse.cft.server.tests.core.DeployedResourceCacheTest;
 import org.eclipse.cft.server.tests.core.DeploymentURLTest;
+import org.eclipse.cft.server.tests.core.DomainIndexTest;
+import org.eclipse.cft.server.tests.core.ModuleJarCacheTest;
 import org.eclipse.cft.server.tests.core.ModuleRefreshTest;
+import org.eclipse.cft.server.tests.core.RemoteFileListingTest;
+import org.eclipse.cft.server.tests.core.RetryPolicyTest;
 import org.eclipse.cft.server.tests.core.ServerCredentialsStoreTest;
+import org.eclipse.cft.server.tests.core.ServerEventHandlerTest;
+import org.eclipse.cft.server.tests.core.ZipAssemblerTest;
 import org.eclipse.cft.server.tests.sts.util.ManagedTestSuite;
 
 import junit.framework.Test;
@@ -57,6 +67,16 @@ public class AllCloudFoundryTests {
 		suite.addTestSuite(ServerCredentialsStoreTest.class);
 		suite.addTestSuite(CloudFoundryServerTest.class);
 		suite.addTestSuite(CloudUtilTest.class);
+		suite.addTestSuite(DeployedResourceCacheTest.class);
+		suite.addTestSuite(RetryPolicyTest.class);
+		suite.addTestSuite(DomainIndexTest.class);
+		suite.addTestSuite(RemoteFileListingTest.class);
+		suite.addTestSuite(ArchiveEntryDigesterTest.class);
+		suite.addTestSuite(ZipAssemblerTest.class);
+		suite.addTestSuite(ModuleJarCacheTest.class);
+		suite.addTestSuite(ServerEventHandlerTest.class);
+		suite.addTestSuite(AccessTokenCacheTest.class);
+		suite.addTestSuite(ApplicationStateWatcherTest.class);
 
 		suite.addTestSuite(DeploymentURLTest.class);
 		suite.addTestSuite(CloudFoundryServicesTest.class);
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.client.AccessTokenCache;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import junit.framework.TestCase;
+
+public class AccessTokenCacheTest extends TestCase {
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	private AccessTokenCache cache;
+
+	private LinkedList<OAuth2AccessToken> loginTokens;
+
+	private int loginCount;
+
+	private CloudFoundryOperations client;
+
+	@Override
+	protected void setUp() throws Exception {
+		cache = new AccessTokenCache();
+		loginTokens = new LinkedList<OAuth2AccessToken>();
+		loginCount = 0;
+		client = (CloudFoundryOperations) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("login".equals(method.getName())) {
+							return login();
+						}
+						if ("equals".equals(method.getName())) {
+							return proxy == args[0];
+						}
+						if ("hashCode".equals(method.getName())) {
+							return System.identityHashCode(proxy);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	public void testTokenReusedUntilExpiry() {
+		OAuth2AccessToken token = addLoginToken("first", HOUR);
+		addLoginToken("second", HOUR);
+
+		assertSame(token, cache.getToken(client, null));
+		assertSame(token, cache.getToken(client, null));
+		assertEquals(1, getLoginCount());
+	}
+
+	public void testExpiredTokenReplaced() {
+		addLoginToken("expired", -1000);
+		OAuth2AccessToken token = addLoginToken("second", HOUR);
+
+		// An expired token is not used, even if just obtained
+		cache.getToken(client, null);
+		assertSame(token, cache.getToken(client, null));
+		assertEquals(2, getLoginCount());
+	}
+
+	public void testTokenRefreshedInBackgroundBeforeExpiry() throws Exception {
+		OAuth2AccessToken expiring = addLoginToken("expiring", AccessTokenCache.REFRESH_MARGIN / 2);
+		OAuth2AccessToken refreshed = addLoginToken("refreshed", HOUR);
+
+		// The current token is used while the new one is requested
+		assertSame(expiring, cache.getToken(client, null));
+
+		long timeout = System.currentTimeMillis() + 10000;
+		while (cache.getToken(client, null) != refreshed && System.currentTimeMillis() < timeout) {
+			Thread.sleep(50);
+		}
+		assertSame(refreshed, cache.getToken(client, null));
+		assertEquals(2, getLoginCount());
+	}
+
+	public void testInvalidatedTokenReplaced() {
+		OAuth2AccessToken token = addLoginToken("revoked", HOUR);
+		OAuth2AccessToken newToken = addLoginToken("second", HOUR);
+
+		assertSame(token, cache.getToken(client, null));
+		cache.invalidate(client);
+		assertSame(newToken, cache.getToken(client, null));
+		assertEquals(2, getLoginCount());
+	}
+
+	private OAuth2AccessToken addLoginToken(String value, long expiresIn) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		token.setExpiration(new Date(System.currentTimeMillis() + expiresIn));
+		synchronized (loginTokens) {
+			loginTokens.add(token);
+		}
+		return token;
+	}
+
+	private OAuth2AccessToken login() {
+		synchronized (loginTokens) {
+			loginCount++;
+			return loginTokens.removeFirst();
+		}
+	}
+
+	private int getLoginCount() {
+		synchronized (loginTokens) {
+			return loginCount;
+		}
+	}
+}
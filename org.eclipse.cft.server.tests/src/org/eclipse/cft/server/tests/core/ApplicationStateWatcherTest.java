@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.eclipse.cft.server.core.internal.ApplicationStateWatcher;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.wst.server.core.IServer;
+
+import junit.framework.TestCase;
+
+public class ApplicationStateWatcherTest extends TestCase {
+
+	private static final long LONG_INTERVAL = 1000 * 60;
+
+	private TestWatcher watcher;
+
+	@Override
+	protected void setUp() throws Exception {
+		watcher = new TestWatcher();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		watcher.dispose();
+	}
+
+	public void testTransientErrorRetried() throws Exception {
+		watcher.setState("app", AppState.STOPPED);
+		watcher.failures = 1;
+
+		CompletableFuture<Integer> future = watcher.watch("app", LONG_INTERVAL, 100);
+		assertEquals(IServer.STATE_STOPPED, (int) future.get(5, TimeUnit.SECONDS));
+		assertTrue(watcher.getChecks() >= 2);
+	}
+
+	public void testErrorFailsWatchOnTimeout() throws Exception {
+		watcher.failures = Integer.MAX_VALUE;
+
+		CompletableFuture<Integer> future = watcher.watch("app", 300, 100);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected the watch to fail");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CoreException);
+		}
+	}
+
+	public void testNewWatchCheckedRightAway() throws Exception {
+		watcher.setState("starting", AppState.STARTED);
+		CompletableFuture<Integer> starting = watcher.watch("starting", LONG_INTERVAL, LONG_INTERVAL);
+		waitForChecks(1);
+
+		// The watcher now sleeps until the next check of the first app
+		watcher.setState("stopped", AppState.STOPPED);
+		CompletableFuture<Integer> stopped = watcher.watch("stopped", LONG_INTERVAL, LONG_INTERVAL);
+		assertEquals(IServer.STATE_STOPPED, (int) stopped.get(5, TimeUnit.SECONDS));
+		assertFalse(starting.isDone());
+	}
+
+	public void testCheckNowBeforeNextInterval() throws Exception {
+		watcher.setState("app", AppState.STARTED);
+		CompletableFuture<Integer> future = watcher.watch("app", LONG_INTERVAL, LONG_INTERVAL);
+		waitForChecks(1);
+
+		// For example, as start was detected from the logs
+		watcher.setState("app", AppState.STOPPED);
+		watcher.checkNow(future);
+		assertEquals(IServer.STATE_STOPPED, (int) future.get(5, TimeUnit.SECONDS));
+	}
+
+	private void waitForChecks(int checks) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while (watcher.getChecks() < checks && System.currentTimeMillis() < timeout) {
+			Thread.sleep(20);
+		}
+		assertTrue(watcher.getChecks() >= checks);
+		// Let the job go back to sleep
+		Thread.sleep(200);
+	}
+
+	private static class TestWatcher extends ApplicationStateWatcher {
+
+		private final Map<String, AppState> states = new HashMap<String, AppState>();
+
+		private int checks;
+
+		volatile int failures;
+
+		TestWatcher() {
+			super(null, "Test watcher");
+		}
+
+		synchronized void setState(String appName, AppState state) {
+			states.put(appName, state);
+		}
+
+		synchronized int getChecks() {
+			return checks;
+		}
+
+		@Override
+		protected synchronized List<CloudApplication> getApplications(IProgressMonitor monitor)
+				throws CoreException {
+			checks++;
+			if (failures > 0) {
+				failures--;
+				throw CloudErrorUtil.toCoreException("Service unavailable");
+			}
+			List<CloudApplication> apps = new ArrayList<CloudApplication>();
+			for (Map.Entry<String, AppState> entry : states.entrySet()) {
+				CloudApplication app = new CloudApplication(null, entry.getKey());
+				app.setState(entry.getValue());
+				apps.add(app);
+			}
+			return apps;
+		}
+
+		@Override
+		protected ApplicationStats getApplicationStats(String appName, IProgressMonitor monitor) {
+			// No instance is running yet
+			return null;
+		}
+	}
+}
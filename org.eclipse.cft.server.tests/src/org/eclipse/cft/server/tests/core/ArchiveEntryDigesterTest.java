@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.cft.server.core.ArchiveEntry;
+import org.eclipse.cft.server.core.internal.application.AbstractArchiveEntry;
+import org.eclipse.cft.server.core.internal.application.ArchiveEntryDigester;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import junit.framework.TestCase;
+
+public class ArchiveEntryDigesterTest extends TestCase {
+
+	public void testDigestsMatchSequentialDigests() {
+		List<ArchiveEntry> parallel = createEntries();
+		List<ArchiveEntry> sequential = createEntries();
+
+		ArchiveEntryDigester.digest(parallel, new NullProgressMonitor());
+
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			ArchiveEntry expected = sequential.get(i);
+			ArchiveEntry actual = parallel.get(i);
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.getSize(), actual.getSize());
+			assertTrue(expected.getName(), Arrays.equals(expected.getSha1Digest(), actual.getSha1Digest()));
+		}
+	}
+
+	public void testCanceledDigestsMatchSequentialDigests() {
+		List<ArchiveEntry> parallel = createEntries();
+		List<ArchiveEntry> sequential = createEntries();
+
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		ArchiveEntryDigester.digest(parallel, monitor);
+
+		// Entries that were not digested before the cancel, or that are still
+		// being digested, are digested when requested
+		for (int i = 0; i < sequential.size(); i++) {
+			assertEquals(sequential.get(i).getSize(), parallel.get(i).getSize());
+			assertTrue(Arrays.equals(sequential.get(i).getSha1Digest(), parallel.get(i).getSha1Digest()));
+		}
+	}
+
+	public void testDirectoriesAreNotDigested() {
+		List<ArchiveEntry> entries = createEntries();
+		TestEntry dir = new TestEntry("dir/", null);
+		entries.add(dir);
+
+		ArchiveEntryDigester.digest(entries, null);
+
+		assertEquals(0, dir.getSize());
+		assertNull(dir.getSha1Digest());
+		assertEquals(0, dir.reads);
+	}
+
+	private static List<ArchiveEntry> createEntries() {
+		List<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
+		for (int i = 0; i < 50; i++) {
+			byte[] content = new byte[i * 10007];
+			for (int j = 0; j < content.length; j++) {
+				content[j] = (byte) (i + j * 31);
+			}
+			entries.add(new TestEntry("file" + i + ".bin", content));
+		}
+		return entries;
+	}
+
+	private static class TestEntry extends AbstractArchiveEntry {
+
+		private final String name;
+
+		private final byte[] content;
+
+		volatile int reads;
+
+		TestEntry(String name, byte[] content) {
+			this.name = name;
+			this.content = content;
+		}
+
+		public boolean isDirectory() {
+			return content == null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public InputStream getInputStream() throws IOException {
+			reads++;
+			return isDirectory() ? null : new ByteArrayInputStream(content);
+		}
+	}
+}
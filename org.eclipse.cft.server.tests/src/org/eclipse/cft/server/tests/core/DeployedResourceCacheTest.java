@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.eclipse.cft.server.core.internal.DeployedResourceCache;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.DeployedResourceEntry;
+import org.eclipse.cft.server.core.internal.DeployedResourceIndex;
+
+import junit.framework.TestCase;
+
+public class DeployedResourceCacheTest extends TestCase {
+
+	public void testSha1RoundTrip() {
+		byte[] sha1 = new byte[20];
+		for (int i = 0; i < sha1.length; i++) {
+			sha1[i] = (byte) (0xF0 - i * 7);
+		}
+		DeployedResourceEntry entry = new DeployedResourceEntry(sha1, 10, "WEB-INF/web.xml");
+		assertTrue(Arrays.equals(sha1, entry.getSha1()));
+		assertEquals(10, entry.getFileSize());
+
+		assertNull(new DeployedResourceEntry(null, 10, "index.html").getSha1());
+
+		byte[] otherDigest = new byte[] { 1, 2, 3 };
+		assertTrue(Arrays.equals(otherDigest, new DeployedResourceEntry(otherDigest, 10, "a.txt").getSha1()));
+	}
+
+	public void testHitsAndMisses() {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("server", "app");
+
+		assertNull(cache.getEntry(app, "index.html"));
+		cache.add(app, new DeployedResourceEntry(new byte[20], 10, "index.html"));
+		assertNotNull(cache.getEntry(app, "index.html"));
+
+		// Same app name in a different server is a different app
+		assertNull(cache.getEntry(new CachedDeployedApplication("otherServer", "app"), "index.html"));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	public void testEvictLeastRecentlyUsedApp() {
+		// Room for a few entries only
+		DeployedResourceCache cache = new DeployedResourceCache(null, 400);
+		CachedDeployedApplication app1 = new CachedDeployedApplication("server", "app1");
+		CachedDeployedApplication app2 = new CachedDeployedApplication("server", "app2");
+		CachedDeployedApplication app3 = new CachedDeployedApplication("server", "app3");
+
+		cache.add(app1, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+		cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+		// Access app1 so that app2 is the least recently used
+		assertNotNull(cache.getEntry(app1, "a.txt"));
+		cache.add(app3, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+		cache.add(app3, new DeployedResourceEntry(new byte[20], 10, "b.txt"));
+
+		assertTrue(cache.getEvictionCount() > 0);
+		assertTrue(cache.getEstimatedMemory() <= 400);
+		assertNull(cache.getEntry(app2, "a.txt"));
+		assertNotNull(cache.getEntry(app3, "b.txt"));
+	}
+
+	public void testCurrentAppIsNotEvicted() {
+		DeployedResourceCache cache = new DeployedResourceCache(null, 1);
+		CachedDeployedApplication app = new CachedDeployedApplication("server", "app");
+		cache.add(app, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+		cache.add(app, new DeployedResourceEntry(new byte[20], 10, "b.txt"));
+
+		assertNotNull(cache.getEntry(app, "a.txt"));
+		assertNotNull(cache.getEntry(app, "b.txt"));
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	public void testMemoryAccountingWithConcurrentEviction() throws Exception {
+		// Every add evicts the other applications
+		final DeployedResourceCache cache = new DeployedResourceCache(null, 1);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int thread = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 2000; j++) {
+						CachedDeployedApplication app = new CachedDeployedApplication("server", "app" + (j % 8));
+						cache.add(app, new DeployedResourceEntry(new byte[20], 10, "file" + thread + "_" + j));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Adding to another application evicts all others, so only its entry
+		// should remain counted
+		CachedDeployedApplication last = new CachedDeployedApplication("server", "last");
+		cache.add(last, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+
+		DeployedResourceCache expected = new DeployedResourceCache(null, 1);
+		expected.add(last, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+		assertEquals(expected.getEstimatedMemory(), cache.getEstimatedMemory());
+	}
+
+	public void testEvictedAppReloadedWithUnwrittenEntries() throws Exception {
+		File folder = Files.createTempDirectory("index").toFile();
+		DeployedResourceIndex index = new DeployedResourceIndex(folder);
+		try {
+			DeployedResourceCache cache = new DeployedResourceCache(index, 400);
+			CachedDeployedApplication app1 = new CachedDeployedApplication("server", "app1");
+			CachedDeployedApplication app2 = new CachedDeployedApplication("server", "app2");
+
+			cache.add(app1, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+			cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+			cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "b.txt"));
+			cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "c.txt"));
+			assertTrue(cache.getEvictionCount() > 0);
+
+			// Reloaded before the index is written to disk
+			assertNotNull(cache.getEntry(app1, "a.txt"));
+		}
+		finally {
+			index.dispose();
+			delete(folder);
+		}
+	}
+
+	public void testRemovedAppsDeleteIndexes() throws Exception {
+		File folder = Files.createTempDirectory("index").toFile();
+		DeployedResourceIndex index = new DeployedResourceIndex(folder);
+		try {
+			DeployedResourceCache cache = new DeployedResourceCache(index);
+			CachedDeployedApplication app1 = new CachedDeployedApplication("server1", "app1");
+			CachedDeployedApplication app2 = new CachedDeployedApplication("server1", "app2");
+			CachedDeployedApplication app3 = new CachedDeployedApplication("server2", "app1");
+			cache.add(app1, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+			cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+			cache.add(app3, new DeployedResourceEntry(new byte[20], 10, "a.txt"));
+			index.flush();
+			assertEquals(3, folder.listFiles().length);
+
+			cache.remove(app1);
+			assertEquals(2, folder.listFiles().length);
+			assertNull(cache.getEntry(app1, "a.txt"));
+
+			// Pending changes are discarded as well
+			cache.add(app2, new DeployedResourceEntry(new byte[20], 10, "b.txt"));
+			cache.removeServer("server1");
+			index.flush();
+			assertEquals(1, folder.listFiles().length);
+			assertNull(cache.getEntry(app2, "b.txt"));
+			assertNotNull(cache.getEntry(app3, "a.txt"));
+		}
+		finally {
+			index.dispose();
+			delete(folder);
+		}
+	}
+
+	private static void delete(File folder) {
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.Arrays;
+
+import org.eclipse.cft.server.core.internal.DomainIndex;
+
+import junit.framework.TestCase;
+
+public class DomainIndexTest extends TestCase {
+
+	public void testMatchesWholeSegmentsOnly() {
+		DomainIndex index = new DomainIndex(Arrays.asList("validdomain", "cfapps.io"));
+		assertEquals("validdomain", index.getDomain("sub.validdomain"));
+		assertEquals("cfapps.io", index.getDomain("myapp.cfapps.io"));
+		assertNull(index.getDomain("sub.domainvaliddomain"));
+		assertNull(index.getDomain("myapp.apps.io"));
+		assertNull(index.getDomain(""));
+		assertNull(index.getDomain(null));
+	}
+
+	public void testDomainEqualToAuthority() {
+		DomainIndex index = new DomainIndex(Arrays.asList("validdomain"));
+		assertEquals("validdomain", index.getDomain("validdomain"));
+	}
+
+	public void testPrefersLongestDomainWithSubdomain() {
+		DomainIndex index = new DomainIndex(Arrays.asList("example.com", "apps.example.com"));
+		assertEquals("apps.example.com", index.getDomain("myapp.apps.example.com"));
+		assertEquals("example.com", index.getDomain("myapp.example.com"));
+		// The longer domain would leave no subdomain
+		assertEquals("example.com", index.getDomain("apps.example.com"));
+	}
+
+	public void testIgnoresEmptyDomains() {
+		DomainIndex index = new DomainIndex(Arrays.asList(null, "", "cfapps.io"));
+		assertEquals("cfapps.io", index.getDomain("myapp.cfapps.io"));
+		assertNull(index.getDomain("myapp."));
+	}
+}
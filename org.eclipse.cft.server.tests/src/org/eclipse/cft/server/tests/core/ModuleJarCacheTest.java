@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.cft.server.core.internal.ModuleJarCache;
+
+import junit.framework.TestCase;
+
+public class ModuleJarCacheTest extends TestCase {
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("jarcache").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(folder);
+	}
+
+	public void testRestoredJarIsCopy() throws Exception {
+		ModuleJarCache cache = new ModuleJarCache(new File(folder, "cache"), ModuleJarCache.DEFAULT_MAX_SIZE,
+				ModuleJarCache.DEFAULT_MAX_AGE);
+		File jar = write(new File(folder, "child.jar"), "assembled");
+		cache.store("digest", jar);
+
+		File staged = new File(folder, "staged.jar");
+		assertTrue(cache.restore("digest", staged));
+		write(staged, "overwritten");
+		staged.setLastModified(1000);
+
+		// Writing to the restored jar does not change the stored one, and
+		// restoring it again does not touch the first copy
+		File restored = new File(folder, "restored.jar");
+		assertTrue(cache.restore("digest", restored));
+		assertEquals("assembled", read(restored));
+		assertEquals(1000, staged.lastModified());
+		assertFalse(cache.restore("unknown", restored));
+	}
+
+	public void testLeastRecentlyUsedDeleted() throws Exception {
+		ModuleJarCache cache = new ModuleJarCache(new File(folder, "cache"), 10, ModuleJarCache.DEFAULT_MAX_AGE);
+		cache.store("old", write(new File(folder, "old.jar"), "12345"));
+		new File(folder, "cache/old.used").setLastModified(System.currentTimeMillis() - 60000);
+		cache.store("new", write(new File(folder, "new.jar"), "12345"));
+		cache.store("newest", write(new File(folder, "newest.jar"), "12345"));
+
+		File target = new File(folder, "target.jar");
+		assertFalse(cache.restore("old", target));
+		assertFalse(new File(folder, "cache/old.used").exists());
+		assertTrue(cache.restore("newest", target));
+	}
+
+	private static File write(File file, String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
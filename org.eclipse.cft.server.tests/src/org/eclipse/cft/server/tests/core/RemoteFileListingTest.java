@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.List;
+
+import org.eclipse.cft.server.core.internal.client.RemoteFile;
+import org.eclipse.cft.server.core.internal.client.RemoteFileListing;
+
+import junit.framework.TestCase;
+
+public class RemoteFileListingTest extends TestCase {
+
+	public void testParsesFilesAndDirectories() {
+		List<RemoteFile> files = RemoteFileListing.parseFindOutput(
+				"d 755 4096 1476789012.5000000000 app\n" + "f 644 1234 1476789013.0000000000 app/index.html\n");
+		assertEquals(2, files.size());
+
+		RemoteFile dir = files.get(0);
+		assertTrue(dir.isDirectory());
+		assertEquals("app", dir.getPath());
+		assertEquals("app", dir.getName());
+		assertEquals("", dir.getParentPath());
+		assertEquals(0755, dir.getMode());
+		assertEquals(4096, dir.getSize());
+		assertEquals(1476789012500L, dir.getModifiedTime());
+
+		RemoteFile file = files.get(1);
+		assertFalse(file.isDirectory());
+		assertEquals("app/index.html", file.getPath());
+		assertEquals("index.html", file.getName());
+		assertEquals("app", file.getParentPath());
+		assertEquals(0644, file.getMode());
+		assertEquals(1234, file.getSize());
+		assertEquals(1476789013000L, file.getModifiedTime());
+	}
+
+	public void testKeepsSpacesInPaths() {
+		RemoteFile file = RemoteFileListing.parseFindLine("f 644 10 1476789013.0 my dir/a  file.txt");
+		assertEquals("my dir/a  file.txt", file.getPath());
+		assertEquals("a  file.txt", file.getName());
+		assertEquals("my dir", file.getParentPath());
+	}
+
+	public void testUnknownValues() {
+		RemoteFile file = RemoteFileListing.parseFindLine("f ? ? ? logs.txt");
+		assertEquals("logs.txt", file.getPath());
+		assertEquals(-1, file.getMode());
+		assertEquals(-1, file.getSize());
+		assertEquals(0, file.getModifiedTime());
+	}
+
+	public void testSkipsInvalidLines() {
+		List<RemoteFile> files = RemoteFileListing.parseFindOutput(
+				"\n" + "find: unknown predicate\n" + "d 755 4096 1476789012.0 \n" + "f 644 1 1476789012.0 a\n");
+		assertEquals(1, files.size());
+		assertEquals("a", files.get(0).getPath());
+		assertTrue(RemoteFileListing.parseFindOutput(null).isEmpty());
+	}
+
+	public void testSymbolicLinks() {
+		List<RemoteFile> files = RemoteFileListing
+				.parseFindOutput("d 777 4 1476789012.0 lib\n" + "N 777 7 1476789012.0 lib-old\n");
+		assertEquals(2, files.size());
+		assertTrue(files.get(0).isDirectory());
+		assertEquals("lib", files.get(0).getPath());
+		assertFalse(files.get(1).isDirectory());
+		assertEquals("lib-old", files.get(1).getPath());
+	}
+
+	public void testFindCommandFollowsLinkedDirectory() {
+		assertEquals("find -H 'app/lib' -mindepth 1 -maxdepth 2 -printf '%Y %m %s %T@ %P\\n'",
+				RemoteFileListing.getFindCommand("app/lib", 2));
+		assertEquals("find -H 'it'\\''s' -mindepth 1 -maxdepth 1 -printf '%Y %m %s %T@ %P\\n'",
+				RemoteFileListing.getFindCommand("it's", 1));
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.BaseClientRequest;
+import org.eclipse.cft.server.core.internal.client.RetryPolicy;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+import junit.framework.TestCase;
+
+public class RetryPolicyTest extends TestCase {
+
+	private static final RuntimeException SERVER_ERROR = new RuntimeException("503 Service Unavailable");
+
+	private static final RuntimeException CLIENT_ERROR = new RuntimeException("404 Not Found");
+
+	private long now = 1000;
+
+	private RetryPolicy createPolicy(int retryBudget, int breakerThreshold) {
+		return new RetryPolicy(8000, retryBudget, 1.0, breakerThreshold, 10000) {
+
+			@Override
+			protected long currentTimeMillis() {
+				return now;
+			}
+
+			@Override
+			protected boolean isServerError(Throwable error) {
+				return error == SERVER_ERROR;
+			}
+		};
+	}
+
+	public void testBackoffIsExponentialWithJitter() {
+		RetryPolicy policy = createPolicy(100, 100);
+		for (int attempt = 1; attempt <= 6; attempt++) {
+			long expected = Math.min(1000L << (attempt - 1), 8000);
+			long delay = policy.getRetryDelay(attempt, 1000);
+			assertTrue("Delay " + delay + " for attempt " + attempt, delay >= expected / 2 && delay <= expected);
+		}
+		assertEquals(6, policy.getRetryCount());
+
+		// Base intervals longer than the maximum are not shortened
+		long delay = policy.getRetryDelay(1, 20000);
+		assertTrue(delay >= 10000 && delay <= 20000);
+
+		assertEquals(-1, policy.getRetryDelay(1, -1));
+	}
+
+	public void testRetryBudget() {
+		RetryPolicy policy = createPolicy(2, 100);
+		assertTrue(policy.getRetryDelay(1, 1000) > 0);
+		assertTrue(policy.getRetryDelay(1, 1000) > 0);
+		assertEquals(-1, policy.getRetryDelay(1, 1000));
+		assertEquals(1, policy.getBudgetExhaustedCount());
+
+		// Budget is replenished over time
+		now += 1000;
+		assertTrue(policy.getRetryDelay(1, 1000) > 0);
+		assertEquals(3, policy.getRetryCount());
+	}
+
+	public void testBreakerTripsOnConsecutiveServerErrors() throws Exception {
+		RetryPolicy policy = createPolicy(100, 3);
+		policy.failed(SERVER_ERROR);
+		policy.failed(SERVER_ERROR);
+		// Other errors reset the count
+		policy.failed(CLIENT_ERROR);
+		policy.failed(SERVER_ERROR);
+		policy.failed(SERVER_ERROR);
+		assertFalse(policy.isBreakerOpen());
+
+		policy.failed(SERVER_ERROR);
+		assertTrue(policy.isBreakerOpen());
+		assertEquals(1, policy.getBreakerTrippedCount());
+		assertEquals(-1, policy.getRetryDelay(1, 1000));
+
+		try {
+			policy.beforeAttempt("request");
+			fail("Expected request to fail fast");
+		}
+		catch (CoreException e) {
+			// expected
+		}
+		assertEquals(1, policy.getRejectedCount());
+
+		// Once the breaker open time elapses, one probe is let through
+		now += 10000;
+		policy.beforeAttempt("request");
+		try {
+			policy.beforeAttempt("request");
+			fail("Expected only one probe");
+		}
+		catch (CoreException e) {
+			// expected
+		}
+
+		// A failed probe opens the breaker again
+		policy.failed(SERVER_ERROR);
+		assertTrue(policy.isBreakerOpen());
+		assertEquals(2, policy.getBreakerTrippedCount());
+
+		// A successful probe closes it
+		now += 10000;
+		policy.beforeAttempt("request");
+		policy.succeeded();
+		assertFalse(policy.isBreakerOpen());
+		policy.beforeAttempt("request");
+	}
+
+	public void testPollingDoesNotTripBreaker() throws Exception {
+		RetryPolicy policy = createPolicy(100, 2);
+		policy.failed(SERVER_ERROR);
+		// A polled error is an expected response, even if it is a server
+		// error
+		policy.polled();
+		policy.failed(SERVER_ERROR);
+		assertFalse(policy.isBreakerOpen());
+
+		policy.failed(SERVER_ERROR);
+		assertTrue(policy.isBreakerOpen());
+
+		// A probe that is polled on closes the breaker, so that the request
+		// can poll again
+		now += 10000;
+		policy.beforeAttempt("request");
+		policy.polled();
+		assertFalse(policy.isBreakerOpen());
+		policy.beforeAttempt("request");
+		assertEquals(0, policy.getRetryCount());
+	}
+
+	public void testProbeEndingWithException() throws Exception {
+		RetryPolicy policy = createPolicy(100, 1);
+		policy.failed(SERVER_ERROR);
+		assertTrue(policy.isBreakerOpen());
+
+		// The probe fails, and deciding whether to poll fails as well
+		now += 10000;
+		try {
+			new ProbeRequest(policy).probe();
+			fail("Expected the probe to fail");
+		}
+		catch (CoreException e) {
+			assertEquals("Cannot poll", e.getMessage());
+		}
+
+		// The probe is over, so the server is probed again later
+		assertTrue(policy.isBreakerOpen());
+		now += 10000;
+		policy.beforeAttempt("request");
+	}
+
+	@SuppressWarnings("deprecation")
+	private static class ProbeRequest extends BaseClientRequest<Object> {
+
+		private final RetryPolicy policy;
+
+		ProbeRequest(RetryPolicy policy) {
+			super("request");
+			this.policy = policy;
+		}
+
+		Object probe() throws CoreException {
+			return runAndWait(null, SubMonitor.convert(null));
+		}
+
+		@Override
+		protected Object doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			throw SERVER_ERROR;
+		}
+
+		@Override
+		protected long getPollingInterval(Throwable exception, SubMonitor monitor) throws CoreException {
+			throw CloudErrorUtil.toCoreException("Cannot poll");
+		}
+
+		@Override
+		protected RetryPolicy getRetryPolicy() {
+			return policy;
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			return null;
+		}
+	}
+}
@@ -128,6 +128,26 @@ public class ServerCredentialsStoreTest extends TestCase {
 		assertEquals(null, store.getUsername());
 	}
 
+	public void testFlushOnlyChanges() {
+		store.setUsername("user");
+		store.flush(store.getServerId());
+		assertEquals(1, store.getFlushCount());
+
+		// Nothing changed
+		store.flush(store.getServerId());
+		store.setUsername("user");
+		store.flush(store.getServerId());
+		assertEquals(1, store.getFlushCount());
+
+		store.setToken("token");
+		store.flush(store.getServerId());
+		assertEquals(2, store.getFlushCount());
+
+		ServerCredentialsStore store2 = new ServerCredentialsStore(store.getServerId());
+		assertEquals("user", store2.getUsername());
+		assertEquals("token", store2.getToken());
+	}
+
 	private String serverId() {
 		return ServerCredentialsStoreTest.class.getName() + ":" + UUID.randomUUID().toString();
 	}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.cft.server.core.CFServiceInstance;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.CloudServerEvent;
+import org.eclipse.cft.server.core.internal.CloudServerListener;
+import org.eclipse.cft.server.core.internal.ServerEventHandler;
+import org.eclipse.cft.server.core.internal.application.ModuleChangeEvent;
+import org.eclipse.cft.server.core.internal.client.ServicesUpdatedEvent;
+import org.eclipse.core.runtime.Status;
+
+import junit.framework.TestCase;
+
+public class ServerEventHandlerTest extends TestCase {
+
+	private ServerEventHandler handler;
+
+	private CloudFoundryServer server;
+
+	private RecordingListener listener;
+
+	@Override
+	protected void setUp() throws Exception {
+		handler = new ServerEventHandler();
+		server = new CloudFoundryServer();
+		listener = new RecordingListener();
+		handler.addServerListener(listener);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		listener.release.countDown();
+		handler.removeServerListener(listener);
+	}
+
+	public void testRefreshEventsDeliveredInOrderAndCoalesced() throws Exception {
+		CloudServerEvent blocking = createEvent(CloudServerEvent.EVENT_MODULE_UPDATED);
+		handler.fireServerEvent(blocking);
+		assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+
+		// Queued while the listener handles the first event
+		CloudServerEvent instances = createEvent(CloudServerEvent.EVENT_INSTANCES_UPDATED);
+		handler.fireServerEvent(instances);
+		CloudServerEvent services = new ServicesUpdatedEvent(server, CloudServerEvent.EVENT_SERVICES_UPDATED,
+				Collections.<CFServiceInstance> emptyList());
+		handler.fireServerEvent(services);
+		CloudServerEvent newerInstances = createEvent(CloudServerEvent.EVENT_INSTANCES_UPDATED);
+		handler.fireServerEvent(newerInstances);
+		assertEquals(2, handler.getQueueDepth(listener));
+		assertEquals(1, handler.getCoalescedCount());
+
+		listener.release.countDown();
+		listener.waitForEvents(3);
+
+		// The newer event replaced the older one at its position
+		List<CloudServerEvent> expected = new ArrayList<CloudServerEvent>();
+		expected.add(blocking);
+		expected.add(newerInstances);
+		expected.add(services);
+		assertEquals(expected, listener.getEvents());
+	}
+
+	public void testLifecycleEventsDeliveredSynchronously() throws Exception {
+		listener.release.countDown();
+		int[] types = { CloudServerEvent.EVENT_SERVER_CONNECTED, CloudServerEvent.EVENT_SERVER_DISCONNECTED,
+				CloudServerEvent.EVENT_UPDATE_PASSWORD, CloudServerEvent.EVENT_APP_DELETED,
+				CloudServerEvent.EVENT_APP_STOPPED, CloudServerEvent.EVENT_MODULES_UPDATED };
+		for (int i = 0; i < types.length; i++) {
+			CloudServerEvent event = new CloudServerEvent(server, types[i]);
+			handler.fireServerEvent(event);
+			assertEquals(i + 1, listener.getEvents().size());
+			assertSame(event, listener.getEvents().get(i));
+			assertSame(Thread.currentThread(), listener.lastThread);
+		}
+		assertEquals(0, handler.getQueueDepth());
+	}
+
+	private CloudServerEvent createEvent(int type) {
+		return new ModuleChangeEvent(server, type, null, Status.OK_STATUS);
+	}
+
+	private static class RecordingListener implements CloudServerListener {
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		private final List<CloudServerEvent> events = new ArrayList<CloudServerEvent>();
+
+		volatile Thread lastThread;
+
+		public void serverChanged(CloudServerEvent event) {
+			lastThread = Thread.currentThread();
+			synchronized (events) {
+				events.add(event);
+				events.notifyAll();
+			}
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		List<CloudServerEvent> getEvents() {
+			synchronized (events) {
+				return new ArrayList<CloudServerEvent>(events);
+			}
+		}
+
+		void waitForEvents(int count) throws InterruptedException {
+			long timeout = System.currentTimeMillis() + 5000;
+			synchronized (events) {
+				while (events.size() < count && System.currentTimeMillis() < timeout) {
+					events.wait(100);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pivotal Software, Inc. and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ * The Eclipse Public License is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * and the Apache License v2.0 is available at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.eclipse.cft.server.core.internal.ZipAssembler;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.util.ModuleFile;
+import org.eclipse.wst.server.core.util.ModuleFolder;
+
+import junit.framework.TestCase;
+
+/**
+ * Reads archives written by {@link ZipAssembler} back with the JDK zip
+ * classes, both through the central directory ({@link ZipFile}) and through
+ * the local headers and data descriptors ({@link ZipInputStream}).
+ */
+public class ZipAssemblerTest extends TestCase {
+
+	/**
+	 * Larger than the size of files compressed in memory
+	 */
+	private static final int LARGE_SIZE = 3 * 1024 * 1024 / 2;
+
+	private File dir;
+
+	private long timeStamp;
+
+	private Map<String, byte[]> contents;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("zipAssemblerTest").toFile();
+		// Even seconds, as MS-DOS times have a two seconds resolution
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.OCTOBER, 18, 12, 34, 56);
+		timeStamp = calendar.getTimeInMillis();
+		contents = new LinkedHashMap<String, byte[]>();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(dir);
+	}
+
+	public void testParallelRoundTrip() throws Exception {
+		List<IModuleResource> resources = createResources();
+		File zip = new File(dir, "parallel.zip");
+		new ZipAssembler().assemble(resources, null, zip);
+
+		assertRoundTrip(zip);
+		ZipFile zipFile = new ZipFile(zip);
+		try {
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("WEB-INF/web.xml").getMethod());
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("images/logo.png").getMethod());
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/lib/large.jar").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("WEB-INF/large.txt").getMethod());
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/").getMethod());
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testZip64FallbackRoundTrip() throws Exception {
+		List<IModuleResource> resources = createResources();
+		File zip = new File(dir, "sequential.zip");
+		new ZipAssembler() {
+			@Override
+			protected boolean requiresZip64(List<PendingEntry> pendingEntries) {
+				return true;
+			}
+		}.assemble(resources, null, zip);
+
+		assertRoundTrip(zip);
+	}
+
+	public void testFilterInFiles() throws Exception {
+		List<IModuleResource> resources = createResources();
+		ModuleFolder webInf = (ModuleFolder) resources.get(0);
+		IModuleResource webXml = webInf.members()[0];
+		File zip = new File(dir, "filtered.zip");
+		new ZipAssembler().assemble(resources, Collections.singleton(webXml), zip);
+
+		List<String> names = new ArrayList<String>();
+		ZipInputStream in = new ZipInputStream(Files.newInputStream(zip.toPath()));
+		try {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				names.add(entry.getName());
+			}
+		}
+		finally {
+			in.close();
+		}
+		// Folders are always included
+		assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/web.xml", "WEB-INF/lib/", "images/"), names);
+	}
+
+	public void testStoredFileChangedWhileArchived() throws Exception {
+		final File jar = createFile("large.jar", LARGE_SIZE);
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(new ModuleFile(jar, jar.getName(), Path.EMPTY));
+		File zip = new File(dir, "changed.zip");
+
+		try {
+			new ZipAssembler() {
+				@Override
+				protected PreparedEntry prepare(PendingEntry entry) throws IOException, CoreException {
+					PreparedEntry prepared = super.prepare(entry);
+					// Same size, different content, after the checksum is
+					// computed and before the writer copies the file
+					byte[] content = Files.readAllBytes(jar.toPath());
+					content[content.length / 2]++;
+					Files.write(jar.toPath(), content);
+					return prepared;
+				}
+			}.assemble(resources, null, zip);
+			fail("Expected the changed file to fail the assembly");
+		}
+		catch (ZipException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Creates, in archive order:
+	 * <pre>
+	 * WEB-INF/
+	 * WEB-INF/web.xml          small, deflated in memory
+	 * WEB-INF/empty.txt        empty
+	 * WEB-INF/large.txt        large, deflated by the writer with a data descriptor
+	 * WEB-INF/lib/
+	 * WEB-INF/lib/large.jar    large, stored and copied by the writer
+	 * images/
+	 * images/logo.png          small, stored in memory
+	 * </pre>
+	 */
+	private List<IModuleResource> createResources() throws IOException {
+		ModuleFolder webInf = new ModuleFolder(null, "WEB-INF", Path.EMPTY);
+		IPath webInfPath = new Path("WEB-INF");
+		ModuleFolder lib = new ModuleFolder(null, "lib", webInfPath);
+		lib.setMembers(new IModuleResource[] { createModuleFile("WEB-INF/lib/large.jar", LARGE_SIZE) });
+		webInf.setMembers(new IModuleResource[] { createModuleFile("WEB-INF/web.xml", 2000),
+				createModuleFile("WEB-INF/empty.txt", 0), createModuleFile("WEB-INF/large.txt", LARGE_SIZE), lib });
+
+		ModuleFolder images = new ModuleFolder(null, "images", Path.EMPTY);
+		images.setMembers(new IModuleResource[] { createModuleFile("images/logo.png", 5000) });
+
+		return Arrays.<IModuleResource> asList(webInf, images);
+	}
+
+	private ModuleFile createModuleFile(String zipName, int size) throws IOException {
+		IPath path = new Path(zipName);
+		File file = createFile(zipName.replace('/', '_'), size);
+		contents.put(zipName, Files.readAllBytes(file.toPath()));
+		return new ModuleFile(file, path.lastSegment(), path.removeLastSegments(1));
+	}
+
+	private File createFile(String name, int size) throws IOException {
+		byte[] content = new byte[size];
+		for (int i = 0; i < size; i++) {
+			// Compressible, but not trivially
+			content[i] = (byte) ('a' + (i * 7 + i / 100) % 26);
+		}
+		File file = new File(dir, name);
+		Files.write(file.toPath(), content);
+		file.setLastModified(timeStamp);
+		return file;
+	}
+
+	private void assertRoundTrip(File zip) throws IOException {
+		List<String> expectedNames = Arrays.asList("WEB-INF/", "WEB-INF/web.xml", "WEB-INF/empty.txt",
+				"WEB-INF/large.txt", "WEB-INF/lib/", "WEB-INF/lib/large.jar", "images/", "images/logo.png");
+
+		// Central directory
+		ZipFile zipFile = new ZipFile(zip);
+		try {
+			assertEquals(expectedNames.size(), zipFile.size());
+			for (String name : expectedNames) {
+				ZipEntry entry = zipFile.getEntry(name);
+				assertNotNull(name, entry);
+				byte[] expected = contents.get(name);
+				if (expected == null) {
+					assertTrue(name, entry.isDirectory());
+					assertEquals(name, 0, entry.getSize());
+					continue;
+				}
+				assertEquals(name, expected.length, entry.getSize());
+				assertEquals(name, crc(expected), entry.getCrc());
+				assertEquals(name, timeStamp, entry.getTime());
+				assertTrue(name, Arrays.equals(expected, read(zipFile.getInputStream(entry))));
+			}
+		}
+		finally {
+			zipFile.close();
+		}
+
+		// Local headers and data descriptors, which are checked against the
+		// data when read
+		List<String> names = new ArrayList<String>();
+		ZipInputStream in = new ZipInputStream(Files.newInputStream(zip.toPath()));
+		try {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				names.add(entry.getName());
+				byte[] data = read(in);
+				byte[] expected = contents.get(entry.getName());
+				assertTrue(entry.getName(), Arrays.equals(expected != null ? expected : new byte[0], data));
+				if (expected != null) {
+					assertEquals(entry.getName(), timeStamp, entry.getTime());
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+		assertEquals(expectedNames, names);
+	}
+
+	private static long crc(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads the given stream to the end, without closing it
+	 */
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}